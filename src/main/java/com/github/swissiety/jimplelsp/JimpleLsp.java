@@ -9,6 +9,7 @@ import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import com.github.swissiety.jimplelsp.provider.IntArrayList;
 import org.apache.commons.cli.*;
 import org.eclipse.lsp4j.jsonrpc.Launcher;
 import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
@@ -58,7 +59,18 @@ public class JimpleLsp {
            // FIXME LanguageServer.launchOnSocketPort(port, createServer);
         } else */ {
 
-            Launcher<LanguageClient> l = LSPLauncher.createServerLauncher(server, System.in, System.out);
+            Launcher<LanguageClient> l =
+                    new LSPLauncher.Builder<LanguageClient>()
+                            .setLocalService(server)
+                            .setRemoteInterface(LanguageClient.class)
+                            .setInput(System.in)
+                            .setOutput(System.out)
+                            // serialize the semantic tokens without boxing them
+                            .configureGson(
+                                    gson ->
+                                            gson.registerTypeAdapter(
+                                                    IntArrayList.class, new IntArrayList.GsonAdapter()))
+                            .create();
             Future<?> startListening = l.startListening();
             server.connectClient(l.getRemoteProxy());
             startListening.get();
@@ -1,22 +1,41 @@
 package com.github.swissiety.jimplelsp;
 
+import com.github.swissiety.jimplelsp.analysis.AnalysisPipeline;
+import com.github.swissiety.jimplelsp.analysis.ClassStructure;
+import com.github.swissiety.jimplelsp.analysis.DocumentAnalysis;
+import com.github.swissiety.jimplelsp.analysis.JimpleParsing;
+import com.github.swissiety.jimplelsp.analysis.WorkspaceSnapshot;
+import com.github.swissiety.jimplelsp.executor.Lane;
+import com.github.swissiety.jimplelsp.executor.LaneExecutors;
+import com.github.swissiety.jimplelsp.index.FileIndex;
+import com.github.swissiety.jimplelsp.index.IndexStore;
+import com.github.swissiety.jimplelsp.index.ReindexQueue;
+import com.github.swissiety.jimplelsp.index.SymbolIndex;
+import com.github.swissiety.jimplelsp.index.TypeHierarchyIndex;
+import com.github.swissiety.jimplelsp.index.WorkspaceWatcher;
 import com.github.swissiety.jimplelsp.provider.SyntaxHighlightingProvider;
+import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.eclipse.lsp4j.*;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import org.eclipse.lsp4j.jsonrpc.CompletableFutures;
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageServer;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import org.eclipse.lsp4j.services.WorkspaceService;
-import sootup.core.cache.provider.MutableFullCacheProvider;
+import sootup.core.cache.MutableCache;
+import sootup.core.cache.MutableFullCache;
 import sootup.core.frontend.ResolveException;
 import sootup.core.frontend.SootClassSource;
-import sootup.core.inputlocation.EagerInputLocation;
 import sootup.core.model.SootClass;
 import sootup.core.model.SourceType;
 import sootup.core.types.ClassType;
-import sootup.jimple.parser.JimpleConverter;
 import sootup.jimple.parser.JimpleView;
 
 import javax.annotation.Nonnull;
@@ -30,8 +49,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -41,24 +67,73 @@ public class JimpleLspServer implements LanguageServer {
   private final JimpleTextDocumentService textDocumentService;
   private final WorkspaceService workspaceService;
   LanguageClient client = null;
-  private ClientCapabilities clientCapabilities;
+  // replaced by the capabilities the client announces in initialize()
+  @Nonnull private ClientCapabilities clientCapabilities = new ClientCapabilities();
+  private boolean semanticTokensRefreshSupport = false;
 
+  // filled concurrently by the indexing workers
   @Nonnull
   private final Map<Path, SootClassSource<? extends SootClass<?>>> textDocumentClassMapping =
-      new HashMap<>();
-
-  private JimpleView view;
-  private boolean isViewDirty = true;
+      new ConcurrentHashMap<>();
+
+  @Nonnull private final Set<Path> workspaceJimpleFiles = ConcurrentHashMap.newKeySet();
+
+  // class-to-path mapping; contains classes restored from the persistent index, too.
+  @Nonnull private final Map<ClassType, Path> classTypeToPath = new ConcurrentHashMap<>();
+  // metadata of files restored from the persistent index which are not converted (yet)
+  @Nonnull private final Map<Path, FileIndex> restoredFileIndex = new ConcurrentHashMap<>();
+  @Nullable private IndexStore indexStore = null;
+  // supertype/subtype relations of the workspace classes
+  @Nonnull private final TypeHierarchyIndex typeHierarchy = new TypeHierarchyIndex();
+  // declared classes, methods and fields of the workspace for the workspace symbol search
+  @Nonnull private final SymbolIndex symbolIndex = new SymbolIndex();
+
+  // kept to replace/remove single classes of the view instead of recreating the whole view
+  @Nonnull private final MutableCache<SootClass<?>> classCache = new MutableFullCache<>();
+  private JimpleView view = null;
+
+  // files changed outside of the editor which are indexed again in batches
+  @Nullable private ReindexQueue reindexQueue = null;
+  // the fallback if the client does not watch the workspace
+  @Nullable private volatile WorkspaceWatcher workspaceWatcher = null;
+
+  // separate threads for requests, document analyses and background work
+  @Nonnull private final LaneExecutors executors = new LaneExecutors();
+  // parses the files of the workspace in parallel; created on the first indexing
+  @Nullable private ForkJoinPool indexingPool = null;
 
   // config values
   private String sootpath = "";
   private String androidplatform = "";
+  /** number of worker threads used to index the workspace; 0 uses all available cores */
+  private int indexingParallelism = 0;
+  /** directory of the persistent index; empty uses .jimplelsp/ in the first workspace folder */
+  private String indexCacheDirectory = "";
+  /** time in ms a document has to stay unchanged until its reanalyzed */
+  private long analysisDebounceDelay = 200;
+  /** number of threads answering requests; 0 keeps the default */
+  private int requestParallelism = 0;
+  /** number of threads analyzing changed documents; 0 keeps the default */
+  private int analysisParallelism = 0;
+  /**
+   * number of tasks that may wait per lane. Requests are rejected with ContentModified once the
+   * queue of their lane is full; background work is run by its submitter instead.
+   */
+  private int queueCapacity = LaneExecutors.DEFAULT_QUEUE_CAPACITY;
+  /** estimated heap in bytes for cached parse trees and resolvers of documents not opened */
+  private long cacheHeapBudget = DEFAULT_CACHE_HEAP_BUDGET;
+  /** whether the server watches the workspace if the client can not report changed files */
+  private boolean watchFiles = true;
+
+  /** a quarter of the maximum heap */
+  static final long DEFAULT_CACHE_HEAP_BUDGET = Runtime.getRuntime().maxMemory() / 4;
 
   public JimpleLspServer() {
     this.textDocumentService = new JimpleTextDocumentService(this);
     this.workspaceService = new JimpleWorkspaceService(this);
   }
 
+  /** runs background work e.g. the workspace scan. */
   @Nonnull
   public <T> CompletableFuture<T> pool(Callable<T> lambda) {
     return CompletableFuture.supplyAsync(
@@ -69,7 +144,75 @@ public class JimpleLspServer implements LanguageServer {
             client.logMessage(new MessageParams(MessageType.Error, getStringFrom(e)));
           }
           return null;
-        });
+        },
+        getExecutor(Lane.BACKGROUND, LaneExecutors.PRIORITY_NORMAL));
+  }
+
+  @Nonnull
+  public <T> CompletableFuture<T> pool(
+      @Nullable String uri, @Nonnull Function<CancelChecker, T> lambda) {
+    return pool(uri, LaneExecutors.PRIORITY_NORMAL, lambda);
+  }
+
+  /**
+   * runs a request which belongs to the given document. The request is cancelled cooperatively
+   * i.e. by calling checkCanceled() of the passed CancelChecker: it stops if the client cancels the
+   * request or if the document changed since the request was issued. The request reads the opened
+   * documents from the WorkspaceSnapshot which was current when it was issued.
+   *
+   * @param uri the document of the request or null if the request is not specific to a document
+   * @param priority the priority of the request among the waiting requests e.g.
+   *     LaneExecutors.PRIORITY_HIGH for requests the user is waiting for like hover
+   */
+  @Nonnull
+  public <T> CompletableFuture<T> pool(
+      @Nullable String uri, int priority, @Nonnull Function<CancelChecker, T> lambda) {
+    final WorkspaceSnapshot snapshot = textDocumentService.getLatestSnapshot();
+    final int version = uri == null ? -1 : snapshot.getVersion(uri);
+    final Executor executor = getExecutor(Lane.INTERACTIVE, priority);
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    final CancelChecker cancelToken = new CompletableFutures.FutureCancelChecker(result);
+    final CancelChecker cancelChecker =
+        () -> {
+          cancelToken.checkCanceled();
+          if (version >= 0 && textDocumentService.getLatestSnapshot().getVersion(uri) != version) {
+            throw new ResponseErrorException(
+                new ResponseError(
+                    ResponseErrorCode.ContentModified,
+                    "The document was modified since the request was issued.",
+                    null));
+          }
+        };
+    try {
+      executor.execute(
+          () -> {
+            try {
+              // the request could be outdated already while it waited for execution
+              cancelChecker.checkCanceled();
+              result.complete(
+                  textDocumentService.withSnapshot(snapshot, () -> lambda.apply(cancelChecker)));
+            } catch (CancellationException | ResponseErrorException e) {
+              result.completeExceptionally(e);
+            } catch (Throwable e) {
+              client.logMessage(new MessageParams(MessageType.Error, getStringFrom(e)));
+              result.complete(null);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // overloaded: the client asks again if the result is still of interest
+      result.completeExceptionally(
+          new ResponseErrorException(
+              new ResponseError(
+                  ResponseErrorCode.ContentModified,
+                  "The server is busy: the request was dropped.",
+                  null)));
+    }
+    return result;
+  }
+
+  @Nonnull
+  Executor getExecutor(@Nonnull Lane lane, int priority) {
+    return executors.executor(lane, priority);
   }
 
   static String getStringFrom(Throwable e) {
@@ -80,77 +223,285 @@ public class JimpleLspServer implements LanguageServer {
     return bos.toString();
   }
 
+  /**
+   * reads the server settings sent via initializationOptions i.e. the "JimpleLSP" configuration
+   * section of the client.
+   */
+  private void readConfiguration(@Nullable Object options) {
+    if (!(options instanceof JsonObject)) {
+      return;
+    }
+    final JsonElement threads = getConfigValue((JsonObject) options, "indexing.threads");
+    if (threads != null && threads.isJsonPrimitive()) {
+      indexingParallelism = Math.max(0, threads.getAsInt());
+    }
+    final JsonElement cacheDir = getConfigValue((JsonObject) options, "indexing.cacheDirectory");
+    if (cacheDir != null && cacheDir.isJsonPrimitive()) {
+      indexCacheDirectory = cacheDir.getAsString();
+    }
+    final JsonElement debounceDelay =
+        getConfigValue((JsonObject) options, "analysis.debounceDelay");
+    if (debounceDelay != null && debounceDelay.isJsonPrimitive()) {
+      analysisDebounceDelay = Math.max(0, debounceDelay.getAsLong());
+    }
+    final JsonElement requestThreads =
+        getConfigValue((JsonObject) options, "scheduler.requestThreads");
+    if (requestThreads != null && requestThreads.isJsonPrimitive()) {
+      requestParallelism = Math.max(0, requestThreads.getAsInt());
+    }
+    final JsonElement analysisThreads =
+        getConfigValue((JsonObject) options, "scheduler.analysisThreads");
+    if (analysisThreads != null && analysisThreads.isJsonPrimitive()) {
+      analysisParallelism = Math.max(0, analysisThreads.getAsInt());
+    }
+    final JsonElement capacity = getConfigValue((JsonObject) options, "scheduler.queueCapacity");
+    if (capacity != null && capacity.isJsonPrimitive()) {
+      queueCapacity = Math.max(1, capacity.getAsInt());
+    }
+    final JsonElement heapBudget = getConfigValue((JsonObject) options, "cache.heapBudget");
+    if (heapBudget != null && heapBudget.isJsonPrimitive() && heapBudget.getAsLong() > 0) {
+      // configured in MB
+      cacheHeapBudget = heapBudget.getAsLong() * 1024 * 1024;
+    }
+    final JsonElement watch = getConfigValue((JsonObject) options, "indexing.watchFiles");
+    if (watch != null && watch.isJsonPrimitive()) {
+      watchFiles = watch.getAsBoolean();
+    }
+  }
+
+  /** applies the configured parallelism and queue capacity to the lanes. */
+  private void configureExecutors() {
+    if (requestParallelism > 0) {
+      executors.setParallelism(Lane.INTERACTIVE, requestParallelism);
+    }
+    if (analysisParallelism > 0) {
+      executors.setParallelism(Lane.ANALYSIS, analysisParallelism);
+    }
+    // the background lane runs the indexing
+    executors.setParallelism(Lane.BACKGROUND, getIndexingParallelism());
+    for (Lane lane : Lane.values()) {
+      executors.setQueueCapacity(lane, queueCapacity);
+    }
+  }
+
+  @Nullable
+  private IndexStore createIndexStore() {
+    final Path storeDirectory;
+    if (!indexCacheDirectory.isEmpty()) {
+      storeDirectory = Paths.get(indexCacheDirectory);
+    } else if (!workspaceFolders.isEmpty()) {
+      storeDirectory =
+          Util.uriToPath(workspaceFolders.get(0).getUri()).resolve(".jimplelsp").resolve("index");
+    } else {
+      return null;
+    }
+    try {
+      return new IndexStore(storeDirectory);
+    } catch (IOException e) {
+      client.logMessage(
+          new MessageParams(
+              MessageType.Warning,
+              "Persistent index is disabled: can not create \"" + storeDirectory + "\"."));
+      return null;
+    }
+  }
+
+  @Nullable
+  static JsonElement getConfigValue(@Nonnull JsonObject config, @Nonnull String key) {
+    JsonElement element = config;
+    for (String part : key.split("\\.")) {
+      if (!element.isJsonObject()) {
+        return null;
+      }
+      element = element.getAsJsonObject().get(part);
+      if (element == null) {
+        return null;
+      }
+    }
+    return element;
+  }
+
+  int getIndexingParallelism() {
+    return indexingParallelism > 0
+        ? indexingParallelism
+        : Runtime.getRuntime().availableProcessors();
+  }
+
+  long getAnalysisDebounceDelay() {
+    return analysisDebounceDelay;
+  }
+
+  /** asks the client to request the semantic tokens of the opened documents again. */
+  void refreshSemanticTokens() {
+    if (semanticTokensRefreshSupport && client != null) {
+      client.refreshSemanticTokens();
+    }
+  }
+
   @Nonnull
   ClientCapabilities getClientCapabilities() {
     return clientCapabilities;
   }
 
   @Nonnull
-  public JimpleView getView() {
-    if (isViewDirty) {
-      view = recreateView();
-      isViewDirty = false;
+  public synchronized JimpleView getView() {
+    if (view == null) {
+      // the view is created once: changes of documents are patched into its cache per class
+      view =
+          new JimpleView(
+              Collections.singletonList(new WorkspaceInputLocation(this)), () -> classCache);
     }
     return view;
   }
 
+  /**
+   * replaces the class of a changed document in the view. All other already resolved classes stay
+   * untouched.
+   */
+  private synchronized void updateViewClass(
+      @Nullable SootClassSource<? extends SootClass<?>> previous,
+      @Nonnull SootClassSource<? extends SootClass<?>> current) {
+    if (view == null) {
+      // not created yet: the view resolves the current class on demand
+      return;
+    }
+    if (previous != null) {
+      classCache.removeClass(previous.getClassType());
+    }
+    final ClassType classType = current.getClassType();
+    classCache.removeClass(classType);
+    classCache.putClass(classType, current.buildClass(SourceType.Application));
+  }
+
+  /** removes the class of a deleted document from the workspace and the view. */
+  public synchronized void removeDocument(@Nonnull Path path) {
+    workspaceJimpleFiles.remove(path);
+    final FileIndex restored = restoredFileIndex.remove(path);
+    if (restored != null) {
+      classTypeToPath.remove(restored.getClassType(), path);
+      typeHierarchy.remove(restored.getClassType());
+    }
+    textDocumentService.removeDocument(path);
+    final SootClassSource<? extends SootClass<?>> removed = textDocumentClassMapping.remove(path);
+    if (removed == null) {
+      return;
+    }
+    final ClassType classType = removed.getClassType();
+    classTypeToPath.remove(classType, path);
+    typeHierarchy.remove(classType);
+    if (view != null) {
+      classCache.removeClass(classType);
+    }
+  }
+
+  /**
+   * @return the source of a workspace class. Classes restored from the persistent index are
+   *     converted on first access.
+   */
+  @Nullable
+  SootClassSource<? extends SootClass<?>> getClassSource(@Nonnull ClassType classType) {
+    final Path path = classTypeToPath.get(classType);
+    if (path == null) {
+      return null;
+    }
+    final SootClassSource<? extends SootClass<?>> classSource =
+        textDocumentClassMapping.get(path);
+    if (classSource != null || !restoredFileIndex.containsKey(path)) {
+      return classSource;
+    }
+
+    try {
+      final DocumentAnalysis analysis = AnalysisPipeline.analyze(path, CharStreams.fromPath(path));
+      final SootClassSource<? extends SootClass<?>> restoredSource = analysis.getClassSource();
+      if (restoredSource == null) {
+        return null;
+      }
+      restoredFileIndex.remove(path);
+      final SootClassSource<? extends SootClass<?>> existing =
+          textDocumentClassMapping.putIfAbsent(path, restoredSource);
+      return existing != null ? existing : restoredSource;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
   @Nonnull
-  private JimpleView recreateView() {
-    HashMap<ClassType, SootClassSource> map = new HashMap<>();
-    textDocumentClassMapping.forEach((key, value) -> map.put(value.getClassType(), value));
-    JimpleView jimpleView = new JimpleView(Collections.singletonList(new EagerInputLocation()), new MutableFullCacheProvider<>());
+  TypeHierarchyIndex getTypeHierarchy() {
+    return typeHierarchy;
+  }
 
-    // FIXME: set list of modified jimple files
+  @Nonnull
+  SymbolIndex getSymbolIndex() {
+    return symbolIndex;
+  }
 
-    return jimpleView;
+  @Nonnull
+  Collection<ClassType> getWorkspaceClassTypes() {
+    return classTypeToPath.keySet();
   }
 
   public boolean quarantineInputOrUpdate(@Nonnull String uri) throws ResolveException, IOException {
-    return quarantineInputOrUpdate(uri, CharStreams.fromPath(Util.uriToPath(uri)));
+    final Path path = Util.uriToPath(uri);
+    return quarantineInputOrUpdate(
+        uri, AnalysisPipeline.analyze(path, CharStreams.fromPath(path)));
   }
 
   public boolean quarantineInputOrUpdate(@Nonnull String uri, String content)
       throws ResolveException {
-    return quarantineInputOrUpdate(uri, CharStreams.fromString(content));
+    return quarantineInputOrUpdate(
+        uri, AnalysisPipeline.analyze(Util.uriToPath(uri), CharStreams.fromString(content)));
   }
 
-  private boolean quarantineInputOrUpdate(@Nonnull String uri, @Nonnull CharStream charStream)
-      throws ResolveException {
-
-    final JimpleConverter jimpleConverter = new JimpleConverter();
-    try {
+  /** updates the class of the analyzed document if it is valid - else publishes its error */
+  public boolean quarantineInputOrUpdate(@Nonnull String uri, @Nonnull DocumentAnalysis analysis) {
+    final Path path = analysis.getPath();
+    if (!Files.exists(path)) {
+      return false;
+    }
 
-      final Path path = Util.uriToPath(uri);
-      if (!Files.exists(path)) {
-        return false;
+    final SootClassSource<? extends SootClass<?>> scs = analysis.getClassSource();
+    if (scs != null) {
+      if (textDocumentClassMapping.get(path) == scs) {
+        // only a method body was parsed again: signatures and hierarchy are unchanged. The view
+        // still holds the bodies of the last full analysis, so its diagnostics are kept until the
+        // next full analysis replaces them
+        return true;
       }
-      SootClassSource<? extends SootClass<?>> scs =
-          jimpleConverter.run(charStream, new EagerInputLocation<>(), path);
       // input is clean
       final SootClassSource<? extends SootClass<?>> overriden =
           textDocumentClassMapping.put(path, scs);
-      if (overriden != null) {
-        // possible optimization: compare if classes are still equal -> set dirty bit only when
-        // necessary
+      if (overriden == null || !ClassStructure.of(overriden).equals(ClassStructure.of(scs))) {
+        if (overriden != null && !overriden.getClassType().equals(scs.getClassType())) {
+          // the class was renamed
+          classTypeToPath.remove(overriden.getClassType(), path);
+          typeHierarchy.remove(overriden.getClassType());
+        }
+        classTypeToPath.put(scs.getClassType(), path);
+        typeHierarchy.update(
+            scs.getClassType(), scs.resolveSuperclass().orElse(null), scs.resolveInterfaces());
+        restoredFileIndex.remove(path);
       }
-      isViewDirty = true;
+      // else: only method bodies changed - the class lookup and the hierarchy are still valid
+      updateViewClass(overriden, scs);
 
       // clean up errors in IDE if the file is valid (again)
       // FIXME: merge with other diagnostics in magpie
       client.publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.emptyList()));
 
       return true;
-    } catch (ResolveException e) {
+    }
+
+    final Exception e = analysis.getError();
+    if (e instanceof ResolveException) {
       // feed error into diagnostics
       final Diagnostic d =
           new Diagnostic(
-              Util.positionToDefRange(e.getRange()),
+              Util.positionToDefRange(((ResolveException) e).getRange()),
               e.getMessage(),
               DiagnosticSeverity.Error,
               "JimpleParser");
       client.publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.singletonList(d)));
-      return false;
-    } catch (Exception e) {
+    } else if (e != null) {
       // feed error into diagnostics
       String stackStraceString = getStringFrom(e);
 
@@ -162,13 +513,29 @@ public class JimpleLspServer implements LanguageServer {
               "JimpleParser");
       // FIXME: merge with other diagnostics in magpie
       client.publishDiagnostics(new PublishDiagnosticsParams(uri, Collections.singletonList(d)));
-      return false;
     }
+    return false;
   }
 
   @Override
   public void exit() {
-
+    if (workspaceWatcher != null) {
+      try {
+        workspaceWatcher.close();
+      } catch (IOException ignored) {
+        // exiting anyway
+      }
+    }
+    if (reindexQueue != null) {
+      reindexQueue.shutdown();
+    }
+    textDocumentService.shutdown();
+    executors.shutdown();
+    synchronized (this) {
+      if (indexingPool != null) {
+        indexingPool.shutdown();
+      }
+    }
   }
 
   @Override
@@ -176,6 +543,11 @@ public class JimpleLspServer implements LanguageServer {
     return null;
   }
 
+  @Nonnull
+  JimpleTextDocumentService getJimpleTextDocumentService() {
+    return textDocumentService;
+  }
+
   @Override
   public WorkspaceService getWorkspaceService() {
     return null;
@@ -184,12 +556,32 @@ public class JimpleLspServer implements LanguageServer {
   List<WorkspaceFolder> workspaceFolders = Collections.emptyList();
 
   private boolean jimpleFound = false;
+  // the scan of the workspace folders for Jimple files which is started by initialize()
+  @Nonnull private CompletableFuture<Void> workspaceScan = CompletableFuture.completedFuture(null);
 
   @Override
   public CompletableFuture<InitializeResult> initialize(InitializeParams params) {
     if (params.getWorkspaceFolders() != null) {
       workspaceFolders = params.getWorkspaceFolders();
     }
+    if (params.getCapabilities() != null) {
+      clientCapabilities = params.getCapabilities();
+    }
+    readConfiguration(params.getInitializationOptions());
+    configureExecutors();
+    textDocumentService.setCacheHeapBudget(cacheHeapBudget);
+    // build the parser caches before the first document arrives
+    CompletableFuture.runAsync(
+        () ->
+            JimpleParsing.warmUp(
+                e -> client.logMessage(new MessageParams(MessageType.Warning, getStringFrom(e)))),
+        getExecutor(Lane.ANALYSIS, LaneExecutors.PRIORITY_LOW));
+    indexStore = createIndexStore();
+    reindexQueue =
+        new ReindexQueue(
+            getExecutor(Lane.BACKGROUND, LaneExecutors.PRIORITY_NORMAL),
+            this::reindex,
+            getAnalysisDebounceDelay());
 
     final InitializeResult initialize = new InitializeResult();
 
@@ -206,19 +598,27 @@ public class JimpleLspServer implements LanguageServer {
       capabilities.setFoldingRangeProvider(false);
       capabilities.setDocumentHighlightProvider(true);
 
+      final WorkspaceClientCapabilities workspaceCapabilities = clientCapabilities.getWorkspace();
+      semanticTokensRefreshSupport =
+          workspaceCapabilities != null
+              && workspaceCapabilities.getSemanticTokens() != null
+              && workspaceCapabilities.getSemanticTokens().getRefreshSupport() == Boolean.TRUE;
+
       // we could announce it even if the client does not support it..
-      if (params.getCapabilities().getTextDocument() != null) {
+      if (clientCapabilities.getTextDocument() != null) {
         // semantic token config
-        if (params.getCapabilities().getTextDocument().getSemanticTokens() != null) {
+        if (clientCapabilities.getTextDocument().getSemanticTokens() != null) {
           capabilities.setSemanticTokensProvider(
               new SemanticTokensWithRegistrationOptions(
-                  SyntaxHighlightingProvider.getLegend(), true));
+                  SyntaxHighlightingProvider.getLegend(),
+                  new SemanticTokensServerFull(true),
+                  true));
         }
       }
       // TODO: check capabilities.setDocumentFormattingProvider(true);
 
       long startNanos = System.nanoTime();
-    pool(
+    workspaceScan = pool(
         () -> {
           List<Path> rootpaths = new ArrayList<>(workspaceFolders.size() + 1);
 
@@ -245,15 +645,21 @@ public class JimpleLspServer implements LanguageServer {
 
   @Override
   public void initialized(InitializedParams params) {
+    watchWorkspace();
 
-    if (!jimpleFound) {
-      extractFromAPKJAR(
-          workspaceFolders.stream()
-              .map(w -> Util.uriToPath(w.getUri()))
-              .collect(Collectors.toList()));
-    } else {
-      indexJimple(textDocumentClassMapping.keySet());
-    }
+    // dont block the message processing while the workspace is scanned and indexed
+    workspaceScan.thenRunAsync(
+        () -> {
+          if (!jimpleFound) {
+            extractFromAPKJAR(
+                workspaceFolders.stream()
+                    .map(w -> Util.uriToPath(w.getUri()))
+                    .collect(Collectors.toList()));
+          } else {
+            indexJimple(workspaceJimpleFiles);
+          }
+        },
+        getExecutor(Lane.BACKGROUND, LaneExecutors.PRIORITY_NORMAL));
   }
 
   @Override
@@ -263,7 +669,8 @@ public class JimpleLspServer implements LanguageServer {
 
   private void extractFromAPKJAR(List<Path> rootpaths) {
     // find apk in top levels/first level subdir
-    if (clientCapabilities.getWorkspace().getConfiguration() == Boolean.TRUE) {
+    final WorkspaceClientCapabilities workspace = clientCapabilities.getWorkspace();
+    if (workspace != null && workspace.getConfiguration() == Boolean.TRUE) {
 
       List<Path> apkJarFiles = new ArrayList<>();
       // get ANDROIDHOME config from client
@@ -358,7 +765,7 @@ public class JimpleLspServer implements LanguageServer {
                         new MessageParams(MessageType.Info, "Extraction of Jimple aborted."));
                     break;
                   }
-                  scanDirectoryForJimple(Collections.singletonList(outputdir.toPath()));
+                  reindex(outputdir.toPath());
                 }
                 client.showMessage(
                     new MessageParams(
@@ -373,11 +780,12 @@ public class JimpleLspServer implements LanguageServer {
                     new File(absoluteFilename.substring(0, absoluteFilename.length() - 4));
                 extractAPKJAR(target, outputdir);
 
-                scanDirectoryForJimple(Collections.singletonList(outputdir.toPath()));
+                reindex(outputdir.toPath());
               }
 
               return messageActionItem;
-            });
+            },
+            getExecutor(Lane.BACKGROUND, LaneExecutors.PRIORITY_LOW));
       }
     }
   }
@@ -486,6 +894,15 @@ public class JimpleLspServer implements LanguageServer {
 
   private boolean scanDirectoryForJimple(Iterable<Path> rootpaths) {
     // scan workspace all jimple files <-> classes
+    List<Path> jimpleFiles = findJimpleFiles(rootpaths);
+
+    workspaceJimpleFiles.addAll(jimpleFiles);
+
+    return !jimpleFiles.isEmpty();
+  }
+
+  @Nonnull
+  private static List<Path> findJimpleFiles(@Nonnull Iterable<Path> rootpaths) {
     List<Path> jimpleFiles = new ArrayList<>();
 
     // scan all workspaces in depth for jimple files
@@ -497,34 +914,222 @@ public class JimpleLspServer implements LanguageServer {
         e.printStackTrace();
       }
     }
+    return jimpleFiles;
+  }
+
+  /**
+   * lets the client report changes of Jimple files made outside of the editor - or watches the
+   * workspace folders itself if the client can not.
+   */
+  private void watchWorkspace() {
+    final WorkspaceClientCapabilities workspace = clientCapabilities.getWorkspace();
+    if (workspace != null
+        && workspace.getDidChangeWatchedFiles() != null
+        && workspace.getDidChangeWatchedFiles().getDynamicRegistration() == Boolean.TRUE) {
+      final List<FileSystemWatcher> watchers =
+          Arrays.asList(
+              new FileSystemWatcher(Either.forLeft("**/*.jimple")),
+              // a deleted directory is reported as such - not as its deleted files
+              new FileSystemWatcher(Either.forLeft("**/*"), WatchKind.Delete));
+      client.registerCapability(
+          new RegistrationParams(
+              Collections.singletonList(
+                  new Registration(
+                      "jimplelsp-watched-files",
+                      "workspace/didChangeWatchedFiles",
+                      new DidChangeWatchedFilesRegistrationOptions(watchers)))));
+      return;
+    }
+    if (!watchFiles || reindexQueue == null) {
+      return;
+    }
+    final List<Path> roots =
+        workspaceFolders.stream()
+            .map(f -> Util.uriToPath(f.getUri()).toAbsolutePath())
+            .collect(Collectors.toList());
+    final ReindexQueue queue = reindexQueue;
+    pool(
+        () -> {
+          // registering a large workspace takes a while
+          workspaceWatcher = new WorkspaceWatcher(roots, queue);
+          return null;
+        });
+  }
+
+  /** indexes the Jimple files of a file or directory changed outside of the editor (again). */
+  void reindex(@Nonnull Path path) {
+    if (reindexQueue != null) {
+      reindexQueue.changed(path);
+    }
+  }
 
-    for (Path jimpleFile : jimpleFiles) {
-      textDocumentClassMapping.put(jimpleFile, null);
+  /** removes a file or directory deleted outside of the editor from the workspace. */
+  void unindex(@Nonnull Path path) {
+    if (reindexQueue != null) {
+      reindexQueue.deleted(path);
     }
+  }
 
-    return !jimpleFiles.isEmpty();
+  /**
+   * updates the class mapping, the view and the indices for the files of a batch of changes made
+   * outside of the editor. Untouched files are not looked at.
+   */
+  private void reindex(@Nonnull ReindexQueue.Batch batch) {
+    for (Path deleted : batch.getDeleted()) {
+      // a deleted directory removes the files below it
+      final List<Path> files =
+          workspaceJimpleFiles.stream()
+              .filter(file -> file.startsWith(deleted) && !Files.exists(file))
+              // the content of an opened document is owned by the editor
+              .filter(file -> textDocumentService.getDocumentVersion(Util.pathToUri(file)) < 0)
+              .collect(Collectors.toList());
+      for (Path file : files) {
+        removeDocument(file);
+        if (indexStore != null) {
+          try {
+            indexStore.remove(file);
+          } catch (IOException e) {
+            client.logMessage(new MessageParams(MessageType.Warning, getStringFrom(e)));
+          }
+        }
+      }
+    }
+
+    final List<Path> directories = new ArrayList<>();
+    final List<Path> changed = new ArrayList<>();
+    for (Path path : batch.getChanged()) {
+      if (Files.isDirectory(path)) {
+        directories.add(path);
+      } else if (Files.isRegularFile(path) && path.toString().toLowerCase().endsWith(".jimple")) {
+        changed.add(path);
+      }
+    }
+    changed.addAll(findJimpleFiles(directories));
+    // opened documents are analyzed from the content of the editor
+    changed.removeIf(path -> textDocumentService.getDocumentVersion(Util.pathToUri(path)) >= 0);
+    if (changed.isEmpty()) {
+      return;
+    }
+    workspaceJimpleFiles.addAll(changed);
+    indexJimple(changed);
   }
 
+  /**
+   * parses the given files and creates their SootClassSources in parallel. The work is distributed
+   * via a work-stealing pool whose size is configurable via "JimpleLSP.indexing.threads".
+   */
   private void indexJimple(Collection<Path> jimpleFiles) {
-    for (Path jimpleFile : jimpleFiles) {
-      try {
-        final String uri = Util.pathToUri(jimpleFile);
-        quarantineInputOrUpdate(uri);
-      } catch (IOException exception) {
-        exception.printStackTrace();
+    try {
+      // a parallel stream started from inside a ForkJoinPool uses that pool for its tasks
+      getIndexingPool()
+          .submit(
+              () ->
+                  jimpleFiles.parallelStream()
+                      .forEach(
+                          jimpleFile -> {
+                            try {
+                              indexFile(jimpleFile);
+                            } catch (IOException exception) {
+                              exception.printStackTrace();
+                            }
+                          }))
+          .get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      client.logMessage(new MessageParams(MessageType.Error, getStringFrom(e)));
+    }
+  }
+
+  /** @return the pool shared by the initial indexing and the reindexing of changed files */
+  @Nonnull
+  private synchronized ForkJoinPool getIndexingPool() {
+    if (indexingPool == null) {
+      // worker threads of the indexing get a low priority as they compete with the requests
+      indexingPool =
+          new ForkJoinPool(
+              getIndexingParallelism(),
+              pool -> {
+                final ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+              },
+              null,
+              false);
+    }
+    return indexingPool;
+  }
+
+  /**
+   * restores the index information of an unchanged file from the persistent index or parses the
+   * file and persists its index information.
+   */
+  private void indexFile(@Nonnull Path jimpleFile) throws IOException {
+    if (indexStore != null) {
+      final FileIndex fileIndex = indexStore.load(jimpleFile);
+      if (fileIndex != null) {
+        restoredFileIndex.put(jimpleFile, fileIndex);
+        classTypeToPath.put(fileIndex.getClassType(), jimpleFile);
+        typeHierarchy.update(
+            fileIndex.getClassType(), fileIndex.getSuperclass(), fileIndex.getInterfaces());
+        textDocumentService.restoreSignaturePositionResolver(
+            jimpleFile, fileIndex.getOccurences(), fileIndex.getDeclarations());
+        return;
       }
     }
+
+    final DocumentAnalysis analysis =
+        AnalysisPipeline.analyze(jimpleFile, CharStreams.fromPath(jimpleFile));
+    if (!quarantineInputOrUpdate(Util.pathToUri(jimpleFile), analysis)) {
+      return;
+    }
+    // the parse tree of a workspace file is not kept - only its signature occurences
+    textDocumentService.updateAnalysis(analysis, false);
+
+    final SootClassSource<? extends SootClass<?>> classSource = analysis.getClassSource();
+    final SignaturePositionResolver resolver = analysis.getSignaturePositionResolver();
+    if (indexStore != null && classSource != null && resolver != null) {
+      indexStore.store(
+          jimpleFile,
+          new FileIndex(
+              classSource.getClassType(),
+              classSource.resolveSuperclass().orElse(null),
+              classSource.resolveInterfaces(),
+              resolver.getOccurences(),
+              resolver.getDeclarations()));
+    }
   }
 
   @Nullable
   public ClassType uriToClasstype(@Nonnull String strUri) {
-    final SootClassSource<?> sootClassSource = textDocumentClassMapping.get(Util.uriToPath(strUri));
+    final Path path = Util.uriToPath(strUri);
+    final SootClassSource<?> sootClassSource = textDocumentClassMapping.get(path);
     if (sootClassSource == null) {
-      return null;
+      final FileIndex fileIndex = restoredFileIndex.get(path);
+      return fileIndex == null ? null : fileIndex.getClassType();
     }
     return sootClassSource.getClassType();
   }
 
+  /**
+   * @return the index information of an unchanged file as restored or stored by the workspace
+   *     indexing or null if there is none
+   */
+  @Nullable
+  FileIndex getFileIndex(@Nonnull Path path) {
+    final FileIndex restored = restoredFileIndex.get(path);
+    if (restored != null || indexStore == null) {
+      return restored;
+    }
+    return indexStore.load(path);
+  }
+
+  @Nullable
+  public Path classTypeToPath(@Nonnull ClassType classType) {
+    return classTypeToPath.get(classType);
+  }
+
   public void connectClient(LanguageClient remoteProxy) {
     client = remoteProxy;
   }
@@ -1,29 +1,39 @@
 package com.github.swissiety.jimplelsp;
 
+import com.github.swissiety.jimplelsp.analysis.AnalysisPipeline;
+import com.github.swissiety.jimplelsp.analysis.AnalysisScheduler;
+import com.github.swissiety.jimplelsp.analysis.BoundedCache;
+import com.github.swissiety.jimplelsp.analysis.DocumentAnalysis;
+import com.github.swissiety.jimplelsp.analysis.WorkspaceSnapshot;
+import com.github.swissiety.jimplelsp.executor.Lane;
+import com.github.swissiety.jimplelsp.executor.LaneExecutors;
+import com.github.swissiety.jimplelsp.index.FileIndex;
+import com.github.swissiety.jimplelsp.index.ReferenceIndex;
+import com.github.swissiety.jimplelsp.index.TypeHierarchyIndex;
 import com.github.swissiety.jimplelsp.provider.JimpleSymbolProvider;
+import com.github.swissiety.jimplelsp.provider.LexicalHighlightingProvider;
+import com.github.swissiety.jimplelsp.provider.SemanticTokensCache;
 import com.github.swissiety.jimplelsp.provider.SyntaxHighlightingProvider;
 import com.github.swissiety.jimplelsp.resolver.LocalPositionResolver;
 import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.github.swissiety.jimplelsp.workingtree.VersionedFile;
 import com.github.swissiety.jimplelsp.workingtree.WorkingTree;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.TextDocumentService;
 import sootup.core.model.*;
 import sootup.core.signatures.FieldSignature;
 import sootup.core.signatures.MethodSignature;
 import sootup.core.signatures.Signature;
-import sootup.core.typehierarchy.ViewTypeHierarchy;
 import sootup.core.types.ClassType;
 import sootup.core.types.Type;
 import sootup.core.util.printer.JimplePrinter;
 import sootup.core.views.View;
-import sootup.jimple.JimpleParser;
-import sootup.jimple.parser.JimpleConverterUtil;
 import sootup.jimple.parser.JimpleView;
 
 import javax.annotation.Nonnull;
@@ -32,11 +42,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /** @author Markus Schmidt */
@@ -44,9 +55,38 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
   WorkingTree workingTree = new WorkingTree("jimple");
 
-  private final Map<Path, SignaturePositionResolver> docSignaturePositionResolver = new HashMap<>();
+  // accessed concurrently by the workspace indexing workers; evicted ones are rebuilt from the
+  // persistent index or by parsing
+  private final BoundedCache<Path, SignaturePositionResolver> docSignaturePositionResolver =
+      new BoundedCache<>(
+          JimpleLspServer.DEFAULT_CACHE_HEAP_BUDGET / 2,
+          SignaturePositionResolver::getEstimatedSize);
 
-  private final Map<Path, JimpleParser> docParseTree = new HashMap<>();
+  // Signature -> files it occurs in; kept in sync with docSignaturePositionResolver
+  @Nonnull private final ReferenceIndex referenceIndex = new ReferenceIndex();
+  @Nonnull private final SemanticTokensCache semanticTokensCache = new SemanticTokensCache();
+
+  // the opened documents and their analyses: replaced atomically on each change
+  @Nonnull
+  private final AtomicReference<WorkspaceSnapshot> latestSnapshot =
+      new AtomicReference<>(WorkspaceSnapshot.EMPTY);
+  // the snapshot the request executed by the current thread runs against
+  @Nonnull private final ThreadLocal<WorkspaceSnapshot> requestSnapshot = new ThreadLocal<>();
+
+  // parse results of requested documents which are not opened; their SignaturePositionResolvers
+  // are weighed by docSignaturePositionResolver only
+  private final BoundedCache<Path, DocumentAnalysis> docAnalysis =
+      new BoundedCache<>(
+          JimpleLspServer.DEFAULT_CACHE_HEAP_BUDGET / 2, DocumentAnalysis::getEstimatedSize);
+
+  // an incrementally analyzed document is analyzed as a whole once its editing paused for this
+  // multiple of the debounce delay
+  private static final int FULL_ANALYSIS_DELAY_FACTOR = 10;
+  // the content hashes of the last valid analyses of files on disk
+  @Nonnull private final Map<Path, Long> contentHashes = new ConcurrentHashMap<>();
+  @Nonnull private final AnalysisScheduler analysisScheduler;
+  // analyses of a document may run concurrently: its result is checked and applied under its lock
+  @Nonnull private final Map<Path, Object> analysisLocks = new ConcurrentHashMap<>();
   @Nonnull
   private final JimpleLspServer server;
 
@@ -57,6 +97,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
    */
   public JimpleTextDocumentService(@Nonnull JimpleLspServer server) {
     this.server = server;
+    this.analysisScheduler =
+        new AnalysisScheduler(server.getExecutor(Lane.ANALYSIS, LaneExecutors.PRIORITY_NORMAL));
   }
 
   @Nonnull
@@ -64,6 +106,21 @@ public class JimpleTextDocumentService implements TextDocumentService {
     return server;
   }
 
+  /**
+   * bounds the cached resolvers and parse trees of documents which are not opened. The indices are
+   * not affected by evictions.
+   *
+   * @param budget the estimated heap in bytes
+   */
+  void setCacheHeapBudget(long budget) {
+    docSignaturePositionResolver.setBudget(budget / 2);
+    docAnalysis.setBudget(budget / 2);
+  }
+
+  void shutdown() {
+    analysisScheduler.shutdown();
+  }
+
   /** TODO: refactor into magpiebridge */
   protected void forwardException(@Nonnull Exception e) {
     getServer()
@@ -85,15 +142,21 @@ public class JimpleTextDocumentService implements TextDocumentService {
       return;
     }
     workingTree.didOpen(params);
-    analyzeFile(uri, text);
+    publishDocument(uri, null);
+    scheduleAnalysis(uri, 0, false);
   }
 
   @Override
   public void didChange(DidChangeTextDocumentParams params) {
     final String uri = params.getTextDocument().getUri();
 
-    workingTree.didChange(params);
-    analyzeFile(params.getTextDocument().getUri(), workingTree.get(uri).getContent());
+    if (!workingTree.didChange(params)) {
+      // e.g. a version which was applied already: its changes must not move the occurences again
+      return;
+    }
+    publishDocument(uri, params.getContentChanges());
+    // typing produces bursts of changes: analyze once the burst is over
+    scheduleAnalysis(uri, getServer().getAnalysisDebounceDelay(), true);
   }
 
   @Override
@@ -112,7 +175,12 @@ public class JimpleTextDocumentService implements TextDocumentService {
     workingTree.didSave(params);
 
     // update classes
-    analyzeFile(uri, text);
+    if (getLatestSnapshot().getDocument(uri) != null) {
+      scheduleAnalysis(uri, 0, false);
+    } else {
+      analysisScheduler.schedule(
+          uri, () -> analyzeFile(uri, CharStreams.fromString(text, uri), -1), 0);
+    }
   }
 
   @Override
@@ -122,25 +190,198 @@ public class JimpleTextDocumentService implements TextDocumentService {
       return;
     }
 
-    docParseTree.remove(Util.uriToPath(textDocument.getUri()));
+    analysisScheduler.cancel(textDocument.getUri());
+    workingTree.didClose(params);
+    publishDocument(textDocument.getUri(), null);
+    docAnalysis.remove(Util.uriToPath(textDocument.getUri()));
+    semanticTokensCache.remove(textDocument.getUri());
+  }
+
+  /**
+   * publishes the current version of the opened document of the WorkingTree - or its removal if
+   * the WorkingTree does not contain the document (anymore).
+   *
+   * @param changes the changes which lead to the current version - they move the signature
+   *     occurences of the last valid analysis
+   */
+  private void publishDocument(
+      @Nonnull String uri, @Nullable List<TextDocumentContentChangeEvent> changes) {
+    final VersionedFile file = workingTree.get(uri);
+    if (file != null) {
+      latestSnapshot.updateAndGet(snapshot -> snapshot.withDocument(file, changes));
+    } else {
+      latestSnapshot.updateAndGet(snapshot -> snapshot.withoutDocument(uri));
+    }
+  }
+
+  /** @return the latest state of the opened documents */
+  @Nonnull
+  WorkspaceSnapshot getLatestSnapshot() {
+    return latestSnapshot.get();
+  }
+
+  /** @return the snapshot of the request which is executed by this thread or the latest one */
+  @Nonnull
+  WorkspaceSnapshot getSnapshot() {
+    final WorkspaceSnapshot snapshot = requestSnapshot.get();
+    return snapshot != null ? snapshot : latestSnapshot.get();
+  }
+
+  /**
+   * @return the given position of a class or its members in the version of the document the
+   *     requests resolve against. The class of an incrementally analyzed document was converted
+   *     from an older version of it.
+   */
+  @Nonnull
+  sootup.core.model.Position getDocumentPosition(
+      @Nonnull SootClass<?> sc, @Nonnull sootup.core.model.Position position) {
+    final WorkspaceSnapshot.DocumentSnapshot document =
+        getSnapshot().getDocument(Util.pathToUri(sc.getClassSource().getSourcePath()));
+    final DocumentAnalysis analysis = document == null ? null : document.getAnalysis();
+    if (analysis == null || analysis.getClassSource() != sc.getClassSource()) {
+      return position;
+    }
+    return analysis.toAnalyzedPosition(position);
+  }
+
+  /** runs the request against the given snapshot of the opened documents. */
+  <T> T withSnapshot(@Nonnull WorkspaceSnapshot snapshot, @Nonnull Supplier<T> request) {
+    final WorkspaceSnapshot previous = requestSnapshot.get();
+    requestSnapshot.set(snapshot);
+    try {
+      return request.get();
+    } finally {
+      if (previous == null) {
+        requestSnapshot.remove();
+      } else {
+        requestSnapshot.set(previous);
+      }
+    }
   }
 
-  private void analyzeFile(@Nonnull String uri, @Nonnull String text) {
-    final boolean valid = getServer().quarantineInputOrUpdate(uri, text);
-    Path path = Util.uriToPath(uri);
-    if (valid) {
-      // calculate and cache interesting i.e.signature positions of the opened file
-      JimpleParser jimpleParser =
-          JimpleConverterUtil.createJimpleParser(CharStreams.fromString(text), path);
-      ParseTree parseTree = jimpleParser.file();
-      docParseTree.put(path, jimpleParser);
+  /**
+   * (re)schedules the analysis of the latest version of an opened document.
+   *
+   * @param incremental whether only the changed method may be parsed again. The whole document is
+   *     analyzed once it was not changed for a while.
+   */
+  private void scheduleAnalysis(@Nonnull String uri, long delayMs, boolean incremental) {
+    analysisScheduler.schedule(
+        uri,
+        () -> {
+          final WorkspaceSnapshot.DocumentSnapshot document = getLatestSnapshot().getDocument(uri);
+          if (document == null) {
+            // closed in the meantime
+            return;
+          }
+          final VersionedFile file = document.getFile();
+          try {
+            final DocumentAnalysis previous = document.getAnalysis();
+            DocumentAnalysis analysis = null;
+            if (incremental && previous != null) {
+              // reads the changed method only
+              analysis =
+                  AnalysisPipeline.analyzeIncrementally(
+                      previous, file, document.getChangedRegion());
+            }
+            if (analysis == null && previous != null) {
+              // e.g. saved, reopened or changes which were undone: nothing to parse
+              analysis = AnalysisPipeline.analyzeUnchanged(previous, file);
+              if (analysis == previous) {
+                return;
+              }
+            }
+            if (analysis == null) {
+              applyAnalysis(uri, AnalysisPipeline.analyze(Util.uriToPath(uri), file));
+            } else if (applyAnalysis(uri, analysis) && analysis.getParseTree() == null) {
+              // derive the parse tree and the class with its method bodies from the whole
+              // document once the editing pauses
+              scheduleAnalysis(
+                  uri, FULL_ANALYSIS_DELAY_FACTOR * getServer().getAnalysisDebounceDelay(), false);
+            }
+          } catch (Exception e) {
+            forwardException(e);
+          }
+        },
+        delayMs);
+  }
 
-      SignaturePositionResolver sigposresolver = new SignaturePositionResolver(path, parseTree);
-      docSignaturePositionResolver.put(path, sigposresolver);
+  /** @return true if a newer version of the document exists than the given version */
+  private boolean isOutdated(@Nonnull String uri, int version) {
+    if (version < 0) {
+      return false;
+    }
+    return getLatestSnapshot().getVersion(uri) > version;
+  }
+
+  /** @param version the version of the text or -1 if its not an opened document */
+  private void analyzeFile(@Nonnull String uri, @Nonnull CharStream text, int version) {
+    final Path path = Util.uriToPath(uri);
+    final Long previousHash = contentHashes.get(path);
+    if (version < 0
+        && previousHash != null
+        && previousHash == AnalysisPipeline.contentHash(text)) {
+      // the file on disk was analyzed with this content already
+      return;
+    }
+    // parse once: the class, signature positions and local positions are derived from one tree
+    applyAnalysis(uri, AnalysisPipeline.analyze(path, text, version));
+  }
+
+  /** @return whether the analysis is valid and was applied */
+  private boolean applyAnalysis(@Nonnull String uri, @Nonnull DocumentAnalysis analysis) {
+    final Path path = analysis.getPath();
+    final int version = analysis.getVersion();
+    synchronized (analysisLocks.computeIfAbsent(path, p -> new Object())) {
+      if (isOutdated(uri, version)) {
+        // superseded by a newer version which is scheduled for analysis already
+        return false;
+      }
+      final boolean valid = getServer().quarantineInputOrUpdate(uri, analysis);
+      if (valid) {
+        if (version < 0) {
+          contentHashes.put(path, analysis.getContentHash());
+        }
+        updateAnalysis(analysis, true);
+        if (analysis.getParseTree() != null && semanticTokensCache.isLexical(uri)) {
+          // the tree refines the highlighting of the token stream
+          getServer().refreshSemanticTokens();
+        }
+      } else if (version < 0) {
+        // file is invalid Jimple -> clear cache
+        contentHashes.remove(path);
+        docAnalysis.remove(path);
+        removeSignaturePositionResolver(path);
+      } else {
+        // requests do not parse this version again
+        latestSnapshot.updateAndGet(snapshot -> snapshot.withInvalidAnalysis(uri, analysis));
+      }
+      // else: an opened document is edited - its last valid analysis and the indices derived
+      // from it are kept until it is valid again; its occurences are moved along the edits
+      return valid;
+    }
+  }
+
+  /**
+   * caches the results of a valid analysis.
+   *
+   * @param retainParseTree whether the parse tree and local positions are kept, too.
+   */
+  void updateAnalysis(@Nonnull DocumentAnalysis analysis, boolean retainParseTree) {
+    final Path path = analysis.getPath();
+    final SignaturePositionResolver sigposresolver = analysis.getSignaturePositionResolver();
+    if (sigposresolver == null) {
+      return;
+    }
+    putSignaturePositionResolver(path, sigposresolver);
+    final String uri = Util.pathToUri(path);
+    if (retainParseTree && analysis.getVersion() >= 0) {
+      // an opened document
+      latestSnapshot.updateAndGet(snapshot -> snapshot.withAnalysis(uri, analysis));
+    } else if (retainParseTree) {
+      docAnalysis.put(path, analysis);
     } else {
-      // file is invalid Jimple -> clear cache
-      docParseTree.remove(path);
-      docSignaturePositionResolver.remove(path);
+      docAnalysis.remove(path);
     }
   }
 
@@ -166,40 +407,23 @@ public class JimpleTextDocumentService implements TextDocumentService {
     // typeDefinition
     return getServer()
         .pool(
-            () -> {
+            position.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_HIGH,
+            cancelChecker -> {
               final String uri = position.getTextDocument().getUri();
               final SignaturePositionResolver resolver = getSignaturePositionResolver(uri);
               if (resolver == null) {
                 return null;
               }
+              cancelChecker.checkCanceled();
               final Pair<Signature, Range> sigInst = resolver.resolve(position.getPosition());
               if (sigInst == null) {
                 // try if its a Local (which has no Signature!)
-
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-
-                final Optional<SootClass<?>> aClass = getServer().getView().getClass(classType);
-                if (!aClass.isPresent()) {
-                  return null;
-                }
-                SootClass<?> sc = aClass.get();
-
-                // maybe: cache instance for this file like for sigs
-                Path path = Util.uriToPath(uri);
-                final JimpleParser parser = getParser(path);
-                if (parser == null) {
-                  return null;
-                }
-                ParseTree parseTree = parser.file();
-                if (parseTree == null) {
-                  return null;
-                }
-                final LocalPositionResolver localPositionResolver =
-                    new LocalPositionResolver(path, parseTree);
-                LocationLink locationLink = localPositionResolver.resolveDefinition(sc, position);
+                LocationLink locationLink = localPositionResolver.resolveDefinition(position);
                 if (locationLink == null) {
                   return null;
                 }
@@ -256,7 +480,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
         if (resolver == null) {
           return null;
         }
-        return resolver.findFirstMatchingSignature(sc.getType(), sc.getPosition());
+        return resolver.findFirstMatchingSignature(
+            sc.getType(), getDocumentPosition(sc, sc.getPosition()));
       }
 
     } else if (sig instanceof MethodSignature) {
@@ -273,7 +498,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
           if (resolver == null) {
             return null;
           }
-          return resolver.findFirstMatchingSignature(method.getSignature(), method.getPosition());
+          return resolver.findFirstMatchingSignature(
+              method.getSignature(), getDocumentPosition(sc, method.getPosition()));
         }
       }
 
@@ -291,7 +517,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
           if (resolver == null) {
             return null;
           }
-          return resolver.findFirstMatchingSignature(sf.getSignature(), sf.getPosition());
+          return resolver.findFirstMatchingSignature(
+              sf.getSignature(), getDocumentPosition(sc, sf.getPosition()));
         }
       }
     }
@@ -308,7 +535,9 @@ public class JimpleTextDocumentService implements TextDocumentService {
     // subclasses/overriding methods there
     return getServer()
         .pool(
-            () -> {
+            position.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_LOW,
+            cancelChecker -> {
               List<Location> list = new ArrayList<>();
 
               final String uri = position.getTextDocument().getUri();
@@ -316,6 +545,7 @@ public class JimpleTextDocumentService implements TextDocumentService {
               if (sigResolver == null) {
                 return null;
               }
+              cancelChecker.checkCanceled();
               final Pair<Signature, Range> sigInstance =
                   sigResolver.resolve(position.getPosition());
               if (sigInstance == null) {
@@ -324,20 +554,21 @@ public class JimpleTextDocumentService implements TextDocumentService {
               Signature sig = sigInstance.getLeft();
 
               final View<SootClass<?>> view = getServer().getView();
-              final ViewTypeHierarchy typeHierarchy = new ViewTypeHierarchy(view);
+              final TypeHierarchyIndex typeHierarchy = getServer().getTypeHierarchy();
 
               if (sig instanceof ClassType) {
                 final Set<ClassType> subClassTypes = typeHierarchy.subtypesOf((ClassType) sig);
 
                 subClassTypes.forEach(
                     subClassSig -> {
+                      cancelChecker.checkCanceled();
                       Optional<SootClass<?>> scOpt = view.getClass(subClassSig);
                       scOpt.ifPresent(
                           sootClass ->
                               list.add(
                                   Util.positionToDefLocation(
                                       Util.pathToUri(sootClass.getClassSource().getSourcePath()),
-                                      sootClass.getPosition())));
+                                      getDocumentPosition(sootClass, sootClass.getPosition()))));
                     });
 
                 if (getServer()
@@ -365,6 +596,7 @@ public class JimpleTextDocumentService implements TextDocumentService {
                     typeHierarchy.subtypesOf(((MethodSignature) sig).getDeclClassType());
                 classTypes.forEach(
                     csig -> {
+                      cancelChecker.checkCanceled();
                       Optional<SootClass<?>> scOpt = view.getClass(csig);
                       if (scOpt.isPresent()) {
                         final SootClass<?> sc = scOpt.get();
@@ -376,7 +608,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
                             method ->
                                 list.add(
                                     Util.positionToDefLocation(
-                                        methodsClassUri, method.getPosition())));
+                                        methodsClassUri,
+                                        getDocumentPosition(sc, method.getPosition()))));
                       }
                     });
 
@@ -413,7 +646,9 @@ public class JimpleTextDocumentService implements TextDocumentService {
     // find usages of FieldSignaturesy|MethodSignatures|Classtypes
     return getServer()
         .pool(
-            () -> {
+            params.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_LOW,
+            cancelChecker -> {
               List<Location> list = new ArrayList<>();
               final String uri = params.getTextDocument().getUri();
               final SignaturePositionResolver resolver = getSignaturePositionResolver(uri);
@@ -424,31 +659,12 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
               if (sigInstance == null) {
                 // maybe its a Local?
-
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-                final JimpleView view = getServer().getView();
-                final Optional<SootClass<?>> aClass = view.getClass(classType);
-                if (aClass.isPresent()) {
-                  SootClass<?> sc = aClass.get();
-                  Path path = Util.uriToPath(uri);
-                  final JimpleParser parser = getParser(path);
-                  if (parser == null) {
-                    return null;
-                  }
-                  ParseTree parseTree = parser.file();
-                  if (parseTree == null) {
-                    return null;
-                  }
-                  final LocalPositionResolver localPositionResolver =
-                      new LocalPositionResolver(path, parseTree);
-                  list.addAll(localPositionResolver.resolveReferences(sc, params));
-                  return list;
-                }
-
-                return null;
+                list.addAll(localPositionResolver.resolveReferences(params));
+                return list;
               }
               Signature sig = sigInstance.getLeft();
 
@@ -456,9 +672,9 @@ public class JimpleTextDocumentService implements TextDocumentService {
                   params.getContext() != null && params.getContext().isIncludeDeclaration();
               final Location definitionLocation = includeDef ? null : getDefinitionLocation(sig);
 
-              final Collection<SootClass<?>> classes = getServer().getView().getClasses();
-              for (SootClass<?> sc : classes) {
-                final Path scPath = sc.getClassSource().getSourcePath();
+              // only the files which contain the Signature need to be looked at
+              for (Path scPath : referenceIndex.getFiles(sig)) {
+                cancelChecker.checkCanceled();
                 final SignaturePositionResolver sigresolver = getSignaturePositionResolver(scPath);
                 if (sigresolver == null) {
                   continue;
@@ -478,6 +694,60 @@ public class JimpleTextDocumentService implements TextDocumentService {
             });
   }
 
+  /** uses the Signature occurences of the persistent index instead of parsing the file. */
+  void restoreSignaturePositionResolver(
+      @Nonnull Path path,
+      @Nonnull List<Pair<Signature, Range>> occurences,
+      @Nonnull List<Pair<Signature, Range>> declarations) {
+    putSignaturePositionResolver(
+        path, new SignaturePositionResolver(path, occurences, declarations));
+  }
+
+  private void putSignaturePositionResolver(
+      @Nonnull Path path, @Nonnull SignaturePositionResolver resolver) {
+    final SignaturePositionResolver previous = docSignaturePositionResolver.get(path);
+    docSignaturePositionResolver.put(path, resolver);
+    updateIndices(path, previous, resolver);
+  }
+
+  /**
+   * updates the workspace wide indices with the Signatures of the given file. Unchanged
+   * declarations - e.g. after a change inside a method body - leave the symbols untouched.
+   */
+  private void updateIndices(
+      @Nonnull Path path,
+      @Nullable SignaturePositionResolver previous,
+      @Nonnull SignaturePositionResolver resolver) {
+    if (previous == resolver) {
+      return;
+    }
+    referenceIndex.update(path, resolver.getSignatures());
+    if (previous == null || !previous.getDeclarations().equals(resolver.getDeclarations())) {
+      getServer()
+          .getSymbolIndex()
+          .update(path, JimpleSymbolProvider.toSymbols(path, resolver.getDeclarations()));
+    }
+  }
+
+  private void removeSignaturePositionResolver(@Nonnull Path path) {
+    docSignaturePositionResolver.remove(path);
+    referenceIndex.remove(path);
+    getServer().getSymbolIndex().remove(path);
+  }
+
+  /** forgets everything about a deleted document. */
+  void removeDocument(@Nonnull Path path) {
+    contentHashes.remove(path);
+    docAnalysis.remove(path);
+    semanticTokensCache.remove(Util.pathToUri(path));
+    removeSignaturePositionResolver(path);
+  }
+
+  /** @return the version of the opened document or -1 if it is not opened */
+  int getDocumentVersion(@Nonnull String uri) {
+    return getSnapshot().getVersion(uri);
+  }
+
   @Nullable
   public SignaturePositionResolver getSignaturePositionResolver(@Nonnull String uri) {
     return getSignaturePositionResolver(Util.uriToPath(uri));
@@ -485,42 +755,125 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
   @Nullable
   private SignaturePositionResolver getSignaturePositionResolver(@Nonnull Path path) {
+    final WorkspaceSnapshot.DocumentSnapshot document =
+        getSnapshot().getDocument(Util.pathToUri(path));
+    if (document != null && document.getAnalysis() != null) {
+      // the last valid analysis with its occurences moved to the current version
+      return document.getSignaturePositionResolver();
+    }
+    // evicted: the indices still contain the signatures of the file i.e. they are not updated
     return docSignaturePositionResolver.computeIfAbsent(
         path,
         k -> {
-          try {
-            final JimpleParser parser = getParser(path);
-            if (parser == null) {
-              return null;
-            }
-            ParseTree parseTree = parser.file();
-            if (parseTree == null) {
-              return null;
-            }
-            return new SignaturePositionResolver(path, parseTree);
-          } catch (IllegalStateException e) {
-            forwardException(e);
+          final DocumentAnalysis cached = docAnalysis.get(path);
+          if (cached != null) {
+            return cached.getSignaturePositionResolver();
           }
-          return null;
+          final FileIndex fileIndex = getServer().getFileIndex(path);
+          if (fileIndex != null) {
+            return new SignaturePositionResolver(
+                path, fileIndex.getOccurences(), fileIndex.getDeclarations());
+          }
+          final DocumentAnalysis analysis = getDocumentAnalysis(path);
+          return analysis == null ? null : analysis.getSignaturePositionResolver();
         });
   }
 
   /**
-   * onlyValid: flag to specify whether a partial parsetree ie of invalid or incomplete jimple files
-   * are mandatory
+   * @return the LocalPositionResolver of the current version of the document - for an opened
+   *     document the one of its last valid analysis moved along the edits since then, even while
+   *     the document is invalid.
    */
   @Nullable
-  private JimpleParser getParser(@Nonnull Path path) {
-    return docParseTree.computeIfAbsent(
-        path,
-        k -> {
-          try {
-            return JimpleConverterUtil.createJimpleParser(CharStreams.fromPath(path), path);
-          } catch (IOException e) {
-            forwardException(e);
-            return null;
-          }
-        });
+  private LocalPositionResolver getLocalPositionResolver(@Nonnull String uri) {
+    final WorkspaceSnapshot.DocumentSnapshot document = getSnapshot().getDocument(uri);
+    if (document != null) {
+      final LocalPositionResolver moved = document.getLocalPositionResolver();
+      if (moved != null) {
+        return moved;
+      }
+    }
+    final DocumentAnalysis analysis = getCurrentDocumentAnalysis(uri);
+    if (analysis == null) {
+      return null;
+    }
+    return analysis.getLocalPositionResolver();
+  }
+
+  /**
+   * @return the analysis of the current version of the document or null if it is invalid. Each
+   *     version is parsed at most once - the invalid ones included: if the snapshot contains no
+   *     analysis of the current version (i.e. the reanalysis is still debounced) the current
+   *     version is analyzed now and published for the following requests.
+   */
+  @Nullable
+  private DocumentAnalysis getCurrentDocumentAnalysis(@Nonnull String uri) {
+    final Path path = Util.uriToPath(uri);
+    final WorkspaceSnapshot.DocumentSnapshot document = getSnapshot().getDocument(uri);
+    if (document == null) {
+      // not opened: the content on disk
+      return getDocumentAnalysis(path);
+    }
+    final DocumentAnalysis current = document.getCurrentAnalysis();
+    if (current != null || document.getInvalidAnalysis() != null) {
+      return current;
+    }
+    synchronized (analysisLocks.computeIfAbsent(path, p -> new Object())) {
+      // analyzed meanwhile?
+      final WorkspaceSnapshot.DocumentSnapshot latest = getLatestSnapshot().getDocument(uri);
+      final boolean unchanged = latest != null && latest.getVersion() == document.getVersion();
+      if (unchanged
+          && (latest.getCurrentAnalysis() != null || latest.getInvalidAnalysis() != null)) {
+        return latest.getCurrentAnalysis();
+      }
+      final DocumentAnalysis analysis = AnalysisPipeline.analyze(path, document.getFile());
+      if (unchanged) {
+        latestSnapshot.updateAndGet(
+            snapshot ->
+                analysis.isValid()
+                    ? snapshot.withAnalysis(uri, analysis)
+                    : snapshot.withInvalidAnalysis(uri, analysis));
+      }
+      return analysis.isValid() ? analysis : null;
+    }
+  }
+
+  /**
+   * @return the latest analysis of a valid document - analyzes the document if there is none. The
+   *     analysis of an opened document may belong to an older version of it.
+   */
+  @Nullable
+  DocumentAnalysis getDocumentAnalysis(@Nonnull Path path) {
+    final String uri = Util.pathToUri(path);
+    final WorkspaceSnapshot.DocumentSnapshot document = getSnapshot().getDocument(uri);
+    if (document != null) {
+      final DocumentAnalysis analysis = document.getAnalysis();
+      return analysis != null ? analysis : getCurrentDocumentAnalysis(uri);
+    }
+    return docAnalysis.computeIfAbsent(path, this::analyze);
+  }
+
+  /** @return the analysis of the file on disk or null if its invalid */
+  @Nullable
+  private DocumentAnalysis analyze(@Nonnull Path path) {
+    try {
+      final DocumentAnalysis analysis = AnalysisPipeline.analyze(path, CharStreams.fromPath(path));
+      return analysis.isValid() ? analysis : null;
+    } catch (IOException e) {
+      forwardException(e);
+      return null;
+    }
+  }
+
+  /** @return the content of the opened document or else of the file on disk */
+  @Nonnull
+  private CharStream getCharStream(@Nonnull Path path) throws IOException {
+    final WorkspaceSnapshot.DocumentSnapshot document =
+        getSnapshot().getDocument(Util.pathToUri(path));
+    if (document != null) {
+      return document.getFile().getCharStream();
+    }
+    return CharStreams.fromPath(path);
   }
 
   @Override
@@ -533,40 +886,24 @@ public class JimpleTextDocumentService implements TextDocumentService {
     // method-> returntype; field -> type; local -> type
     return getServer()
         .pool(
-            () -> {
+            position.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_HIGH,
+            cancelChecker -> {
               final String uri = position.getTextDocument().getUri();
               final SignaturePositionResolver resolver = getSignaturePositionResolver(uri);
               if (resolver == null) {
                 return null;
               }
+              cancelChecker.checkCanceled();
               final Pair<Signature, Range> sigInst = resolver.resolve(position.getPosition());
               if (sigInst == null) {
                 // try whether its a Local (which has no Signature!)
-                final ClassType classType = getServer().uriToClasstype(uri);
-                if (classType == null) {
+                final LocalPositionResolver localPositionResolver = getLocalPositionResolver(uri);
+                if (localPositionResolver == null) {
                   return null;
                 }
-
-                final Optional<SootClass<?>> aClass = getServer().getView().getClass(classType);
-                if (!aClass.isPresent()) {
-                  return null;
-                }
-                SootClass<?> sc = aClass.get();
-
-                // maybe: cache instance for this file like for sigs
-                Path path = Util.uriToPath(uri);
-                final JimpleParser parser = getParser(path);
-                if (parser == null) {
-                  return null;
-                }
-                ParseTree parseTree = parser.file();
-                if (parseTree == null) {
-                  return null;
-                }
-                final LocalPositionResolver localPositionResolver =
-                    new LocalPositionResolver(path, parseTree);
                 final Type type =
-                    localPositionResolver.resolveTypeDefinition(sc, position.getPosition());
+                    localPositionResolver.resolveTypeDefinition(position.getPosition());
 
                 if (!(type instanceof ClassType)) {
                   return null;
@@ -577,7 +914,7 @@ public class JimpleTextDocumentService implements TextDocumentService {
                   final SootClass<?> sootClass = typeClass.get();
                   return Util.positionToLocationList(
                       Util.pathToUri(sootClass.getClassSource().getSourcePath()),
-                      sootClass.getPosition());
+                      getDocumentPosition(sootClass, sootClass.getPosition()));
                 }
                 return null;
               }
@@ -599,7 +936,7 @@ public class JimpleTextDocumentService implements TextDocumentService {
                   if (method.isPresent()) {
                     return Util.positionToLocationList(
                         Util.pathToUri(sc.getClassSource().getSourcePath()),
-                        method.get().getPosition());
+                        getDocumentPosition(sc, method.get().getPosition()));
                   }
                 }
 
@@ -617,7 +954,7 @@ public class JimpleTextDocumentService implements TextDocumentService {
                   if (field.isPresent()) {
                     return Util.positionToLocationList(
                         Util.pathToUri(sc.getClassSource().getSourcePath()),
-                        field.get().getPosition());
+                        getDocumentPosition(sc, field.get().getPosition()));
                   }
                 }
               }
@@ -634,12 +971,15 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
     return getServer()
         .pool(
-            () -> {
+            position.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_HIGH,
+            cancelChecker -> {
               final String uri = position.getTextDocument().getUri();
               final SignaturePositionResolver sigResolver = getSignaturePositionResolver(uri);
               if (sigResolver == null) {
                 return null;
               }
+              cancelChecker.checkCanceled();
               final Pair<Signature, Range> sigInstance =
                   sigResolver.resolve(position.getPosition());
               if (sigInstance == null) {
@@ -711,34 +1051,18 @@ public class JimpleTextDocumentService implements TextDocumentService {
     // local references
     return getServer()
         .pool(
-            () -> {
+            position.getTextDocument().getUri(),
+            LaneExecutors.PRIORITY_HIGH,
+            cancelChecker -> {
               final String uri = position.getTextDocument().getUri();
-              Path path = Util.uriToPath(uri);
-              final JimpleParser parser = getParser(path);
-              if (parser == null) {
-                return null;
-              }
-              ParseTree parseTree = parser.file();
-              if (parseTree == null) {
-                return null;
-              }
-
-              final LocalPositionResolver resolver = new LocalPositionResolver(path, parseTree);
-
-              final ClassType classType = getServer().uriToClasstype(uri);
-              if (classType == null) {
+              final LocalPositionResolver resolver = getLocalPositionResolver(uri);
+              if (resolver == null) {
                 return null;
               }
-              final JimpleView view = getServer().getView();
-              final Optional<SootClass<?>> aClass = view.getClass(classType);
-              if (aClass.isPresent()) {
-                SootClass<?> sc = aClass.get();
-                return resolver.resolveReferences(sc, position).stream()
-                    .map(ref -> new DocumentHighlight(ref.getRange(), DocumentHighlightKind.Text))
-                    .collect(Collectors.toList());
-              }
 
-              return null;
+              return resolver.resolveReferences(position).stream()
+                  .map(ref -> new DocumentHighlight(ref.getRange(), DocumentHighlightKind.Text))
+                  .collect(Collectors.toList());
             });
   }
 
@@ -758,7 +1082,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
     return getServer()
         .pool(
-            () -> {
+            uri,
+            cancelChecker -> {
               // warning: removes comments!
               final ClassType classType = getServer().uriToClasstype(uri);
               if (classType == null) {
@@ -775,12 +1100,14 @@ public class JimpleTextDocumentService implements TextDocumentService {
                 printer.printTo(sc, writer);
                 writer.close();
                 final String newText = out.toString();
+                final sootup.core.model.Position classPosition =
+                    getDocumentPosition(sc, sc.getPosition());
                 return Collections.singletonList(
                     new TextEdit(
                         new Range(
                             new Position(0, 0),
                             new Position(
-                                sc.getPosition().getLastLine(), sc.getPosition().getLastCol())),
+                                classPosition.getLastLine(), classPosition.getLastCol())),
                         newText));
               }
               return null;
@@ -796,7 +1123,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
     return getServer()
         .pool(
-            () -> {
+            params.getTextDocument().getUri(),
+            cancelChecker -> {
               final ClassType classType =
                   getServer().uriToClasstype(params.getTextDocument().getUri());
               if (classType == null) {
@@ -809,9 +1137,10 @@ public class JimpleTextDocumentService implements TextDocumentService {
                 sc.getMethods()
                     .forEach(
                         m -> {
+                          final sootup.core.model.Position position =
+                              getDocumentPosition(sc, m.getPosition());
                           final FoldingRange fr =
-                              new FoldingRange(
-                                  m.getPosition().getFirstLine(), m.getPosition().getLastLine());
+                              new FoldingRange(position.getFirstLine(), position.getLastLine());
                           fr.setKind("region");
                           frList.add(fr);
                         });
@@ -831,7 +1160,8 @@ public class JimpleTextDocumentService implements TextDocumentService {
 
     return getServer()
         .pool(
-            () -> {
+            params.getTextDocument() == null ? null : params.getTextDocument().getUri(),
+            cancelChecker -> {
               final TextDocumentClientCapabilities textDocumentCap =
                   getServer().getClientCapabilities().getTextDocument();
               if (textDocumentCap == null) {
@@ -866,7 +1196,13 @@ public class JimpleTextDocumentService implements TextDocumentService {
               List<SymbolInformation> list = new ArrayList<>();
               int limit = Integer.MAX_VALUE;
               JimpleSymbolProvider.retrieveAndFilterSymbolsFromClass(
-                  list, null, sc, getSignaturePositionResolver(uri), symbolKind, limit);
+                  list,
+                  null,
+                  sc,
+                  getSignaturePositionResolver(uri),
+                  position -> getDocumentPosition(sc, position),
+                  symbolKind,
+                  limit);
 
               return list.stream()
                   .<Either<SymbolInformation, DocumentSymbol>>map(Either::forLeft)
@@ -874,79 +1210,118 @@ public class JimpleTextDocumentService implements TextDocumentService {
             });
   }
 
-  @Nullable
-  ParserRuleContext tryParse(
-      @Nonnull JimpleParser jp, @Nonnull List<Function<JimpleParser, ParserRuleContext>> levels) {
-
-    ParserRuleContext tree;
-    for (Function<JimpleParser, ParserRuleContext> level : levels) {
-      try {
-        tree = level.apply(jp);
-        if (jp.getNumberOfSyntaxErrors() > 0) {
-          jp.reset();
-          continue;
-        }
-      } catch (Exception e) {
-        jp.reset();
-        continue;
-      }
-      return tree;
+  @Override
+  public CompletableFuture<SemanticTokens> semanticTokensFull(SemanticTokensParams params) {
+    final TextDocumentIdentifier textDoc = params.getTextDocument();
+    if (textDoc == null) {
+      return null;
     }
-
-    return null;
+    final String uri = textDoc.getUri();
+    return getServer()
+        .pool(
+            uri,
+            cancelChecker -> {
+              final SemanticTokensCache.Entry tokens = getSemanticTokens(uri, cancelChecker);
+              if (tokens == null) {
+                return null;
+              }
+              semanticTokensCache.sent(uri, tokens);
+              return new SemanticTokens(
+                  tokens.getResultId(), SemanticTokensCache.toList(tokens.getData()));
+            });
   }
 
   @Override
-  public CompletableFuture<SemanticTokens> semanticTokensFull(SemanticTokensParams params) {
+  public CompletableFuture<Either<SemanticTokens, SemanticTokensDelta>> semanticTokensFullDelta(
+      SemanticTokensDeltaParams params) {
     final TextDocumentIdentifier textDoc = params.getTextDocument();
     if (textDoc == null) {
       return null;
     }
-    final Path path = Util.uriToPath(textDoc.getUri());
+    final String uri = textDoc.getUri();
     return getServer()
         .pool(
-            () -> {
-              final JimpleParser parser = getParser(path);
-              if (parser == null) {
-                // e.g. file not found
+            uri,
+            cancelChecker -> {
+              // lookup before computing: computing replaces the tokens the client refers to
+              final SemanticTokensCache.Entry previous =
+                  semanticTokensCache.getByResultId(uri, params.getPreviousResultId());
+              final SemanticTokensCache.Entry tokens = getSemanticTokens(uri, cancelChecker);
+              if (tokens == null) {
                 return null;
               }
+              semanticTokensCache.sent(uri, tokens);
+              if (previous == null) {
+                // the client refers to tokens we do not know (anymore)
+                return Either.forLeft(
+                    new SemanticTokens(
+                        tokens.getResultId(), SemanticTokensCache.toList(tokens.getData())));
+              }
+              return Either.forRight(
+                  new SemanticTokensDelta(
+                      tokens.getResultId(),
+                      SemanticTokensCache.diff(previous.getData(), tokens.getData())));
+            });
+  }
 
-              List<Function<JimpleParser, ParserRuleContext>> levels = new ArrayList<>();
-              levels.add(JimpleParser::file);
-              levels.add(JimpleParser::member);
-              levels.add(JimpleParser::method_body);
-
-              levels.add(JimpleParser::declarations);
-              levels.add(JimpleParser::statements);
-              levels.add(JimpleParser::trap_clauses);
-
-              levels.add(JimpleParser::field_signature);
-              levels.add(JimpleParser::method_signature);
-              levels.add(JimpleParser::method_subsignature);
-              levels.add(JimpleParser::immediate);
-
-              final ParserRuleContext parseTree = tryParse(parser, levels);
-              if (parseTree == null) {
+  @Override
+  public CompletableFuture<SemanticTokens> semanticTokensRange(SemanticTokensRangeParams params) {
+    final TextDocumentIdentifier textDoc = params.getTextDocument();
+    if (textDoc == null || params.getRange() == null) {
+      return null;
+    }
+    final String uri = textDoc.getUri();
+    return getServer()
+        .pool(
+            uri,
+            LaneExecutors.PRIORITY_HIGH,
+            cancelChecker -> {
+              final SemanticTokensCache.Entry tokens = getSemanticTokens(uri, cancelChecker);
+              if (tokens == null) {
                 return null;
               }
-
-              return SyntaxHighlightingProvider.paintbrush(parseTree);
+              return new SemanticTokens(
+                  SemanticTokensCache.slice(tokens.getData(), params.getRange()));
             });
   }
 
-  public JimpleParser getDocParseTree(Path path) {
-    return docParseTree.computeIfAbsent(
-        path,
-        p -> {
-          try {
-            analyzeFile(Util.pathToUri(path), Arrays.toString(Files.readAllBytes(path)));
-            return docParseTree.get(path);
-          } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-          }
-        });
+  /**
+   * @return the semantic tokens of the current version of the document - they are painted only
+   *     once per version from the token stream and painted again from the parse tree as soon as a
+   *     valid tree of that version exists.
+   */
+  @Nullable
+  private SemanticTokensCache.Entry getSemanticTokens(
+      @Nonnull String uri, @Nonnull CancelChecker cancelChecker) {
+    final Path path = Util.uriToPath(uri);
+    final WorkspaceSnapshot.DocumentSnapshot document = getSnapshot().getDocument(uri);
+    final int version = document == null ? -1 : document.getVersion();
+    // don't wait for an analysis: use the tree only if it exists already
+    final DocumentAnalysis analysis =
+        document == null ? docAnalysis.get(path) : document.getCurrentAnalysis();
+    final boolean refinable =
+        analysis != null && analysis.getVersion() == version && analysis.getParseTree() != null;
+
+    final SemanticTokensCache.Entry cached = semanticTokensCache.get(uri, version);
+    if (cached != null && (cached.isRefined() || !refinable)) {
+      return cached;
+    }
+
+    final SemanticTokens tokens;
+    try {
+      if (refinable) {
+        tokens = SyntaxHighlightingProvider.paintbrush(analysis.getParseTree(), cancelChecker);
+      } else {
+        tokens = LexicalHighlightingProvider.paintbrush(getCharStream(path), cancelChecker);
+      }
+    } catch (IOException e) {
+      // e.g. file not found
+      forwardException(e);
+      return null;
+    }
+    return semanticTokensCache.put(
+        uri, version, SemanticTokensCache.toArray(tokens.getData()), refinable);
   }
 
+
 }
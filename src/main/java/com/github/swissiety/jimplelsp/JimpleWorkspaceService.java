@@ -1,12 +1,13 @@
 package com.github.swissiety.jimplelsp;
 
-import com.github.swissiety.jimplelsp.provider.JimpleSymbolProvider;
-import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.github.swissiety.jimplelsp.executor.LaneExecutors;
+import com.github.swissiety.jimplelsp.index.SymbolIndex;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.lsp4j.services.WorkspaceService;
-import sootup.core.model.SootClass;
 
+import javax.annotation.Nullable;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -27,49 +28,55 @@ public class JimpleWorkspaceService implements WorkspaceService {
   public CompletableFuture<Either<List<? extends SymbolInformation>, List<? extends WorkspaceSymbol>>> symbol(WorkspaceSymbolParams params) {
     return getServer()
         .pool(
-            () -> {
+            null,
+            LaneExecutors.PRIORITY_LOW,
+            cancelChecker -> {
               int limit = 32;
-              List<? extends SymbolInformation> list = new ArrayList<>(limit);
+              List<SymbolInformation> list = new ArrayList<>(limit);
 
-              final String query = params.getQuery().trim().toLowerCase();
+              final String query = params.getQuery().trim();
 
               // start searching if the query has sth relevant/"enough" input for searching
               if (query.length() >= 2) {
-                getServer()
-                    .getView()
-                    .getClasses()
-                    .forEach(
-                        clazz -> {
-                          if (list.size() >= limit) {
-                            return;
-                          }
-
-                          final SymbolCapabilities workspaceSymbol =
-                              getServer().getClientCapabilities().getWorkspace().getSymbol();
-                          if (workspaceSymbol == null) {
-                            return;
-                          }
-                          final SymbolKindCapabilities symbolKind = workspaceSymbol.getSymbolKind();
-                          if (symbolKind == null) {
-                            return;
-                          }
-
-                          final SignaturePositionResolver signaturePositionResolver =
-                              ((JimpleTextDocumentService) getServer().getTextDocumentService())
-                                  .getSignaturePositionResolver(Util.classToUri(clazz));
-                          /* FIXME; JimpleSymbolProvider.retrieveAndFilterSymbolsFromClass(
-                              list,
-                              query,
-                              (SootClass) clazz,
-                              signaturePositionResolver,
-                              symbolKind,
-                              limit); */
-                        });
+                final List<SymbolKind> supportedKinds = getSupportedSymbolKinds();
+                final List<SymbolIndex.Symbol> symbols =
+                    getServer()
+                        .getSymbolIndex()
+                        .search(
+                            query,
+                            limit,
+                            symbol ->
+                                supportedKinds == null
+                                    || supportedKinds.contains(symbol.getKind()),
+                            cancelChecker);
+                for (SymbolIndex.Symbol symbol : symbols) {
+                  list.add(
+                      new SymbolInformation(
+                          symbol.getName(),
+                          symbol.getKind(),
+                          symbol.getLocation(),
+                          symbol.getContainerName()));
+                }
               }
               return Either.forLeft(list);
             });
   }
 
+  /** @return the SymbolKinds the client supports or null if it supports the default set */
+  @Nullable
+  private List<SymbolKind> getSupportedSymbolKinds() {
+    final ClientCapabilities capabilities = getServer().getClientCapabilities();
+    if (capabilities == null || capabilities.getWorkspace() == null) {
+      return null;
+    }
+    final SymbolCapabilities workspaceSymbol = capabilities.getWorkspace().getSymbol();
+    if (workspaceSymbol == null || workspaceSymbol.getSymbolKind() == null) {
+      return null;
+    }
+    // the default set of the specification contains classes, methods and fields
+    return workspaceSymbol.getSymbolKind().getValueSet();
+  }
+
     @Override
     public void didChangeConfiguration(DidChangeConfigurationParams didChangeConfigurationParams) {
 
@@ -77,6 +84,17 @@ public class JimpleWorkspaceService implements WorkspaceService {
 
     @Override
     public void didChangeWatchedFiles(DidChangeWatchedFilesParams didChangeWatchedFilesParams) {
-
+        if (didChangeWatchedFilesParams == null || didChangeWatchedFilesParams.getChanges() == null) {
+            return;
+        }
+        // changes made outside of the editor: queued to be indexed in batches
+        for (FileEvent event : didChangeWatchedFilesParams.getChanges()) {
+            final Path path = Util.uriToPath(event.getUri());
+            if (event.getType() == FileChangeType.Deleted) {
+                getServer().unindex(path);
+            } else {
+                getServer().reindex(path);
+            }
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.github.swissiety.jimplelsp;
 
+import com.github.swissiety.jimplelsp.provider.IntArrayList;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
@@ -46,6 +47,10 @@ public class Main {
                   .setOutput(logStream(socket.getOutputStream(), "serverIn"))
                   .setExecutorService(Executors.newCachedThreadPool())
                   .traceMessages(new PrintWriter(System.out))
+                  .configureGson(
+                      gson ->
+                          gson.registerTypeAdapter(
+                              IntArrayList.class, new IntArrayList.GsonAdapter()))
                   .create();
           launcher.startListening();
           server.connectClient(launcher.getRemoteProxy());
@@ -58,8 +63,15 @@ public class Main {
     } else {
       JimpleLspServer server = new JimpleLspServer();
       Launcher<LanguageClient> l =
-          LSPLauncher.createServerLauncher(
-              server, logStream(System.in, "serverOut"), logStream(System.out, "serverIn"));
+          new LSPLauncher.Builder<LanguageClient>()
+              .setLocalService(server)
+              .setRemoteInterface(LanguageClient.class)
+              .setInput(logStream(System.in, "serverOut"))
+              .setOutput(logStream(System.out, "serverIn"))
+              .configureGson(
+                  gson ->
+                      gson.registerTypeAdapter(IntArrayList.class, new IntArrayList.GsonAdapter()))
+              .create();
       l.startListening();
       server.connectClient(l.getRemoteProxy());
     }
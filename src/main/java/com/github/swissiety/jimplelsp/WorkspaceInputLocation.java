@@ -0,0 +1,52 @@
+package com.github.swissiety.jimplelsp;
+
+import sootup.core.frontend.SootClassSource;
+import sootup.core.inputlocation.AnalysisInputLocation;
+import sootup.core.model.SootClass;
+import sootup.core.model.SourceType;
+import sootup.core.types.ClassType;
+import sootup.core.views.View;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Provides the classes of the workspace to the JimpleView. The sources are looked up in the live
+ * mappings of the server so that the view does not need to be recreated if a document changes.
+ *
+ * @author Markus Schmidt
+ */
+class WorkspaceInputLocation implements AnalysisInputLocation<SootClass<?>> {
+  @Nonnull private final JimpleLspServer server;
+
+  WorkspaceInputLocation(@Nonnull JimpleLspServer server) {
+    this.server = server;
+  }
+
+  @Nonnull
+  @Override
+  @SuppressWarnings("unchecked")
+  public Optional<? extends SootClassSource<SootClass<?>>> getClassSource(
+      @Nonnull ClassType type, @Nonnull View<?> view) {
+    return Optional.ofNullable((SootClassSource<SootClass<?>>) server.getClassSource(type));
+  }
+
+  @Nonnull
+  @Override
+  @SuppressWarnings("unchecked")
+  public Collection<? extends SootClassSource<SootClass<?>>> getClassSources(
+      @Nonnull View<?> view) {
+    return server.getWorkspaceClassTypes().stream()
+        .map(type -> (SootClassSource<SootClass<?>>) server.getClassSource(type))
+        .filter(source -> source != null)
+        .collect(Collectors.toList());
+  }
+
+  @Nonnull
+  @Override
+  public SourceType getSourceType() {
+    return SourceType.Application;
+  }
+}
@@ -0,0 +1,253 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import com.github.swissiety.jimplelsp.resolver.LocalPositionResolver;
+import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.github.swissiety.jimplelsp.workingtree.VersionedFile;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.eclipse.lsp4j.Position;
+import sootup.core.frontend.ResolveException;
+import sootup.core.frontend.SootClassSource;
+import sootup.core.inputlocation.EagerInputLocation;
+import sootup.core.model.FullPosition;
+import sootup.core.model.SootClass;
+import sootup.jimple.JimpleLexer;
+import sootup.jimple.JimpleParser;
+import sootup.jimple.parser.JimpleConverter;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+/**
+ * The AnalysisPipeline parses a Jimple document exactly once and derives the class conversion, the
+ * Signature occurences and the Local occurences from that single parse tree. Changes of an opened
+ * document which are limited to a single method body are analyzed by parsing this method only.
+ *
+ * @author Markus Schmidt
+ */
+public class AnalysisPipeline {
+
+  private AnalysisPipeline() {}
+
+  @Nonnull
+  public static DocumentAnalysis analyze(@Nonnull Path path, @Nonnull CharStream charStream) {
+    return analyze(path, charStream, -1);
+  }
+
+  /** @param version the version of the opened document or -1 if the content is from disk */
+  @Nonnull
+  public static DocumentAnalysis analyze(
+      @Nonnull Path path, @Nonnull CharStream charStream, int version) {
+    return analyze(path, charStream, version, null);
+  }
+
+  /**
+   * analyzes a version of an opened document. The analysis retains what is needed to analyze the
+   * following versions incrementally.
+   */
+  @Nonnull
+  public static DocumentAnalysis analyze(@Nonnull Path path, @Nonnull VersionedFile file) {
+    return analyze(path, file.getCharStream(), file.getVersion(), file);
+  }
+
+  @Nonnull
+  private static DocumentAnalysis analyze(
+      @Nonnull Path path,
+      @Nonnull CharStream charStream,
+      int version,
+      @Nullable VersionedFile file) {
+    try {
+      final long contentHash = contentHash(charStream);
+      final JimpleParser parser = JimpleConverterUtil.createJimpleParser(charStream, path);
+      final JimpleParser.FileContext parseTree = JimpleParsing.parseFile(parser);
+
+      // let the JimpleConverter visit the existing tree instead of parsing the text again
+      final SootClassSource<? extends SootClass<?>> classSource =
+          new JimpleConverter()
+              .run(
+                  new PreParsedJimpleParser(parser.getTokenStream(), parseTree),
+                  new EagerInputLocation<>(),
+                  path);
+
+      final SignaturePositionResolver signaturePositionResolver =
+          new SignaturePositionResolver(path);
+      final LocalPositionResolver localPositionResolver = new LocalPositionResolver(path);
+      ParseTreeWalker.DEFAULT.walk(
+          new CompositeParseTreeListener(
+              signaturePositionResolver.getListener(), localPositionResolver.getListener()),
+          parseTree);
+
+      final MemberSpans members = file == null ? null : MemberSpans.of(parseTree);
+      return new DocumentAnalysis(
+          path,
+          version,
+          contentHash,
+          parseTree,
+          classSource,
+          signaturePositionResolver,
+          localPositionResolver,
+          file,
+          members,
+          members);
+    } catch (Exception e) {
+      // i.e. a ResolveException for syntactically/semantically invalid Jimple
+      return new DocumentAnalysis(path, version, e);
+    }
+  }
+
+  /**
+   * @return the previous analysis for the given version of the document if its content is
+   *     unchanged or null if it needs to be analyzed
+   */
+  @Nullable
+  public static DocumentAnalysis analyzeUnchanged(
+      @Nonnull DocumentAnalysis previous, @Nonnull VersionedFile file) {
+    // an incremental analysis is completed by analyzing the unchanged content as a whole
+    if (!previous.isValid()
+        || previous.getParseTree() == null
+        || previous.getContentHash() != contentHash(file.getCharStream())) {
+      return null;
+    }
+    return previous.getVersion() == file.getVersion() ? previous : previous.withFile(file);
+  }
+
+  /**
+   * hashes the text to detect unchanged content without parsing it. The 64 bit FNV-1a hash makes
+   * collisions of different contents of a document practically impossible. The stream is rewound
+   * to its start.
+   */
+  public static long contentHash(@Nonnull CharStream charStream) {
+    charStream.seek(0);
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 1; i <= charStream.size(); i++) {
+      hash ^= charStream.LA(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * analyzes a new version of an opened document by parsing only the method whose body contains
+   * all changes since the previous analysis. The occurences of the other members are moved and the
+   * class of the previous analysis is kept: a change inside a method body does not change its
+   * signature. The positions of the kept class are mapped via
+   * DocumentAnalysis.toAnalyzedPosition(). Semantic errors inside the body are reported by the
+   * next full analysis. Only the text of the method is read: the changed region is known from the
+   * ranges of the changes.
+   *
+   * @param previous a valid analysis of an older version of the document
+   * @param changedRegion the region changed since the version of the previous analysis
+   * @return the analysis or null if the changes are not limited to a single method body - i.e. the
+   *     whole document needs to be analyzed
+   */
+  @Nullable
+  public static DocumentAnalysis analyzeIncrementally(
+      @Nonnull DocumentAnalysis previous,
+      @Nonnull VersionedFile file,
+      @Nullable ChangedRegion changedRegion) {
+    final MemberSpans members = previous.getMembers();
+    final SootClassSource<? extends SootClass<?>> classSource = previous.getClassSource();
+    final SignaturePositionResolver signaturePositionResolver =
+        previous.getSignaturePositionResolver();
+    final LocalPositionResolver localPositionResolver = previous.getLocalPositionResolver();
+    if (changedRegion == null
+        || members == null
+        || classSource == null
+        || signaturePositionResolver == null
+        || localPositionResolver == null) {
+      return null;
+    }
+
+    final int member = members.findBody(changedRegion.getStart(), changedRegion.getPreviousEnd());
+    if (member < 0) {
+      return null;
+    }
+    final Position start = members.getStart(member);
+    final Position end = members.getEnd(member);
+    // the member starts in front of the changed region and ends behind it
+    final Position newEnd = changedRegion.toCurrent(end);
+    final int startOffset = members.getStartOffset(member);
+    final int stopOffset = file.getOffset(newEnd);
+    final String memberText =
+        file.getCharStream().getText(Interval.of(startOffset, stopOffset - 1));
+    final Path path = previous.getPath();
+    try {
+      final JimpleParser.MemberContext memberContext = parseMember(path, memberText, start);
+      if (memberContext == null) {
+        return null;
+      }
+      final MemberSpans replacedMembers =
+          members.replace(member, memberContext, stopOffset - members.getStopOffset(member));
+      if (replacedMembers == null) {
+        // the following member can not be moved by whole lines
+        return null;
+      }
+      final int lineShift = newEnd.getLine() - end.getLine();
+
+      return new DocumentAnalysis(
+          path,
+          file.getVersion(),
+          0,
+          null,
+          classSource,
+          signaturePositionResolver.replaceMember(start, end, lineShift, memberContext),
+          localPositionResolver.replaceMember(start, end, lineShift, memberContext),
+          file,
+          replacedMembers,
+          previous.getClassMembers());
+    } catch (Exception e) {
+      // i.e. a ResolveException for syntactically/semantically invalid Jimple
+      return new DocumentAnalysis(path, file.getVersion(), e);
+    }
+  }
+
+  /**
+   * @param start the position of the member in the document: the tokens are positioned relative to
+   *     it
+   * @return the member or null if the text is not exactly one member
+   */
+  @Nullable
+  private static JimpleParser.MemberContext parseMember(
+      @Nonnull Path path, @Nonnull String memberText, @Nonnull Position start) {
+    final BaseErrorListener errorListener =
+        new BaseErrorListener() {
+          @Override
+          public void syntaxError(
+              Recognizer<?, ?> recognizer,
+              Object offendingSymbol,
+              int line,
+              int charPositionInLine,
+              String msg,
+              RecognitionException e) {
+            throw new ResolveException(
+                "Jimple Syntaxerror: " + msg,
+                path,
+                new FullPosition(line - 1, charPositionInLine, line - 1, charPositionInLine + 1));
+          }
+        };
+    final JimpleLexer lexer = new JimpleLexer(CharStreams.fromString(memberText, path.toString()));
+    lexer.setLine(start.getLine() + 1);
+    lexer.setCharPositionInLine(start.getCharacter());
+    lexer.removeErrorListeners();
+    lexer.addErrorListener(errorListener);
+    final JimpleParser parser = new JimpleParser(new CommonTokenStream(lexer));
+    parser.removeErrorListeners();
+    parser.addErrorListener(errorListener);
+
+    final JimpleParser.MemberContext member = JimpleParsing.parseMember(parser);
+    if (parser.getTokenStream().LA(1) != Token.EOF || member.method() == null) {
+      // e.g. the method was split into two
+      return null;
+    }
+    return member;
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * The AnalysisScheduler debounces the (re)analysis of documents: a burst of changes to a document
+ * results in a single analysis after the document was not changed for the given delay. Pending
+ * analyses of a document are cancelled if a newer one is scheduled. Due analyses are handed over
+ * to the given analysis Executor; if it rejects one, the analysis is retried after the delay.
+ *
+ * @author Markus Schmidt
+ */
+public class AnalysisScheduler {
+  @Nonnull private final ScheduledExecutorService timer;
+  @Nonnull private final Executor analysisExecutor;
+  // time in ms to wait at least until a rejected analysis is submitted again
+  private static final long MIN_RETRY_DELAY = 50;
+  // removed once the analysis completed
+  @Nonnull private final Map<String, Pending> pendingAnalyses = new ConcurrentHashMap<>();
+
+  /** a scheduled analysis; identifies the entry of its document to remove it on completion. */
+  private static final class Pending {
+    private ScheduledFuture<?> future;
+  }
+
+  public AnalysisScheduler(@Nonnull Executor analysisExecutor) {
+    this.analysisExecutor = analysisExecutor;
+    // the timer thread only waits for the debounce delays - the analyses run on analysisExecutor
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "jimplelsp-analysis-timer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** schedules the analysis of the given document and cancels its pending analysis (if any). */
+  public void schedule(@Nonnull String uri, @Nonnull Runnable analysis, long delayMs) {
+    pendingAnalyses.compute(
+        uri,
+        (key, pending) -> {
+          if (pending != null) {
+            // does not interrupt an already running analysis; it is discarded as it is superseded
+            pending.future.cancel(false);
+          }
+          final Pending scheduled = new Pending();
+          // the entry of the document is locked until the future is assigned
+          scheduled.future =
+              timer.schedule(
+                  () -> submit(uri, analysis, scheduled, delayMs),
+                  Math.max(0, delayMs),
+                  TimeUnit.MILLISECONDS);
+          return scheduled;
+        });
+  }
+
+  private void submit(
+      @Nonnull String uri, @Nonnull Runnable analysis, @Nonnull Pending scheduled, long delayMs) {
+    try {
+      analysisExecutor.execute(
+          () -> {
+            try {
+              analysis.run();
+            } finally {
+              pendingAnalyses.remove(uri, scheduled);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // the analysis lane is overloaded: retry unless a newer analysis was scheduled meanwhile
+      pendingAnalyses.computeIfPresent(
+          uri,
+          (key, pending) -> {
+            if (pending == scheduled) {
+              scheduled.future =
+                  timer.schedule(
+                      () -> submit(uri, analysis, scheduled, delayMs),
+                      Math.max(MIN_RETRY_DELAY, delayMs),
+                      TimeUnit.MILLISECONDS);
+            }
+            return pending;
+          });
+    }
+  }
+
+  /** cancels the pending analysis of the given document e.g. when its closed. */
+  public void cancel(@Nonnull String uri) {
+    final Pending pending = pendingAnalyses.remove(uri);
+    if (pending != null) {
+      pending.future.cancel(false);
+    }
+  }
+
+  /** @return whether an analysis of the given document is scheduled or running */
+  boolean isPending(@Nonnull String uri) {
+    return pendingAnalyses.containsKey(uri);
+  }
+
+  public void shutdown() {
+    timer.shutdownNow();
+  }
+}
@@ -0,0 +1,213 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache whose strongly referenced values are bounded by an estimated heap budget. Once the
+ * budget is exceeded the least recently used values are demoted to soft references: they are
+ * still returned if the garbage collector did not reclaim them yet, otherwise they are recomputed
+ * on the next request.
+ *
+ * @author Markus Schmidt
+ */
+public class BoundedCache<K, V> {
+
+  private static final class SoftValue<K, V> extends SoftReference<V> {
+    @Nonnull private final K key;
+
+    private SoftValue(@Nonnull K key, @Nonnull V value, @Nonnull ReferenceQueue<V> queue) {
+      super(value, queue);
+      this.key = key;
+    }
+  }
+
+  private static final class Entry<V> {
+    @Nonnull private final V value;
+    private final long weight;
+
+    private Entry(@Nonnull V value, long weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  @Nonnull private final ToLongFunction<V> weigher;
+  // access ordered: the eldest entry is the least recently used one
+  @Nonnull private final LinkedHashMap<K, Entry<V>> values = new LinkedHashMap<>(16, 0.75f, true);
+  @Nonnull private final Map<K, SoftValue<K, V>> evictedValues = new HashMap<>();
+  @Nonnull private final ReferenceQueue<V> reclaimedValues = new ReferenceQueue<>();
+  private long budget;
+  private long weight = 0;
+  // keys whose value is computed right now; put and remove drop the key as the computation
+  // might be based on outdated state then
+  @Nonnull private final Map<K, CompletableFuture<V>> computations = new HashMap<>();
+
+  /**
+   * @param budget the estimated heap in bytes the strongly referenced values may occupy
+   * @param weigher estimates the heap a value occupies in bytes
+   */
+  public BoundedCache(long budget, @Nonnull ToLongFunction<V> weigher) {
+    this.budget = budget;
+    this.weigher = weigher;
+  }
+
+  @Nullable
+  public synchronized V get(@Nonnull K key) {
+    expungeReclaimedValues();
+    final Entry<V> entry = values.get(key);
+    if (entry != null) {
+      return entry.value;
+    }
+    final SoftValue<K, V> evicted = evictedValues.remove(key);
+    if (evicted == null) {
+      return null;
+    }
+    final V value = evicted.get();
+    if (value != null) {
+      // used again: promote it back
+      insert(key, value);
+    }
+    return value;
+  }
+
+  public synchronized void put(@Nonnull K key, @Nonnull V value) {
+    computations.remove(key);
+    expungeReclaimedValues();
+    insert(key, value);
+  }
+
+  public synchronized void remove(@Nonnull K key) {
+    computations.remove(key);
+    final Entry<V> entry = values.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+    evictedValues.remove(key);
+  }
+
+  /**
+   * computes a missing value outside of the lock - i.e. other keys stay accessible meanwhile. A
+   * key is computed once at a time: concurrent misses of the same key wait for the running
+   * computation. The computed value is not cached if the key was put or removed during its
+   * computation, as it might be based on outdated state then.
+   *
+   * @return the cached or computed value or null if the computation returned null
+   */
+  @Nullable
+  public V computeIfAbsent(@Nonnull K key, @Nonnull Function<K, V> computation) {
+    CompletableFuture<V> future;
+    while (true) {
+      future = new CompletableFuture<>();
+      final CompletableFuture<V> running;
+      synchronized (this) {
+        final V cached = get(key);
+        if (cached != null) {
+          return cached;
+        }
+        running = computations.putIfAbsent(key, future);
+      }
+      if (running == null) {
+        break;
+      }
+      try {
+        return running.join();
+      } catch (CompletionException | CancellationException e) {
+        // e.g. the request which computed it was cancelled: compute it for this one
+      }
+    }
+    V value = null;
+    try {
+      value = computation.apply(key);
+    } catch (RuntimeException | Error e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      synchronized (this) {
+        final boolean valid = computations.remove(key, future);
+        final V cached = get(key);
+        if (cached != null) {
+          value = cached;
+        } else if (valid && value != null) {
+          insert(key, value);
+        }
+      }
+      future.complete(value);
+    }
+    return value;
+  }
+
+  /** sets the estimated heap in bytes the strongly referenced values may occupy. */
+  public synchronized void setBudget(long budget) {
+    this.budget = budget;
+    evict();
+  }
+
+  /** @return the estimated heap in bytes the strongly referenced values occupy */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /** @return whether the value of the key is strongly referenced i.e. it was not evicted */
+  public synchronized boolean isRetained(@Nonnull K key) {
+    return values.containsKey(key);
+  }
+
+  /** @return the number of strongly referenced values */
+  public synchronized int size() {
+    return values.size();
+  }
+
+  public synchronized void clear() {
+    computations.clear();
+    values.clear();
+    evictedValues.clear();
+    weight = 0;
+  }
+
+  private void insert(@Nonnull K key, @Nonnull V value) {
+    final Entry<V> entry = new Entry<>(value, Math.max(0, weigher.applyAsLong(value)));
+    final Entry<V> previous = values.put(key, entry);
+    if (previous != null) {
+      weight -= previous.weight;
+    }
+    evictedValues.remove(key);
+    weight += entry.weight;
+    evict();
+  }
+
+  /** demotes the least recently used values until the budget is met again. */
+  private void evict() {
+    final Iterator<Map.Entry<K, Entry<V>>> iterator = values.entrySet().iterator();
+    // the most recently used value stays even if it exceeds the budget on its own
+    while (weight > budget && values.size() > 1 && iterator.hasNext()) {
+      final Map.Entry<K, Entry<V>> eldest = iterator.next();
+      iterator.remove();
+      weight -= eldest.getValue().weight;
+      evictedValues.put(
+          eldest.getKey(),
+          new SoftValue<>(eldest.getKey(), eldest.getValue().value, reclaimedValues));
+    }
+  }
+
+  /** forgets the keys of soft values which were reclaimed by the garbage collector. */
+  @SuppressWarnings("unchecked")
+  private void expungeReclaimedValues() {
+    SoftValue<K, V> reclaimed;
+    while ((reclaimed = (SoftValue<K, V>) reclaimedValues.poll()) != null) {
+      // the key might have been reassigned meanwhile
+      evictedValues.remove(reclaimed.key, reclaimed);
+    }
+  }
+}
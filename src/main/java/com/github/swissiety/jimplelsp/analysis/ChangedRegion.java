@@ -0,0 +1,139 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The region of a document which was changed since it was analyzed, derived from the ranges of the
+ * change events - i.e. without comparing the texts. The text in front of the region and the text
+ * behind it are unchanged; the text behind it may have moved.
+ *
+ * @author Markus Schmidt
+ */
+public final class ChangedRegion {
+  // the end of the unchanged text in front of the region
+  @Nonnull private final Position start;
+  // the start of the unchanged text behind the region in the analyzed version
+  @Nonnull private final Position previousEnd;
+  // the start of the unchanged text behind the region in the current version
+  @Nonnull private final Position end;
+
+  private ChangedRegion(
+      @Nonnull Position start, @Nonnull Position previousEnd, @Nonnull Position end) {
+    this.start = start;
+    this.previousEnd = previousEnd;
+    this.end = end;
+  }
+
+  /**
+   * @param region the region changed before or null if nothing was changed since the analysis
+   * @param changes the changes of the document in the order they were applied
+   * @return the region containing the changes or null if a change replaced the whole document
+   */
+  @Nullable
+  static ChangedRegion apply(
+      @Nullable ChangedRegion region, @Nonnull List<TextDocumentContentChangeEvent> changes) {
+    for (TextDocumentContentChangeEvent change : changes) {
+      final Range range = change.getRange();
+      if (range == null) {
+        return null;
+      }
+      region = apply(region, range.getStart(), range.getEnd(), change.getText());
+    }
+    return region;
+  }
+
+  @Nonnull
+  private static ChangedRegion apply(
+      @Nullable ChangedRegion region,
+      @Nonnull Position changeStart,
+      @Nonnull Position changeEnd,
+      @Nonnull String text) {
+    if (region == null) {
+      return new ChangedRegion(
+          changeStart, changeEnd, moveBehind(changeEnd, changeStart, changeEnd, text));
+    }
+    // the unchanged text behind both starts behind the change and behind the region
+    final Position unchanged = compare(changeEnd, region.end) > 0 ? changeEnd : region.end;
+    return new ChangedRegion(
+        compare(changeStart, region.start) < 0 ? changeStart : region.start,
+        region.toPrevious(unchanged),
+        moveBehind(unchanged, changeStart, changeEnd, text));
+  }
+
+  /** @return the position behind the replaced range [start, end) after it was replaced */
+  @Nonnull
+  private static Position moveBehind(
+      @Nonnull Position position,
+      @Nonnull Position start,
+      @Nonnull Position end,
+      @Nonnull String text) {
+    int lineBreaks = 0;
+    for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+      lineBreaks++;
+    }
+    final int lastLineLength = text.length() - (text.lastIndexOf('\n') + 1);
+    if (position.getLine() == end.getLine()) {
+      final int column =
+          lineBreaks == 0 ? start.getCharacter() + lastLineLength : lastLineLength;
+      return new Position(
+          start.getLine() + lineBreaks, column + position.getCharacter() - end.getCharacter());
+    }
+    return new Position(
+        position.getLine() + lineBreaks - (end.getLine() - start.getLine()),
+        position.getCharacter());
+  }
+
+  private static int compare(@Nonnull Position a, @Nonnull Position b) {
+    if (a.getLine() != b.getLine()) {
+      return Integer.compare(a.getLine(), b.getLine());
+    }
+    return Integer.compare(a.getCharacter(), b.getCharacter());
+  }
+
+  /** @return the end of the unchanged text in front of the region - in both versions */
+  @Nonnull
+  public Position getStart() {
+    return start;
+  }
+
+  /** @return the start of the unchanged text behind the region in the analyzed version */
+  @Nonnull
+  public Position getPreviousEnd() {
+    return previousEnd;
+  }
+
+  /** @return the start of the unchanged text behind the region in the current version */
+  @Nonnull
+  public Position getEnd() {
+    return end;
+  }
+
+  /** @return the position in the current version of a position behind the region */
+  @Nonnull
+  Position toCurrent(@Nonnull Position previousPosition) {
+    return move(previousPosition, previousEnd, end);
+  }
+
+  /** @return the position in the analyzed version of a position behind the region */
+  @Nonnull
+  private Position toPrevious(@Nonnull Position position) {
+    return move(position, end, previousEnd);
+  }
+
+  @Nonnull
+  private static Position move(
+      @Nonnull Position position, @Nonnull Position from, @Nonnull Position to) {
+    if (position.getLine() == from.getLine()) {
+      return new Position(
+          to.getLine(), to.getCharacter() + position.getCharacter() - from.getCharacter());
+    }
+    return new Position(
+        position.getLine() - from.getLine() + to.getLine(), position.getCharacter());
+  }
+}
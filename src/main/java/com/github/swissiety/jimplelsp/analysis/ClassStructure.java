@@ -0,0 +1,95 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import sootup.core.frontend.SootClassSource;
+import sootup.core.model.SootClass;
+import sootup.core.model.SootField;
+import sootup.core.model.SootMethod;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The structure of a class i.e. everything other documents can depend on: its Signature, modifiers
+ * and hierarchy and the Signatures, modifiers and declared exceptions of its members. Two versions
+ * of a class with an equal structure differ in their method bodies at most, so the class lookup and
+ * the type hierarchy do not need to be updated.
+ *
+ * @author Markus Schmidt
+ */
+public final class ClassStructure {
+  @Nonnull private final ClassType classType;
+  @Nonnull private final Set<?> modifiers;
+  @Nullable private final ClassType superclass;
+  @Nonnull private final Set<ClassType> interfaces;
+  @Nullable private final ClassType outerClass;
+  // member Signature -> its modifiers (and declared exceptions)
+  @Nonnull private final Map<Signature, Object> members;
+  private final int hashCode;
+
+  private ClassStructure(
+      @Nonnull ClassType classType,
+      @Nonnull Set<?> modifiers,
+      @Nullable ClassType superclass,
+      @Nonnull Set<ClassType> interfaces,
+      @Nullable ClassType outerClass,
+      @Nonnull Map<Signature, Object> members) {
+    this.classType = classType;
+    this.modifiers = modifiers;
+    this.superclass = superclass;
+    this.interfaces = interfaces;
+    this.outerClass = outerClass;
+    this.members = members;
+    this.hashCode = Objects.hash(classType, modifiers, superclass, interfaces, outerClass, members);
+  }
+
+  @Nonnull
+  public static ClassStructure of(@Nonnull SootClassSource<? extends SootClass<?>> classSource) {
+    final Map<Signature, Object> members = new HashMap<>();
+    for (SootField field : classSource.resolveFields()) {
+      members.put(field.getSignature(), field.getModifiers());
+    }
+    for (SootMethod method : classSource.resolveMethods()) {
+      members.put(
+          method.getSignature(),
+          Arrays.asList(method.getModifiers(), method.getExceptionSignatures()));
+    }
+    return new ClassStructure(
+        classSource.getClassType(),
+        classSource.resolveModifiers(),
+        classSource.resolveSuperclass().orElse(null),
+        new HashSet<>(classSource.resolveInterfaces()),
+        classSource.resolveOuterClass().orElse(null),
+        members);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ClassStructure)) {
+      return false;
+    }
+    final ClassStructure that = (ClassStructure) o;
+    return hashCode == that.hashCode
+        && classType.equals(that.classType)
+        && modifiers.equals(that.modifiers)
+        && Objects.equals(superclass, that.superclass)
+        && interfaces.equals(that.interfaces)
+        && Objects.equals(outerClass, that.outerClass)
+        && members.equals(that.members);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Forwards the events of a single ParseTreeWalker pass to multiple listeners so that a parse tree
+ * needs to be traversed only once.
+ *
+ * @author Markus Schmidt
+ */
+class CompositeParseTreeListener implements ParseTreeListener {
+  @Nonnull private final ParseTreeListener[] listeners;
+
+  CompositeParseTreeListener(@Nonnull ParseTreeListener... listeners) {
+    this.listeners = listeners;
+  }
+
+  @Override
+  public void visitTerminal(TerminalNode node) {
+    for (ParseTreeListener listener : listeners) {
+      listener.visitTerminal(node);
+    }
+  }
+
+  @Override
+  public void visitErrorNode(ErrorNode node) {
+    for (ParseTreeListener listener : listeners) {
+      listener.visitErrorNode(node);
+    }
+  }
+
+  @Override
+  public void enterEveryRule(ParserRuleContext ctx) {
+    // mimics ParseTreeWalker.enterRule() for each listener: the walker itself can not dispatch the
+    // rule specific callbacks as this class is no JimpleListener
+    for (ParseTreeListener listener : listeners) {
+      listener.enterEveryRule(ctx);
+      ctx.enterRule(listener);
+    }
+  }
+
+  @Override
+  public void exitEveryRule(ParserRuleContext ctx) {
+    for (ParseTreeListener listener : listeners) {
+      ctx.exitRule(listener);
+      listener.exitEveryRule(ctx);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import com.github.swissiety.jimplelsp.resolver.LocalPositionResolver;
+import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.github.swissiety.jimplelsp.workingtree.VersionedFile;
+import sootup.core.frontend.SootClassSource;
+import sootup.core.model.FullPosition;
+import sootup.core.model.Position;
+import sootup.core.model.SootClass;
+import sootup.jimple.JimpleParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+/**
+ * Holds everything the AnalysisPipeline derived from a single parse of a Jimple document: the parse
+ * tree, the converted class and the position resolvers. If the document is invalid only the error
+ * is present.
+ *
+ * @author Markus Schmidt
+ */
+public class DocumentAnalysis {
+  @Nonnull private final Path path;
+  private final int version;
+  private final long contentHash;
+  @Nullable private final JimpleParser.FileContext parseTree;
+  @Nullable private final SootClassSource<? extends SootClass<?>> classSource;
+  @Nullable private final SignaturePositionResolver signaturePositionResolver;
+  @Nullable private final LocalPositionResolver localPositionResolver;
+  @Nullable private final Exception error;
+  // the analyzed version of an opened document and the spans of its members: allow to analyze the
+  // following versions incrementally
+  @Nullable private final VersionedFile file;
+  @Nullable private final MemberSpans members;
+  // the spans of the members in the version the class source was converted from
+  @Nullable private final MemberSpans classMembers;
+
+  /**
+   * @param contentHash the hash of the analyzed text or 0 if only a member was parsed again
+   * @param parseTree null if only a member of the document was parsed again
+   * @param classMembers the member spans of the version the class source was converted from
+   */
+  DocumentAnalysis(
+      @Nonnull Path path,
+      int version,
+      long contentHash,
+      @Nullable JimpleParser.FileContext parseTree,
+      @Nonnull SootClassSource<? extends SootClass<?>> classSource,
+      @Nonnull SignaturePositionResolver signaturePositionResolver,
+      @Nonnull LocalPositionResolver localPositionResolver,
+      @Nullable VersionedFile file,
+      @Nullable MemberSpans members,
+      @Nullable MemberSpans classMembers) {
+    this.path = path;
+    this.version = version;
+    this.contentHash = contentHash;
+    this.parseTree = parseTree;
+    this.classSource = classSource;
+    this.signaturePositionResolver = signaturePositionResolver;
+    this.localPositionResolver = localPositionResolver;
+    this.error = null;
+    this.file = file;
+    this.members = members;
+    this.classMembers = classMembers;
+  }
+
+  DocumentAnalysis(@Nonnull Path path, int version, @Nonnull Exception error) {
+    this.path = path;
+    this.version = version;
+    this.contentHash = 0;
+    this.parseTree = null;
+    this.classSource = null;
+    this.signaturePositionResolver = null;
+    this.localPositionResolver = null;
+    this.error = error;
+    this.file = null;
+    this.members = null;
+    this.classMembers = null;
+  }
+
+  public boolean isValid() {
+    return error == null;
+  }
+
+  @Nonnull
+  public Path getPath() {
+    return path;
+  }
+
+  /** @return the version of the opened document that was analyzed or -1 if it was read from disk */
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return the parse tree or null if the analysis was derived by parsing a single member */
+  @Nullable
+  public JimpleParser.FileContext getParseTree() {
+    return parseTree;
+  }
+
+  /**
+   * @return the hash of the analyzed text; 0 if the analysis is invalid or only a member was parsed
+   *     again
+   */
+  public long getContentHash() {
+    return contentHash;
+  }
+
+  /**
+   * @return the class of the document. The class of an analysis derived by parsing a single member
+   *     was converted from an older version: its positions are mapped via toAnalyzedPosition().
+   */
+  @Nullable
+  public SootClassSource<? extends SootClass<?>> getClassSource() {
+    return classSource;
+  }
+
+  /**
+   * @return the position in the analyzed version of the given position of the class source - the
+   *     members behind a reparsed method moved by the lines it grew
+   */
+  @Nonnull
+  public Position toAnalyzedPosition(@Nonnull Position position) {
+    if (members == null || classMembers == null || members == classMembers) {
+      return position;
+    }
+    return new FullPosition(
+        classMembers.moveLine(members, position.getFirstLine()),
+        position.getFirstCol(),
+        classMembers.moveLine(members, position.getLastLine()),
+        position.getLastCol());
+  }
+
+  @Nullable
+  public SignaturePositionResolver getSignaturePositionResolver() {
+    return signaturePositionResolver;
+  }
+
+  @Nullable
+  public LocalPositionResolver getLocalPositionResolver() {
+    return localPositionResolver;
+  }
+
+  /**
+   * @return a rough estimate of the heap in bytes this analysis occupies - dominated by the tokens
+   *     and nodes of the parse tree. The SignaturePositionResolver is not included: it is cached
+   *     and weighed on its own.
+   */
+  public long getEstimatedSize() {
+    long size = 256;
+    if (parseTree != null && parseTree.getStop() != null) {
+      // a token with its text and roughly one tree node per token
+      size += 160L * (parseTree.getStop().getTokenIndex() + 1);
+    }
+    return size;
+  }
+
+  @Nullable
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return this analysis for another version of the document with the same content: the positions
+   *     of the analysis are still valid
+   */
+  @Nonnull
+  DocumentAnalysis withFile(@Nonnull VersionedFile file) {
+    return new DocumentAnalysis(
+        path,
+        file.getVersion(),
+        contentHash,
+        parseTree,
+        classSource,
+        signaturePositionResolver,
+        localPositionResolver,
+        file,
+        members,
+        classMembers);
+  }
+
+  @Nullable
+  VersionedFile getFile() {
+    return file;
+  }
+
+  @Nullable
+  MemberSpans getMembers() {
+    return members;
+  }
+
+  @Nullable
+  MemberSpans getClassMembers() {
+    return classMembers;
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import sootup.jimple.JimpleParser;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+import javax.annotation.Nonnull;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Parses Jimple in two stages: the fast SLL prediction first, which bails out on the first
+ * syntax error, and the full LL prediction with the regular error reporting only if SLL failed.
+ * SLL accepts the vast majority of (valid) inputs; a failure is either a real syntax error or an
+ * input which needs the full context to be predicted.
+ *
+ * <p>The DFA caches of the generated lexer and parser are static i.e. shared by all instances:
+ * {@link #warmUp()} fills them from a bundled corpus so that the first request does not pay for
+ * building them.
+ *
+ * @author Markus Schmidt
+ */
+public class JimpleParsing {
+
+  // representative Jimple which covers the rules of the grammar
+  private static final String[] WARM_UP_CORPUS = {
+    "/warmup/Statements.jimple", "/warmup/Declarations.jimple"
+  };
+
+  private JimpleParsing() {}
+
+  @Nonnull
+  static JimpleParser.FileContext parseFile(@Nonnull JimpleParser parser) {
+    return parse(parser, JimpleParser::file);
+  }
+
+  @Nonnull
+  static JimpleParser.MemberContext parseMember(@Nonnull JimpleParser parser) {
+    return parse(parser, JimpleParser::member);
+  }
+
+  @Nonnull
+  private static <T> T parse(
+      @Nonnull JimpleParser parser, @Nonnull Function<JimpleParser, T> rule) {
+    final List<? extends ANTLRErrorListener> errorListeners =
+        new ArrayList<>(parser.getErrorListeners());
+    parser.removeErrorListeners();
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      return rule.apply(parser);
+    } catch (ParseCancellationException e) {
+      // rewind: the tokens are buffered by the token stream i.e. they are not lexed again
+      parser.reset();
+      errorListeners.forEach(parser::addErrorListener);
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return rule.apply(parser);
+    }
+  }
+
+  /**
+   * parses the bundled corpus to build the shared DFA caches of the lexer and the parser. It is
+   * meant to run once in the background at startup.
+   *
+   * @param errorHandler is notified if a part of the corpus can not be read or parsed
+   */
+  public static void warmUp(@Nonnull Consumer<Exception> errorHandler) {
+    final Path path = Paths.get("warmup.jimple");
+    for (String resource : WARM_UP_CORPUS) {
+      try (InputStream is = JimpleParsing.class.getResourceAsStream(resource)) {
+        if (is == null) {
+          throw new FileNotFoundException("The warm up corpus " + resource + " is missing.");
+        }
+        parseFile(JimpleConverterUtil.createJimpleParser(CharStreams.fromStream(is), path));
+      } catch (IOException | RuntimeException e) {
+        // the warm up is best effort: the DFA states built so far are kept anyway
+        errorHandler.accept(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.eclipse.lsp4j.Position;
+import sootup.jimple.JimpleParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The text spans of the members (fields and methods) of a Jimple document, ordered by their
+ * position. They allow to map a changed range of the document onto the single member it affects
+ * so that only this member needs to be parsed again.
+ *
+ * @author Markus Schmidt
+ */
+class MemberSpans {
+  // char offsets; stopOffsets are exclusive
+  @Nonnull private final int[] startOffsets;
+  @Nonnull private final int[] stopOffsets;
+  // offset of the '{' starting the body of a method or -1 if the member has no body
+  @Nonnull private final int[] bodyOffsets;
+  // 0-based position of the '{' starting the body of a method
+  @Nonnull private final int[] bodyLines;
+  @Nonnull private final int[] bodyColumns;
+  // 0-based; the end is the position behind the last character of the member
+  @Nonnull private final int[] startLines;
+  @Nonnull private final int[] startColumns;
+  @Nonnull private final int[] endLines;
+  @Nonnull private final int[] endColumns;
+
+  private MemberSpans(int size) {
+    startOffsets = new int[size];
+    stopOffsets = new int[size];
+    bodyOffsets = new int[size];
+    bodyLines = new int[size];
+    bodyColumns = new int[size];
+    startLines = new int[size];
+    startColumns = new int[size];
+    endLines = new int[size];
+    endColumns = new int[size];
+  }
+
+  @Nonnull
+  static MemberSpans of(@Nonnull JimpleParser.FileContext file) {
+    final List<JimpleParser.MemberContext> members = file.member();
+    final MemberSpans spans = new MemberSpans(members.size());
+    for (int i = 0; i < members.size(); i++) {
+      spans.set(i, members.get(i), members.get(i).getStart().getStartIndex());
+    }
+    return spans;
+  }
+
+  private void set(int i, @Nonnull JimpleParser.MemberContext member, int startOffset) {
+    final Token start = member.getStart();
+    final Token stop = member.getStop();
+    startOffsets[i] = startOffset;
+    stopOffsets[i] = startOffset + stop.getStopIndex() + 1 - start.getStartIndex();
+    final ParserRuleContext body =
+        member.method() == null ? null : member.method().method_body();
+    if (body != null && "{".equals(body.getStart().getText())) {
+      bodyOffsets[i] = startOffset + body.getStart().getStartIndex() - start.getStartIndex();
+      bodyLines[i] = body.getStart().getLine() - 1;
+      bodyColumns[i] = body.getStart().getCharPositionInLine();
+    } else {
+      bodyOffsets[i] = -1;
+    }
+    startLines[i] = start.getLine() - 1;
+    startColumns[i] = start.getCharPositionInLine();
+    // the last token of a member (i.e. '}' or ';') does not span multiple lines
+    endLines[i] = stop.getLine() - 1;
+    endColumns[i] = stop.getCharPositionInLine() + stop.getText().length();
+  }
+
+  int size() {
+    return startOffsets.length;
+  }
+
+  /**
+   * @param from the start of the changed range
+   * @param to the end of the changed range
+   * @return the index of the method whose body contains the changed range or -1 if the change is
+   *     not limited to a single method body
+   */
+  int findBody(@Nonnull Position from, @Nonnull Position to) {
+    // the last member starting at or before the change
+    final int index = findStartingAtOrBefore(from);
+    if (index < 0 || bodyOffsets[index] < 0) {
+      return -1;
+    }
+    // the header and the opening brace of the body are unchanged
+    if (compare(bodyLines[index], bodyColumns[index], from) >= 0
+        || compare(endLines[index], endColumns[index], to) < 0) {
+      return -1;
+    }
+    return index;
+  }
+
+  /** @return the index of the last member starting at or before the position or -1 if none */
+  private int findStartingAtOrBefore(@Nonnull Position position) {
+    int low = 0;
+    int high = size() - 1;
+    int index = -1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (compare(startLines[mid], startColumns[mid], position) <= 0) {
+        index = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @param moved the spans of the same members in a later version whose changes were limited to
+   *     method bodies
+   * @return the line in the later version: a line moves along with the member it belongs to, the
+   *     lines from the end of a member up to the next member move along with that end
+   */
+  int moveLine(@Nonnull MemberSpans moved, int line) {
+    final int index = findStartingAtOrBefore(new Position(line, Integer.MAX_VALUE));
+    if (index < 0) {
+      // the header of the class is in front of all changes
+      return line;
+    }
+    if (line >= endLines[index]) {
+      return line - endLines[index] + moved.endLines[index];
+    }
+    return line - startLines[index] + moved.startLines[index];
+  }
+
+  private static int compare(int line, int column, @Nonnull Position position) {
+    if (line != position.getLine()) {
+      return Integer.compare(line, position.getLine());
+    }
+    return Integer.compare(column, position.getCharacter());
+  }
+
+  int getStartOffset(int i) {
+    return startOffsets[i];
+  }
+
+  int getStopOffset(int i) {
+    return stopOffsets[i];
+  }
+
+  @Nonnull
+  Position getStart(int i) {
+    return new Position(startLines[i], startColumns[i]);
+  }
+
+  @Nonnull
+  Position getEnd(int i) {
+    return new Position(endLines[i], endColumns[i]);
+  }
+
+  /**
+   * @param member the reparsed member: its tokens carry the positions in the document but their
+   *     offsets are relative to the start of the member
+   * @param delta the number of chars the member grew
+   * @return the spans after the member at index i was replaced or null if they can not be derived
+   *     (i.e. a following member starts on the line the replaced member ends)
+   */
+  @Nullable
+  MemberSpans replace(int i, @Nonnull JimpleParser.MemberContext member, int delta) {
+    if (i + 1 < size() && startLines[i + 1] == endLines[i]) {
+      return null;
+    }
+    final MemberSpans spans = new MemberSpans(size());
+    copy(this, spans, 0, i);
+    spans.set(i, member, startOffsets[i]);
+    // derived from the change: the offsets of the reparsed tokens are relative to the member
+    spans.stopOffsets[i] = stopOffsets[i] + delta;
+    spans.bodyOffsets[i] = bodyOffsets[i];
+    spans.bodyLines[i] = bodyLines[i];
+    spans.bodyColumns[i] = bodyColumns[i];
+    copy(this, spans, i + 1, size());
+    final int lineDelta = spans.endLines[i] - endLines[i];
+    for (int j = i + 1; j < size(); j++) {
+      spans.startOffsets[j] += delta;
+      spans.stopOffsets[j] += delta;
+      if (spans.bodyOffsets[j] >= 0) {
+        spans.bodyOffsets[j] += delta;
+        spans.bodyLines[j] += lineDelta;
+      }
+      spans.startLines[j] += lineDelta;
+      spans.endLines[j] += lineDelta;
+    }
+    return spans;
+  }
+
+  private static void copy(
+      @Nonnull MemberSpans from, @Nonnull MemberSpans to, int fromIndex, int toIndex) {
+    final int length = toIndex - fromIndex;
+    System.arraycopy(from.startOffsets, fromIndex, to.startOffsets, fromIndex, length);
+    System.arraycopy(from.stopOffsets, fromIndex, to.stopOffsets, fromIndex, length);
+    System.arraycopy(from.bodyOffsets, fromIndex, to.bodyOffsets, fromIndex, length);
+    System.arraycopy(from.bodyLines, fromIndex, to.bodyLines, fromIndex, length);
+    System.arraycopy(from.bodyColumns, fromIndex, to.bodyColumns, fromIndex, length);
+    System.arraycopy(from.startLines, fromIndex, to.startLines, fromIndex, length);
+    System.arraycopy(from.startColumns, fromIndex, to.startColumns, fromIndex, length);
+    System.arraycopy(from.endLines, fromIndex, to.endLines, fromIndex, length);
+    System.arraycopy(from.endColumns, fromIndex, to.endColumns, fromIndex, length);
+  }
+}
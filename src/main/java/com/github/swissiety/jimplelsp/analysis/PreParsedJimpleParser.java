@@ -0,0 +1,26 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.TokenStream;
+import sootup.jimple.JimpleParser;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Hands an already built parse tree to consumers which expect a JimpleParser (i.e. the
+ * JimpleConverter) instead of parsing the input again.
+ *
+ * @author Markus Schmidt
+ */
+class PreParsedJimpleParser extends JimpleParser {
+  @Nonnull private final FileContext fileContext;
+
+  PreParsedJimpleParser(@Nonnull TokenStream tokens, @Nonnull FileContext fileContext) {
+    super(tokens);
+    this.fileContext = fileContext;
+  }
+
+  @Override
+  public FileContext file() {
+    return fileContext;
+  }
+}
@@ -0,0 +1,319 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import com.github.swissiety.jimplelsp.resolver.LocalPositionResolver;
+import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import com.github.swissiety.jimplelsp.workingtree.VersionedFile;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable state of the opened documents: the content of each document together with the
+ * latest valid analysis of it. Changes create a new snapshot which is published atomically, so a
+ * request reads the documents and analyses of one consistent point in time without any locking.
+ *
+ * @author Markus Schmidt
+ */
+public final class WorkspaceSnapshot {
+
+  public static final WorkspaceSnapshot EMPTY =
+      new WorkspaceSnapshot(Collections.emptyMap());
+
+  // number of versions the occurences of an outdated analysis are moved along
+  private static final int MAX_MOVED_VERSIONS = 512;
+
+  /**
+   * the signature and Local occurences of an analysis moved along the changes of the following
+   * versions. They are moved lazily, i.e. only when a request needs them.
+   */
+  private static final class MovedOccurences {
+    @Nonnull private final DocumentAnalysis analysis;
+    // occurences of the previous version; dropped once both kinds of occurences are moved
+    @Nullable private volatile MovedOccurences previous;
+    @Nonnull private final List<TextDocumentContentChangeEvent> changes;
+    private final int movedVersions;
+    @Nullable private volatile SignaturePositionResolver resolver;
+    @Nullable private volatile LocalPositionResolver localResolver;
+
+    private MovedOccurences(
+        @Nonnull DocumentAnalysis analysis,
+        @Nullable MovedOccurences previous,
+        @Nonnull List<TextDocumentContentChangeEvent> changes) {
+      this.analysis = analysis;
+      this.previous = previous;
+      this.changes = changes;
+      this.movedVersions = previous == null ? 1 : previous.movedVersions + 1;
+    }
+
+    @Nullable
+    private SignaturePositionResolver getResolver() {
+      SignaturePositionResolver movedResolver = resolver;
+      if (movedResolver != null) {
+        return movedResolver;
+      }
+      final MovedOccurences base = previous;
+      final SignaturePositionResolver baseResolver =
+          base == null ? analysis.getSignaturePositionResolver() : base.getResolver();
+      if (baseResolver == null) {
+        return null;
+      }
+      movedResolver = baseResolver.applyChanges(changes);
+      if (movedResolver != null) {
+        resolver = movedResolver;
+        releasePrevious();
+      }
+      return movedResolver;
+    }
+
+    @Nullable
+    private LocalPositionResolver getLocalResolver() {
+      LocalPositionResolver movedResolver = localResolver;
+      if (movedResolver != null) {
+        return movedResolver;
+      }
+      final MovedOccurences base = previous;
+      final LocalPositionResolver baseResolver =
+          base == null ? analysis.getLocalPositionResolver() : base.getLocalResolver();
+      if (baseResolver == null) {
+        return null;
+      }
+      movedResolver = baseResolver.applyChanges(changes);
+      if (movedResolver != null) {
+        localResolver = movedResolver;
+        releasePrevious();
+      }
+      return movedResolver;
+    }
+
+    private void releasePrevious() {
+      if (resolver != null && localResolver != null) {
+        previous = null;
+      }
+    }
+  }
+
+  /** an opened document and its latest valid analysis. */
+  public static final class DocumentSnapshot {
+    @Nonnull private final VersionedFile file;
+    @Nullable private final DocumentAnalysis analysis;
+    // null if the analysis is current or its occurences can not be moved
+    @Nullable private final MovedOccurences movedOccurences;
+    // null if the analysis is current or the changes since then are not known
+    @Nullable private final ChangedRegion changedRegion;
+    // the failed analysis of the current version: it is not analyzed again
+    @Nullable private final DocumentAnalysis invalidAnalysis;
+
+    private DocumentSnapshot(
+        @Nonnull VersionedFile file,
+        @Nullable DocumentAnalysis analysis,
+        @Nullable MovedOccurences movedOccurences,
+        @Nullable ChangedRegion changedRegion,
+        @Nullable DocumentAnalysis invalidAnalysis) {
+      this.file = file;
+      this.analysis = analysis;
+      this.movedOccurences = movedOccurences;
+      this.changedRegion = changedRegion;
+      this.invalidAnalysis = invalidAnalysis;
+    }
+
+    @Nonnull
+    public VersionedFile getFile() {
+      return file;
+    }
+
+    public int getVersion() {
+      return file.getVersion();
+    }
+
+    /** @return the latest valid analysis - it may belong to an older version of the document */
+    @Nullable
+    public DocumentAnalysis getAnalysis() {
+      return analysis;
+    }
+
+    /** @return the analysis if it belongs to the current version of the document */
+    @Nullable
+    public DocumentAnalysis getCurrentAnalysis() {
+      return analysis != null && analysis.getVersion() == file.getVersion() ? analysis : null;
+    }
+
+    /**
+     * @return the region of the document which was changed since the version of the latest valid
+     *     analysis or null if the analysis is current or the changes are not known
+     */
+    @Nullable
+    public ChangedRegion getChangedRegion() {
+      return changedRegion;
+    }
+
+    /** @return the analysis of the current version if it was analyzed already and is invalid */
+    @Nullable
+    public DocumentAnalysis getInvalidAnalysis() {
+      return invalidAnalysis;
+    }
+
+    /**
+     * @return the signature occurences of the latest valid analysis at their positions in the
+     *     current version of the document - the occurences touched by edits since then are
+     *     missing. Null if there is no valid analysis or the occurences can not be moved (e.g. the
+     *     whole content was replaced).
+     */
+    @Nullable
+    public SignaturePositionResolver getSignaturePositionResolver() {
+      if (analysis == null) {
+        return null;
+      }
+      if (analysis.getVersion() == file.getVersion()) {
+        return analysis.getSignaturePositionResolver();
+      }
+      return movedOccurences == null ? null : movedOccurences.getResolver();
+    }
+
+    /**
+     * @return the Local occurences of the latest valid analysis at their positions in the current
+     *     version of the document - the occurences touched by edits since then are missing. Null if
+     *     there is no valid analysis or the occurences can not be moved.
+     */
+    @Nullable
+    public LocalPositionResolver getLocalPositionResolver() {
+      if (analysis == null) {
+        return null;
+      }
+      if (analysis.getVersion() == file.getVersion()) {
+        return analysis.getLocalPositionResolver();
+      }
+      return movedOccurences == null ? null : movedOccurences.getLocalResolver();
+    }
+
+    /** @return the next version of this document which retains the analysis */
+    @Nonnull
+    private DocumentSnapshot next(
+        @Nonnull VersionedFile nextFile, @Nullable List<TextDocumentContentChangeEvent> changes) {
+      if (analysis == null || changes == null) {
+        return new DocumentSnapshot(nextFile, analysis, null, null, null);
+      }
+      if (analysis.getVersion() == file.getVersion()) {
+        return new DocumentSnapshot(
+            nextFile,
+            analysis,
+            new MovedOccurences(analysis, null, changes),
+            ChangedRegion.apply(null, changes),
+            null);
+      }
+      final ChangedRegion nextRegion =
+          changedRegion == null ? null : ChangedRegion.apply(changedRegion, changes);
+      if (movedOccurences == null || movedOccurences.movedVersions >= MAX_MOVED_VERSIONS) {
+        return new DocumentSnapshot(nextFile, analysis, null, nextRegion, null);
+      }
+      return new DocumentSnapshot(
+          nextFile,
+          analysis,
+          new MovedOccurences(analysis, movedOccurences, changes),
+          nextRegion,
+          null);
+    }
+  }
+
+  @Nonnull private final Map<String, DocumentSnapshot> documents;
+
+  private WorkspaceSnapshot(@Nonnull Map<String, DocumentSnapshot> documents) {
+    this.documents = documents;
+  }
+
+  @Nullable
+  public DocumentSnapshot getDocument(@Nonnull String uri) {
+    return documents.get(uri);
+  }
+
+  /** @return the version of the opened document or -1 if it is not opened */
+  public int getVersion(@Nonnull String uri) {
+    final DocumentSnapshot document = documents.get(uri);
+    return document == null ? -1 : document.getVersion();
+  }
+
+  /** @return a snapshot containing the new version of the document - its analysis is retained */
+  @Nonnull
+  public WorkspaceSnapshot withDocument(@Nonnull VersionedFile file) {
+    return withDocument(file, null);
+  }
+
+  /**
+   * @param changes the changes which lead from the previous to the new version or null if they are
+   *     not known
+   * @return a snapshot containing the new version of the document - its analysis is retained and
+   *     its signature occurences are moved along the changes
+   */
+  @Nonnull
+  public WorkspaceSnapshot withDocument(
+      @Nonnull VersionedFile file, @Nullable List<TextDocumentContentChangeEvent> changes) {
+    final DocumentSnapshot previous = documents.get(file.getUriStr());
+    if (previous == null) {
+      return with(file.getUriStr(), new DocumentSnapshot(file, null, null, null, null));
+    }
+    return with(file.getUriStr(), previous.next(file, changes));
+  }
+
+  /**
+   * @return a snapshot containing the analysis of the document or this snapshot if the document
+   *     is not opened or already has a newer analysis
+   */
+  @Nonnull
+  public WorkspaceSnapshot withAnalysis(@Nonnull String uri, @Nullable DocumentAnalysis analysis) {
+    final DocumentSnapshot previous = documents.get(uri);
+    if (previous == null) {
+      return this;
+    }
+    if (analysis != null
+        && previous.analysis != null
+        && previous.analysis.getVersion() > analysis.getVersion()) {
+      return this;
+    }
+    // the occurences of the new analysis can not be moved if it belongs to an older version
+    return with(uri, new DocumentSnapshot(previous.file, analysis, null, null, null));
+  }
+
+  /**
+   * @return a snapshot which remembers that the current version of the document is invalid or this
+   *     snapshot if the analysis does not belong to the current version of an opened document. The
+   *     last valid analysis is retained.
+   */
+  @Nonnull
+  public WorkspaceSnapshot withInvalidAnalysis(
+      @Nonnull String uri, @Nonnull DocumentAnalysis analysis) {
+    final DocumentSnapshot previous = documents.get(uri);
+    if (previous == null || previous.getVersion() != analysis.getVersion()) {
+      return this;
+    }
+    return with(
+        uri,
+        new DocumentSnapshot(
+            previous.file,
+            previous.analysis,
+            previous.movedOccurences,
+            previous.changedRegion,
+            analysis));
+  }
+
+  @Nonnull
+  public WorkspaceSnapshot withoutDocument(@Nonnull String uri) {
+    if (!documents.containsKey(uri)) {
+      return this;
+    }
+    final Map<String, DocumentSnapshot> newDocuments = new HashMap<>(documents);
+    newDocuments.remove(uri);
+    return new WorkspaceSnapshot(Collections.unmodifiableMap(newDocuments));
+  }
+
+  @Nonnull
+  private WorkspaceSnapshot with(@Nonnull String uri, @Nonnull DocumentSnapshot document) {
+    // copy on write: only the opened documents are contained
+    final Map<String, DocumentSnapshot> newDocuments = new HashMap<>(documents);
+    newDocuments.put(uri, document);
+    return new WorkspaceSnapshot(Collections.unmodifiableMap(newDocuments));
+  }
+}
@@ -0,0 +1,16 @@
+package com.github.swissiety.jimplelsp.executor;
+
+/**
+ * The kinds of work of the server. Each Lane has its own threads so that e.g. a running workspace
+ * indexing does not delay a hover request.
+ *
+ * @author Markus Schmidt
+ */
+public enum Lane {
+  /** requests of the user e.g. hover, definition, references */
+  INTERACTIVE,
+  /** (re)analysis of changed documents */
+  ANALYSIS,
+  /** workspace indexing and Jimple extraction */
+  BACKGROUND
+}
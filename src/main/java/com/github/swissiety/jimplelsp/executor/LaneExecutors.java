@@ -0,0 +1,164 @@
+package com.github.swissiety.jimplelsp.executor;
+
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages a thread pool per Lane. Each pool has a configurable parallelism and a bounded queue
+ * which hands out waiting tasks ordered by their priority (and FIFO for equal priorities). If the
+ * queue of the BACKGROUND lane is full the submitting thread runs the task itself which throttles
+ * the producer. The other lanes reject the task with a RejectedExecutionException: their tasks are
+ * submitted by the message processing which must not run them itself.
+ *
+ * @author Markus Schmidt
+ */
+public class LaneExecutors {
+  public static final int PRIORITY_HIGH = 0;
+  public static final int PRIORITY_NORMAL = 1;
+  public static final int PRIORITY_LOW = 2;
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+  @Nonnull private final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+  @Nonnull private final AtomicLong sequence = new AtomicLong();
+
+  public LaneExecutors() {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    executors.put(
+        Lane.INTERACTIVE,
+        createExecutor(
+            Lane.INTERACTIVE,
+            Math.max(2, cores / 2),
+            Thread.NORM_PRIORITY,
+            new ThreadPoolExecutor.AbortPolicy()));
+    executors.put(
+        Lane.ANALYSIS,
+        createExecutor(
+            Lane.ANALYSIS,
+            Math.max(1, cores / 4),
+            Thread.NORM_PRIORITY,
+            new ThreadPoolExecutor.AbortPolicy()));
+    executors.put(
+        Lane.BACKGROUND,
+        createExecutor(
+            Lane.BACKGROUND, cores, Thread.MIN_PRIORITY, new ThreadPoolExecutor.CallerRunsPolicy()));
+  }
+
+  @Nonnull
+  private static ThreadPoolExecutor createExecutor(
+      @Nonnull Lane lane,
+      int parallelism,
+      int threadPriority,
+      @Nonnull RejectedExecutionHandler rejectionPolicy) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    final ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            parallelism,
+            parallelism,
+            30,
+            TimeUnit.SECONDS,
+            new BoundedPriorityBlockingQueue(DEFAULT_QUEUE_CAPACITY),
+            runnable -> {
+              final String name =
+                  "jimplelsp-" + lane.name().toLowerCase() + "-" + threadCount.incrementAndGet();
+              final Thread thread = new Thread(runnable, name);
+              thread.setDaemon(true);
+              thread.setPriority(threadPriority);
+              return thread;
+            },
+            rejectionPolicy);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** sets the number of threads of the given lane. */
+  public void setParallelism(@Nonnull Lane lane, int parallelism) {
+    final ThreadPoolExecutor executor = executors.get(lane);
+    final int threads = Math.max(1, parallelism);
+    // keep core <= max during the change
+    if (threads > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(threads);
+      executor.setCorePoolSize(threads);
+    } else {
+      executor.setCorePoolSize(threads);
+      executor.setMaximumPoolSize(threads);
+    }
+  }
+
+  public int getParallelism(@Nonnull Lane lane) {
+    return executors.get(lane).getMaximumPoolSize();
+  }
+
+  /** sets the number of tasks which may wait in the queue of the given lane. */
+  public void setQueueCapacity(@Nonnull Lane lane, int capacity) {
+    ((BoundedPriorityBlockingQueue) executors.get(lane).getQueue())
+        .setCapacity(Math.max(1, capacity));
+  }
+
+  /**
+   * @return an Executor which submits its tasks with the given priority to the given lane. It
+   *     throws a RejectedExecutionException if the queue of the INTERACTIVE or ANALYSIS lane is
+   *     full.
+   */
+  @Nonnull
+  public Executor executor(@Nonnull Lane lane, int priority) {
+    final ThreadPoolExecutor executor = executors.get(lane);
+    return command ->
+        executor.execute(new PrioritizedTask(command, priority, sequence.getAndIncrement()));
+  }
+
+  public void shutdown() {
+    executors.values().forEach(ThreadPoolExecutor::shutdownNow);
+  }
+
+  private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+    @Nonnull private final Runnable task;
+    private final int priority;
+    private final long sequence;
+
+    private PrioritizedTask(@Nonnull Runnable task, int priority, long sequence) {
+      this.task = task;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      task.run();
+    }
+
+    @Override
+    public int compareTo(@Nonnull PrioritizedTask o) {
+      if (priority != o.priority) {
+        return Integer.compare(priority, o.priority);
+      }
+      return Long.compare(sequence, o.sequence);
+    }
+  }
+
+  /** a PriorityBlockingQueue which rejects offers if it holds capacity elements already. */
+  private static final class BoundedPriorityBlockingQueue extends PriorityBlockingQueue<Runnable> {
+    private volatile int capacity;
+
+    private BoundedPriorityBlockingQueue(int capacity) {
+      this.capacity = capacity;
+    }
+
+    private void setCapacity(int capacity) {
+      this.capacity = capacity;
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+      // the bound is not exact under concurrent offers which is fine for throttling
+      if (size() >= capacity) {
+        return false;
+      }
+      return super.offer(runnable);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.lsp4j.Range;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The FileIndex holds the information which is necessary to serve a Jimple file without parsing it
+ * again i.e. its class metadata, the Signature occurences and the declarations in that file.
+ *
+ * @author Markus Schmidt
+ */
+public class FileIndex {
+  @Nonnull private final ClassType classType;
+  @Nullable private final ClassType superclass;
+  @Nonnull private final Collection<? extends ClassType> interfaces;
+  @Nonnull private final List<Pair<Signature, Range>> occurences;
+  @Nonnull private final List<Pair<Signature, Range>> declarations;
+
+  public FileIndex(
+      @Nonnull ClassType classType,
+      @Nullable ClassType superclass,
+      @Nonnull Collection<? extends ClassType> interfaces,
+      @Nonnull List<Pair<Signature, Range>> occurences,
+      @Nonnull List<Pair<Signature, Range>> declarations) {
+    this.classType = classType;
+    this.superclass = superclass;
+    this.interfaces = interfaces;
+    this.occurences = occurences;
+    this.declarations = declarations;
+  }
+
+  @Nonnull
+  public ClassType getClassType() {
+    return classType;
+  }
+
+  @Nullable
+  public ClassType getSuperclass() {
+    return superclass;
+  }
+
+  @Nonnull
+  public Collection<? extends ClassType> getInterfaces() {
+    return interfaces;
+  }
+
+  @Nonnull
+  public List<Pair<Signature, Range>> getOccurences() {
+    return occurences;
+  }
+
+  /** @return the declared class, methods and fields of the file */
+  @Nonnull
+  public List<Pair<Signature, Range>> getDeclarations() {
+    return declarations;
+  }
+}
@@ -0,0 +1,279 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import sootup.core.IdentifierFactory;
+import sootup.core.signatures.FieldSignature;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
+import sootup.core.types.Type;
+import sootup.java.core.JavaIdentifierFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The IndexStore persists a FileIndex per Jimple file into a cache directory of the workspace. An
+ * entry is only handed out again if the indexed file is unchanged i.e. its path, size,
+ * modification time and (if the modification time differs) its content hash still match.
+ *
+ * @author Markus Schmidt
+ */
+public class IndexStore {
+  private static final int MAGIC = 0x4A4C5350; // "JLSP"
+  private static final int FORMAT_VERSION = 2;
+
+  private static final byte CLASS_SIG = 'C';
+  private static final byte METHOD_SIG = 'M';
+  private static final byte FIELD_SIG = 'F';
+
+  @Nonnull private final Path storeDirectory;
+  @Nonnull private final IdentifierFactory identifierFactory = JavaIdentifierFactory.getInstance();
+
+  public IndexStore(@Nonnull Path storeDirectory) throws IOException {
+    this.storeDirectory = storeDirectory;
+    Files.createDirectories(storeDirectory);
+  }
+
+  /** @return the stored index of the given file or null if there is none or it is outdated */
+  @Nullable
+  public FileIndex load(@Nonnull Path file) {
+    final Path entry = getEntryPath(file);
+    if (!Files.exists(entry)) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      if (!in.readUTF().equals(file.toAbsolutePath().toString())) {
+        // hash collision of the entry filename
+        return null;
+      }
+
+      final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      final long size = in.readLong();
+      final long lastModified = in.readLong();
+      final String contentHash = in.readUTF();
+      if (size != attributes.size()) {
+        return null;
+      }
+      if (lastModified != attributes.lastModifiedTime().toMillis()
+          && !contentHash.equals(hashContent(file))) {
+        return null;
+      }
+
+      return readFileIndex(in);
+    } catch (IOException | RuntimeException e) {
+      // unreadable or incompatible entry -> treat it like a cache miss
+      return null;
+    }
+  }
+
+  public void store(@Nonnull Path file, @Nonnull FileIndex index) throws IOException {
+    final Path entry = getEntryPath(file);
+    final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+    // write into a temporary file first so that a concurrent/aborted write never leaves a
+    // truncated entry behind
+    final Path tmpEntry = Files.createTempFile(storeDirectory, "entry", ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpEntry)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(file.toAbsolutePath().toString());
+      out.writeLong(attributes.size());
+      out.writeLong(attributes.lastModifiedTime().toMillis());
+      out.writeUTF(hashContent(file));
+      writeFileIndex(out, index);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmpEntry);
+      throw e;
+    }
+    Files.move(tmpEntry, entry, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public void remove(@Nonnull Path file) throws IOException {
+    Files.deleteIfExists(getEntryPath(file));
+  }
+
+  @Nonnull
+  private Path getEntryPath(@Nonnull Path file) {
+    return storeDirectory.resolve(
+        hash(file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8)) + ".idx");
+  }
+
+  @Nonnull
+  private static String hashContent(@Nonnull Path file) throws IOException {
+    return hash(Files.readAllBytes(file));
+  }
+
+  @Nonnull
+  private static String hash(@Nonnull byte[] bytes) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM has to provide SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void writeFileIndex(@Nonnull DataOutputStream out, @Nonnull FileIndex index)
+      throws IOException {
+    out.writeUTF(index.getClassType().toString());
+    final ClassType superclass = index.getSuperclass();
+    out.writeBoolean(superclass != null);
+    if (superclass != null) {
+      out.writeUTF(superclass.toString());
+    }
+    out.writeInt(index.getInterfaces().size());
+    for (ClassType anInterface : index.getInterfaces()) {
+      out.writeUTF(anInterface.toString());
+    }
+
+    // the same Signatures occur many times per file -> write every distinct Signature once
+    final Map<Signature, Integer> signatureIds = new HashMap<>();
+    final List<Signature> signatures = new ArrayList<>();
+    for (List<Pair<Signature, Range>> list :
+        Arrays.asList(index.getOccurences(), index.getDeclarations())) {
+      for (Pair<Signature, Range> occurence : list) {
+        if (!signatureIds.containsKey(occurence.getLeft())) {
+          signatureIds.put(occurence.getLeft(), signatures.size());
+          signatures.add(occurence.getLeft());
+        }
+      }
+    }
+    out.writeInt(signatures.size());
+    for (Signature signature : signatures) {
+      writeSignature(out, signature);
+    }
+
+    writeOccurences(out, index.getOccurences(), signatureIds);
+    writeOccurences(out, index.getDeclarations(), signatureIds);
+  }
+
+  private static void writeOccurences(
+      @Nonnull DataOutputStream out,
+      @Nonnull List<Pair<Signature, Range>> occurences,
+      @Nonnull Map<Signature, Integer> signatureIds)
+      throws IOException {
+    out.writeInt(occurences.size());
+    for (Pair<Signature, Range> occurence : occurences) {
+      final Range range = occurence.getRight();
+      out.writeInt(signatureIds.get(occurence.getLeft()));
+      out.writeInt(range.getStart().getLine());
+      out.writeInt(range.getStart().getCharacter());
+      out.writeInt(range.getEnd().getLine());
+      out.writeInt(range.getEnd().getCharacter());
+    }
+  }
+
+  @Nonnull
+  private FileIndex readFileIndex(@Nonnull DataInputStream in) throws IOException {
+    final ClassType classType = identifierFactory.getClassType(in.readUTF());
+    final ClassType superclass =
+        in.readBoolean() ? identifierFactory.getClassType(in.readUTF()) : null;
+    final int interfaceCount = in.readInt();
+    final List<ClassType> interfaces = new ArrayList<>(interfaceCount);
+    for (int i = 0; i < interfaceCount; i++) {
+      interfaces.add(identifierFactory.getClassType(in.readUTF()));
+    }
+
+    final int signatureCount = in.readInt();
+    final Signature[] signatures = new Signature[signatureCount];
+    for (int i = 0; i < signatureCount; i++) {
+      signatures[i] = readSignature(in);
+    }
+
+    final List<Pair<Signature, Range>> occurences = readOccurences(in, signatures);
+    final List<Pair<Signature, Range>> declarations = readOccurences(in, signatures);
+    return new FileIndex(classType, superclass, interfaces, occurences, declarations);
+  }
+
+  @Nonnull
+  private static List<Pair<Signature, Range>> readOccurences(
+      @Nonnull DataInputStream in, @Nonnull Signature[] signatures) throws IOException {
+    final int occurenceCount = in.readInt();
+    final List<Pair<Signature, Range>> occurences = new ArrayList<>(occurenceCount);
+    for (int i = 0; i < occurenceCount; i++) {
+      final Signature signature = signatures[in.readInt()];
+      final Position start = new Position(in.readInt(), in.readInt());
+      final Position end = new Position(in.readInt(), in.readInt());
+      occurences.add(Pair.of(signature, new Range(start, end)));
+    }
+    return occurences;
+  }
+
+  private void writeSignature(@Nonnull DataOutputStream out, @Nonnull Signature signature)
+      throws IOException {
+    if (signature instanceof ClassType) {
+      out.writeByte(CLASS_SIG);
+      out.writeUTF(signature.toString());
+    } else if (signature instanceof MethodSignature) {
+      final MethodSignature methodSignature = (MethodSignature) signature;
+      out.writeByte(METHOD_SIG);
+      out.writeUTF(methodSignature.getDeclClassType().toString());
+      out.writeUTF(methodSignature.getName());
+      out.writeUTF(methodSignature.getType().toString());
+      out.writeInt(methodSignature.getParameterTypes().size());
+      for (Type parameterType : methodSignature.getParameterTypes()) {
+        out.writeUTF(parameterType.toString());
+      }
+    } else if (signature instanceof FieldSignature) {
+      final FieldSignature fieldSignature = (FieldSignature) signature;
+      out.writeByte(FIELD_SIG);
+      out.writeUTF(fieldSignature.getDeclClassType().toString());
+      out.writeUTF(fieldSignature.getName());
+      out.writeUTF(fieldSignature.getType().toString());
+    } else {
+      throw new IllegalArgumentException("Unsupported Signature type: " + signature.getClass());
+    }
+  }
+
+  @Nonnull
+  private Signature readSignature(@Nonnull DataInputStream in) throws IOException {
+    final byte kind = in.readByte();
+    switch (kind) {
+      case CLASS_SIG:
+        return identifierFactory.getClassType(in.readUTF());
+      case METHOD_SIG:
+        {
+          final ClassType declClass = identifierFactory.getClassType(in.readUTF());
+          final String name = in.readUTF();
+          final Type returnType = identifierFactory.getType(in.readUTF());
+          final int paramCount = in.readInt();
+          final List<Type> params = new ArrayList<>(paramCount);
+          for (int i = 0; i < paramCount; i++) {
+            params.add(identifierFactory.getType(in.readUTF()));
+          }
+          return identifierFactory.getMethodSignature(declClass, name, returnType, params);
+        }
+      case FIELD_SIG:
+        {
+          final ClassType declClass = identifierFactory.getClassType(in.readUTF());
+          final String name = in.readUTF();
+          return identifierFactory.getFieldSignature(
+              name, declClass, identifierFactory.getType(in.readUTF()));
+        }
+      default:
+        throw new IOException("Unknown Signature kind: " + kind);
+    }
+  }
+}
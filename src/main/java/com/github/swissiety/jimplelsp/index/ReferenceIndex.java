@@ -0,0 +1,57 @@
+package com.github.swissiety.jimplelsp.index;
+
+import sootup.core.signatures.Signature;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ReferenceIndex knows for every Signature of the workspace the files it occurs in. It is
+ * updated per file whenever the Signature occurences of a file change, so that finding references
+ * only needs to look at the files which actually contain the Signature.
+ *
+ * @author Markus Schmidt
+ */
+public class ReferenceIndex {
+  @Nonnull private final Map<Signature, Set<Path>> signatureToFiles = new ConcurrentHashMap<>();
+  @Nonnull private final Map<Path, Set<Signature>> fileToSignatures = new ConcurrentHashMap<>();
+
+  /** replaces the Signatures which occur in the given file. */
+  public synchronized void update(@Nonnull Path file, @Nonnull Set<Signature> signatures) {
+    if (signatures.equals(fileToSignatures.get(file))) {
+      return;
+    }
+    remove(file);
+    fileToSignatures.put(file, signatures);
+    for (Signature signature : signatures) {
+      signatureToFiles.computeIfAbsent(signature, k -> ConcurrentHashMap.newKeySet()).add(file);
+    }
+  }
+
+  public synchronized void remove(@Nonnull Path file) {
+    final Set<Signature> signatures = fileToSignatures.remove(file);
+    if (signatures == null) {
+      return;
+    }
+    for (Signature signature : signatures) {
+      final Set<Path> files = signatureToFiles.get(signature);
+      if (files != null) {
+        files.remove(file);
+        if (files.isEmpty()) {
+          signatureToFiles.remove(signature);
+        }
+      }
+    }
+  }
+
+  /** @return the files in which the given Signature occurs */
+  @Nonnull
+  public Set<Path> getFiles(@Nonnull Signature signature) {
+    final Set<Path> files = signatureToFiles.get(signature);
+    return files == null ? Collections.emptySet() : Collections.unmodifiableSet(files);
+  }
+}
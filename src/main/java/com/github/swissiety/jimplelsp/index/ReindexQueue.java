@@ -0,0 +1,161 @@
+package com.github.swissiety.jimplelsp.index;
+
+import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The ReindexQueue collects changes of workspace files made outside of the editor (e.g. by a build,
+ * a git checkout or an extraction) and hands them over in batches. Events of a burst are coalesced:
+ * only the last event per file counts and the batch is released once no event arrived for the
+ * given delay - or at the latest after a multiple of it, so that a long burst is not postponed
+ * indefinitely. Batches are processed one after another; the events arriving while a batch is
+ * processed are coalesced into the next batch the same way.
+ *
+ * @author Markus Schmidt
+ */
+public class ReindexQueue {
+
+  /** the files touched since the last batch. */
+  public static final class Batch {
+    @Nonnull private final Set<Path> changed;
+    @Nonnull private final Set<Path> deleted;
+
+    Batch(@Nonnull Set<Path> changed, @Nonnull Set<Path> deleted) {
+      this.changed = changed;
+      this.deleted = deleted;
+    }
+
+    /** @return created or modified files (or directories) */
+    @Nonnull
+    public Set<Path> getChanged() {
+      return Collections.unmodifiableSet(changed);
+    }
+
+    /** @return deleted files (or directories) */
+    @Nonnull
+    public Set<Path> getDeleted() {
+      return Collections.unmodifiableSet(deleted);
+    }
+  }
+
+  // a burst is released after at most this multiple of the delay
+  private static final int MAX_DELAY_FACTOR = 10;
+
+  @Nonnull private final ScheduledExecutorService timer;
+  @Nonnull private final Executor executor;
+  @Nonnull private final Consumer<Batch> consumer;
+  private final long delayMs;
+  // file -> whether its last event was a deletion
+  @Nonnull private Map<Path, Boolean> pending = new LinkedHashMap<>();
+  private long firstPendingNanos = 0;
+  private ScheduledFuture<?> scheduledRelease = null;
+  private boolean processing = false;
+  // a release while a batch was processed: the next batch is processed once it is done
+  private boolean releaseDeferred = false;
+
+  /**
+   * @param executor runs the consumer
+   * @param consumer processes a batch; it is not called concurrently
+   */
+  public ReindexQueue(@Nonnull Executor executor, @Nonnull Consumer<Batch> consumer, long delayMs) {
+    this.executor = executor;
+    this.consumer = consumer;
+    this.delayMs = Math.max(0, delayMs);
+    // the timer thread only waits for the delays - the batches are processed by the executor
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "jimplelsp-reindex-timer");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** enqueues a created or modified file or directory. */
+  public void changed(@Nonnull Path path) {
+    enqueue(path, false);
+  }
+
+  /** enqueues a deleted file or directory. */
+  public void deleted(@Nonnull Path path) {
+    enqueue(path, true);
+  }
+
+  private synchronized void enqueue(@Nonnull Path path, boolean deleted) {
+    // e.g. a file rewritten via delete and create: its last event counts
+    pending.remove(path);
+    pending.put(path, deleted);
+    final long now = System.nanoTime();
+    final long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_FACTOR * delayMs);
+    if (scheduledRelease == null) {
+      firstPendingNanos = now;
+    } else if (now - firstPendingNanos < maxDelayNanos) {
+      // postpone the release until the burst is over
+      scheduledRelease.cancel(false);
+    } else {
+      return;
+    }
+    scheduledRelease =
+        timer.schedule(() -> executor.execute(this::process), delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** processes the pending events as one batch. */
+  private void process() {
+    final Batch batch;
+    synchronized (this) {
+      if (processing) {
+        releaseDeferred = true;
+        return;
+      }
+      if (pending.isEmpty()) {
+        return;
+      }
+      processing = true;
+      batch = take();
+    }
+    try {
+      consumer.accept(batch);
+    } finally {
+      final boolean deferred;
+      synchronized (this) {
+        processing = false;
+        deferred = releaseDeferred;
+        releaseDeferred = false;
+      }
+      if (deferred) {
+        // the events arrived while processing and their delay is over already
+        executor.execute(this::process);
+      }
+    }
+  }
+
+  @Nonnull
+  private Batch take() {
+    final Set<Path> changed = new LinkedHashSet<>();
+    final Set<Path> deleted = new LinkedHashSet<>();
+    for (Map.Entry<Path, Boolean> entry : pending.entrySet()) {
+      (entry.getValue() ? deleted : changed).add(entry.getKey());
+    }
+    pending = new LinkedHashMap<>();
+    if (scheduledRelease != null) {
+      scheduledRelease.cancel(false);
+      scheduledRelease = null;
+    }
+    return new Batch(changed, deleted);
+  }
+
+  public void shutdown() {
+    timer.shutdownNow();
+  }
+}
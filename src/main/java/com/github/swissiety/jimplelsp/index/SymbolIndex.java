@@ -0,0 +1,341 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.SymbolKind;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * The SymbolIndex holds the declared classes, methods and fields of the workspace for the workspace
+ * symbol search. Symbols are grouped by their lowercased name; the distinct names are indexed by
+ * prefix, by trigram and by their camel case initials (e.g. "sb" for "StringBuilder"). A query
+ * only scores the names found via these structures and returns the best ranked symbols.
+ *
+ * @author Markus Schmidt
+ */
+public class SymbolIndex {
+
+  // bounds the work of short/unspecific queries
+  private static final int MAX_CANDIDATES = 20000;
+  private static final int MAX_FUZZY_SCAN = 20000;
+
+  /** a declared class, method or field. */
+  public static final class Symbol {
+    @Nonnull private final String name;
+    @Nonnull private final SymbolKind kind;
+    @Nullable private final String containerName;
+    @Nonnull private final Location location;
+
+    public Symbol(
+        @Nonnull String name,
+        @Nonnull SymbolKind kind,
+        @Nullable String containerName,
+        @Nonnull Location location) {
+      this.name = name;
+      this.kind = kind;
+      this.containerName = containerName;
+      this.location = location;
+    }
+
+    @Nonnull
+    public String getName() {
+      return name;
+    }
+
+    @Nonnull
+    public SymbolKind getKind() {
+      return kind;
+    }
+
+    @Nullable
+    public String getContainerName() {
+      return containerName;
+    }
+
+    @Nonnull
+    public Location getLocation() {
+      return location;
+    }
+  }
+
+  /** the symbols sharing a lowercased name */
+  private static final class NameEntry {
+    @Nonnull private final String name;
+    @Nonnull private final Set<String> initials = ConcurrentHashMap.newKeySet();
+    @Nonnull private final Set<Symbol> symbols = ConcurrentHashMap.newKeySet();
+
+    private NameEntry(@Nonnull String name) {
+      this.name = name;
+    }
+  }
+
+  @Nonnull private final Map<Path, List<Symbol>> fileSymbols = new ConcurrentHashMap<>();
+  @Nonnull private final Map<String, NameEntry> names = new ConcurrentHashMap<>();
+  @Nonnull private final NavigableSet<String> sortedNames = new ConcurrentSkipListSet<>();
+  @Nonnull private final Map<String, Set<String>> trigramToNames = new ConcurrentHashMap<>();
+
+  @Nonnull
+  private final NavigableMap<String, Set<String>> initialsToNames = new ConcurrentSkipListMap<>();
+
+  /** replaces the symbols declared in the given file. */
+  public synchronized void update(@Nonnull Path file, @Nonnull List<Symbol> symbols) {
+    remove(file);
+    fileSymbols.put(file, symbols);
+    for (Symbol symbol : symbols) {
+      final String name = symbol.getName().toLowerCase();
+      NameEntry entry = names.get(name);
+      if (entry == null) {
+        entry = new NameEntry(name);
+        names.put(name, entry);
+        sortedNames.add(name);
+        for (String trigram : trigrams(name)) {
+          trigramToNames.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet()).add(name);
+        }
+      }
+      final String initials = camelCaseInitials(symbol.getName());
+      if (entry.initials.add(initials)) {
+        initialsToNames.computeIfAbsent(initials, k -> ConcurrentHashMap.newKeySet()).add(name);
+      }
+      entry.symbols.add(symbol);
+    }
+  }
+
+  public synchronized void remove(@Nonnull Path file) {
+    final List<Symbol> symbols = fileSymbols.remove(file);
+    if (symbols == null) {
+      return;
+    }
+    for (Symbol symbol : symbols) {
+      final String name = symbol.getName().toLowerCase();
+      final NameEntry entry = names.get(name);
+      if (entry == null) {
+        continue;
+      }
+      entry.symbols.remove(symbol);
+      if (!entry.symbols.isEmpty()) {
+        continue;
+      }
+      names.remove(name);
+      sortedNames.remove(name);
+      for (String trigram : trigrams(name)) {
+        removeFrom(trigramToNames, trigram, name);
+      }
+      for (String initials : entry.initials) {
+        removeFrom(initialsToNames, initials, name);
+      }
+    }
+  }
+
+  private static void removeFrom(
+      @Nonnull Map<String, Set<String>> map, @Nonnull String key, @Nonnull String name) {
+    final Set<String> set = map.get(key);
+    if (set != null) {
+      set.remove(name);
+      if (set.isEmpty()) {
+        map.remove(key);
+      }
+    }
+  }
+
+  /**
+   * @return the best matching symbols for the query ordered by their rank: exact matches before
+   *     prefix matches before camel case matches before substring matches before fuzzy matches.
+   */
+  @Nonnull
+  public List<Symbol> search(
+      @Nonnull String query,
+      int limit,
+      @Nonnull Predicate<Symbol> filter,
+      @Nonnull CancelChecker cancelChecker) {
+    final String q = query.trim().toLowerCase();
+    if (q.isEmpty() || limit <= 0) {
+      return Collections.emptyList();
+    }
+
+    final Set<String> candidates = new HashSet<>();
+    // prefix matches
+    addBounded(candidates, sortedNames.subSet(q, true, q + Character.MAX_VALUE, true));
+    // camel case matches
+    for (Set<String> camelCaseMatches :
+        initialsToNames.subMap(q, true, q + Character.MAX_VALUE, true).values()) {
+      addBounded(candidates, camelCaseMatches);
+    }
+    cancelChecker.checkCanceled();
+    // substring matches: check the names of the rarest trigram of the query
+    if (q.length() >= 3) {
+      Set<String> rarest = null;
+      for (String trigram : trigrams(q)) {
+        final Set<String> trigramNames = trigramToNames.get(trigram);
+        if (trigramNames == null) {
+          rarest = Collections.emptySet();
+          break;
+        }
+        if (rarest == null || trigramNames.size() < rarest.size()) {
+          rarest = trigramNames;
+        }
+      }
+      if (rarest != null) {
+        for (String name : rarest) {
+          if (candidates.size() >= MAX_CANDIDATES) {
+            break;
+          }
+          if (name.contains(q)) {
+            candidates.add(name);
+          }
+        }
+      }
+    }
+    cancelChecker.checkCanceled();
+    // fuzzy matches: names starting like the query which contain its characters in order
+    if (candidates.size() < limit) {
+      int scanned = 0;
+      final String first = q.substring(0, 1);
+      for (String name : sortedNames.subSet(first, true, first + Character.MAX_VALUE, true)) {
+        if (++scanned > MAX_FUZZY_SCAN) {
+          break;
+        }
+        if (isSubsequence(q, name)) {
+          candidates.add(name);
+        }
+      }
+    }
+
+    // keep the best limit symbols: the head of the queue is the worst kept symbol
+    final PriorityQueue<ScoredSymbol> best =
+        new PriorityQueue<>(limit + 1, Comparator.comparingLong(s -> s.score));
+    for (String name : candidates) {
+      cancelChecker.checkCanceled();
+      final NameEntry entry = names.get(name);
+      if (entry == null) {
+        continue;
+      }
+      final long nameScore = score(q, entry);
+      if (nameScore < 0) {
+        continue;
+      }
+      for (Symbol symbol : entry.symbols) {
+        if (!filter.test(symbol)) {
+          continue;
+        }
+        final long score = nameScore * 4 + kindScore(symbol.getKind());
+        if (best.size() < limit) {
+          best.add(new ScoredSymbol(symbol, score));
+        } else if (best.peek().score < score) {
+          best.poll();
+          best.add(new ScoredSymbol(symbol, score));
+        }
+      }
+    }
+
+    final List<Symbol> result = new ArrayList<>(best.size());
+    while (!best.isEmpty()) {
+      result.add(best.poll().symbol);
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  private static final class ScoredSymbol {
+    @Nonnull private final Symbol symbol;
+    private final long score;
+
+    private ScoredSymbol(@Nonnull Symbol symbol, long score) {
+      this.symbol = symbol;
+      this.score = score;
+    }
+  }
+
+  private static void addBounded(@Nonnull Set<String> candidates, @Nonnull Set<String> names) {
+    for (String name : names) {
+      if (candidates.size() >= MAX_CANDIDATES) {
+        return;
+      }
+      candidates.add(name);
+    }
+  }
+
+  /** @return the rank of the name for the query (higher is better) or -1 if it does not match */
+  private static long score(@Nonnull String q, @Nonnull NameEntry entry) {
+    final String name = entry.name;
+    final long rank;
+    if (name.equals(q)) {
+      rank = 5;
+    } else if (name.startsWith(q)) {
+      rank = 4;
+    } else if (entry.initials.stream().anyMatch(initials -> initials.startsWith(q))) {
+      rank = 3;
+    } else if (name.contains(q)) {
+      rank = 2;
+    } else if (isSubsequence(q, name)) {
+      rank = 1;
+    } else {
+      return -1;
+    }
+    // shorter names are closer to the query
+    return rank * 1024 - Math.min(name.length(), 1023);
+  }
+
+  private static int kindScore(@Nonnull SymbolKind kind) {
+    switch (kind) {
+      case Class:
+        return 2;
+      case Method:
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  private static boolean isSubsequence(@Nonnull String q, @Nonnull String name) {
+    int j = 0;
+    for (int i = 0; i < name.length() && j < q.length(); i++) {
+      if (name.charAt(i) == q.charAt(j)) {
+        j++;
+      }
+    }
+    return j == q.length();
+  }
+
+  @Nonnull
+  private static Set<String> trigrams(@Nonnull String name) {
+    if (name.length() < 3) {
+      return Collections.emptySet();
+    }
+    final Set<String> trigrams = new HashSet<>();
+    for (int i = 0; i + 3 <= name.length(); i++) {
+      trigrams.add(name.substring(i, i + 3));
+    }
+    return trigrams;
+  }
+
+  /** @return e.g. "sb" for "StringBuilder" or "gv" for "get_value" */
+  @Nonnull
+  static String camelCaseInitials(@Nonnull String name) {
+    final StringBuilder sb = new StringBuilder();
+    boolean wordStart = true;
+    char previous = 0;
+    for (int i = 0; i < name.length(); i++) {
+      final char c = name.charAt(i);
+      if (!Character.isLetterOrDigit(c)) {
+        wordStart = true;
+      } else {
+        if (wordStart
+            || (Character.isUpperCase(c)
+                && (Character.isLowerCase(previous) || Character.isDigit(previous)))) {
+          sb.append(Character.toLowerCase(c));
+        }
+        wordStart = false;
+      }
+      previous = c;
+    }
+    return sb.toString();
+  }
+}
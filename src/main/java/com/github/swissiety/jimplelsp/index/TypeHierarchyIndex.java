@@ -0,0 +1,92 @@
+package com.github.swissiety.jimplelsp.index;
+
+import sootup.core.types.ClassType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TypeHierarchyIndex holds the direct supertype/subtype relations of all workspace classes. It
+ * is patched per class whenever the extends/implements clauses of a class are (re)read - so
+ * querying subtypes only touches the subtypes instead of the whole view.
+ *
+ * @author Markus Schmidt
+ */
+public class TypeHierarchyIndex {
+  @Nonnull private final Map<ClassType, Set<ClassType>> directSupertypes = new ConcurrentHashMap<>();
+  @Nonnull private final Map<ClassType, Set<ClassType>> directSubtypes = new ConcurrentHashMap<>();
+
+  /** replaces the direct supertypes of the given class. */
+  public synchronized void update(
+      @Nonnull ClassType classType,
+      @Nullable ClassType superclass,
+      @Nonnull Collection<? extends ClassType> interfaces) {
+    final Set<ClassType> supertypes = new HashSet<>(interfaces.size() + 1);
+    if (superclass != null) {
+      supertypes.add(superclass);
+    }
+    supertypes.addAll(interfaces);
+
+    final Set<ClassType> previous = directSupertypes.put(classType, supertypes);
+    if (previous != null) {
+      for (ClassType supertype : previous) {
+        if (!supertypes.contains(supertype)) {
+          removeSubtype(supertype, classType);
+        }
+      }
+    }
+    for (ClassType supertype : supertypes) {
+      directSubtypes.computeIfAbsent(supertype, k -> ConcurrentHashMap.newKeySet()).add(classType);
+    }
+  }
+
+  /** removes the given class e.g. if its file was deleted or the class was renamed. */
+  public synchronized void remove(@Nonnull ClassType classType) {
+    final Set<ClassType> previous = directSupertypes.remove(classType);
+    if (previous != null) {
+      for (ClassType supertype : previous) {
+        removeSubtype(supertype, classType);
+      }
+    }
+  }
+
+  private void removeSubtype(@Nonnull ClassType supertype, @Nonnull ClassType subtype) {
+    final Set<ClassType> subtypes = directSubtypes.get(supertype);
+    if (subtypes != null) {
+      subtypes.remove(subtype);
+      if (subtypes.isEmpty()) {
+        directSubtypes.remove(supertype);
+      }
+    }
+  }
+
+  /** @return all direct and indirect subtypes (classes and interfaces) of the given type */
+  @Nonnull
+  public Set<ClassType> subtypesOf(@Nonnull ClassType classType) {
+    final Set<ClassType> subtypes = new LinkedHashSet<>();
+    final Deque<ClassType> worklist = new ArrayDeque<>();
+    worklist.add(classType);
+    while (!worklist.isEmpty()) {
+      final Set<ClassType> direct = directSubtypes.get(worklist.poll());
+      if (direct == null) {
+        continue;
+      }
+      for (ClassType subtype : direct) {
+        // the set guards against cycles of invalid hierarchies, too
+        if (!subtype.equals(classType) && subtypes.add(subtype)) {
+          worklist.add(subtype);
+        }
+      }
+    }
+    return subtypes;
+  }
+
+  /** @return the direct supertypes of the given class */
+  @Nonnull
+  public Set<ClassType> directSupertypesOf(@Nonnull ClassType classType) {
+    final Set<ClassType> supertypes = directSupertypes.get(classType);
+    return supertypes == null ? Collections.emptySet() : Collections.unmodifiableSet(supertypes);
+  }
+}
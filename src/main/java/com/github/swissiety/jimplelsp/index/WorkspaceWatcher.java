@@ -0,0 +1,135 @@
+package com.github.swissiety.jimplelsp.index;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches the workspace folders for changes of files on the server side and feeds them into a
+ * ReindexQueue. It is the fallback for clients which can not watch files themselves. Hidden
+ * directories (e.g. .git or the persistent index) are not watched.
+ *
+ * @author Markus Schmidt
+ */
+public class WorkspaceWatcher implements AutoCloseable {
+  @Nonnull private final WatchService watchService;
+  @Nonnull private final ReindexQueue queue;
+  @Nonnull private final List<Path> roots;
+  // the watched directories
+  @Nonnull private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+  @Nonnull private final Thread thread;
+
+  public WorkspaceWatcher(@Nonnull List<Path> roots, @Nonnull ReindexQueue queue)
+      throws IOException {
+    this.roots = roots;
+    this.queue = queue;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    for (Path root : roots) {
+      register(root);
+    }
+    thread = new Thread(this::run, "jimplelsp-workspace-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** watches the given directory and its subdirectories. */
+  private void register(@Nonnull Path directory) throws IOException {
+    Files.walkFileTree(
+        directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            if (!dir.equals(directory) && isHidden(dir)) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            directories.put(
+                dir.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE),
+                dir);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            // e.g. no permission
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private static boolean isHidden(@Nonnull Path directory) {
+    final Path name = directory.getFileName();
+    return name != null && name.toString().startsWith(".");
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        final WatchKey key = watchService.take();
+        final Path directory = directories.get(key);
+        if (directory != null) {
+          handleEvents(directory, key.pollEvents());
+        }
+        if (!key.reset()) {
+          // the directory is not accessible anymore e.g. deleted
+          directories.remove(key);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // closed
+    }
+  }
+
+  private void handleEvents(@Nonnull Path directory, @Nonnull List<WatchEvent<?>> events) {
+    for (WatchEvent<?> event : events) {
+      final WatchEvent.Kind<?> kind = event.kind();
+      if (kind == StandardWatchEventKinds.OVERFLOW) {
+        // events were lost: look at the whole workspace again
+        roots.forEach(queue::changed);
+        continue;
+      }
+      final Path path = directory.resolve((Path) event.context());
+      if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+        queue.deleted(path);
+      } else if (Files.isDirectory(path)) {
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && !isHidden(path)) {
+          try {
+            // e.g. an extraction: the files created before the registration are reported via
+            // the directory
+            register(path);
+            queue.changed(path);
+          } catch (IOException ignored) {
+            // the directory vanished already
+          }
+        }
+      } else if (path.toString().toLowerCase().endsWith(".jimple")) {
+        queue.changed(path);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
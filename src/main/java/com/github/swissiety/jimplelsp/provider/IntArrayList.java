@@ -0,0 +1,97 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable List view of an int[] - i.e. the encoded semantic tokens. It satisfies the
+ * List&lt;Integer&gt; of the lsp4j data classes while the ints stay unboxed; the {@link
+ * GsonAdapter} writes them to the JSON stream without boxing them.
+ *
+ * @author Markus Schmidt
+ */
+public final class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+
+  @Nonnull private final int[] data;
+  private final int size;
+
+  public IntArrayList(@Nonnull int[] data) {
+    this(data, data.length);
+  }
+
+  /** @param size the number of used ints of data - the list does not copy the array! */
+  public IntArrayList(@Nonnull int[] data, int size) {
+    if (size < 0 || size > data.length) {
+      throw new IllegalArgumentException("size " + size + " exceeds the array of " + data.length);
+    }
+    this.data = data;
+    this.size = size;
+  }
+
+  @Override
+  public Integer get(int index) {
+    return getInt(index);
+  }
+
+  public int getInt(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("index " + index + " of size " + size);
+    }
+    return data[index];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /** @return the ints of this list - the backing array if it is used completely. */
+  @Nonnull
+  public int[] toIntArray() {
+    return size == data.length ? data : Arrays.copyOf(data, size);
+  }
+
+  /** (de)serializes an IntArrayList as JSON array of numbers. */
+  public static class GsonAdapter extends TypeAdapter<IntArrayList> {
+
+    @Override
+    public void write(JsonWriter out, IntArrayList list) throws IOException {
+      if (list == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginArray();
+      for (int i = 0; i < list.size; i++) {
+        out.value(list.data[i]);
+      }
+      out.endArray();
+    }
+
+    @Override
+    public IntArrayList read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      int[] data = new int[64];
+      int size = 0;
+      in.beginArray();
+      while (in.hasNext()) {
+        if (size == data.length) {
+          data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = in.nextInt();
+      }
+      in.endArray();
+      return new IntArrayList(data, size);
+    }
+  }
+}
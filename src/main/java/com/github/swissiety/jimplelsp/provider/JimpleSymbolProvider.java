@@ -1,16 +1,28 @@
 package com.github.swissiety.jimplelsp.provider;
 
+import com.github.swissiety.jimplelsp.Util;
+import com.github.swissiety.jimplelsp.index.SymbolIndex;
 import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Range;
 import org.eclipse.lsp4j.SymbolInformation;
 import org.eclipse.lsp4j.SymbolKind;
 import org.eclipse.lsp4j.SymbolKindCapabilities;
+import sootup.core.model.Position;
 import sootup.core.model.SootClass;
 import sootup.core.model.SootField;
 import sootup.core.model.SootMethod;
+import sootup.core.signatures.FieldSignature;
+import sootup.core.signatures.MethodSignature;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
 
 import javax.annotation.Nonnull;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * The JimpleSymbolProvider retrieves symbols for WorkspaceSymbolRequest and DocumentSymbolRequest
@@ -24,6 +36,7 @@ public class JimpleSymbolProvider {
       String query,
       @Nonnull SootClass<?> clazz,
       SignaturePositionResolver resolver,
+      @Nonnull UnaryOperator<Position> toDocumentPosition,
       @Nonnull SymbolKindCapabilities symbolKind,
       int limit) {
     final List<SymbolKind> clientSupportedSymbolKinds = symbolKind.getValueSet();
@@ -34,7 +47,8 @@ public class JimpleSymbolProvider {
       // retrieve classes
       if (query == null || clazz.getName().toLowerCase().contains(query)) {
         Location location =
-            resolver.findFirstMatchingSignature(clazz.getType(), clazz.getPosition());
+            resolver.findFirstMatchingSignature(
+                clazz.getType(), toDocumentPosition.apply(clazz.getPosition()));
         resultList.add(new SymbolInformation(clazz.getName(), SymbolKind.Class, location));
       }
     }
@@ -45,7 +59,8 @@ public class JimpleSymbolProvider {
         if (query == null || method.getName().toLowerCase().contains(query)) {
           // find first signature matching
           Location location =
-              resolver.findFirstMatchingSignature(method.getSignature(), method.getPosition());
+              resolver.findFirstMatchingSignature(
+                  method.getSignature(), toDocumentPosition.apply(method.getPosition()));
           resultList.add(new SymbolInformation(method.getName(), SymbolKind.Method, location));
         }
       }
@@ -56,10 +71,49 @@ public class JimpleSymbolProvider {
       for (SootField field : clazz.getFields()) {
         if (query == null || field.getName().toLowerCase().contains(query)) {
           Location location =
-              resolver.findFirstMatchingSignature(field.getSignature(), field.getPosition());
+              resolver.findFirstMatchingSignature(
+                  field.getSignature(), toDocumentPosition.apply(field.getPosition()));
           resultList.add(new SymbolInformation(field.getName(), SymbolKind.Field, location));
         }
       }
     }
   }
+
+  /** @return the symbols of the declarations of a file for the workspace SymbolIndex */
+  @Nonnull
+  public static List<SymbolIndex.Symbol> toSymbols(
+      @Nonnull Path path, @Nonnull List<Pair<Signature, Range>> declarations) {
+    final String uri = Util.pathToUri(path);
+    final List<SymbolIndex.Symbol> symbols = new ArrayList<>(declarations.size());
+    for (Pair<Signature, Range> declaration : declarations) {
+      final Signature signature = declaration.getLeft();
+      final Location location = new Location(uri, declaration.getRight());
+      if (signature instanceof ClassType) {
+        final ClassType classType = (ClassType) signature;
+        symbols.add(
+            new SymbolIndex.Symbol(
+                classType.getClassName(),
+                SymbolKind.Class,
+                classType.getPackageName().getPackageName(),
+                location));
+      } else if (signature instanceof MethodSignature) {
+        final MethodSignature methodSignature = (MethodSignature) signature;
+        symbols.add(
+            new SymbolIndex.Symbol(
+                methodSignature.getName(),
+                SymbolKind.Method,
+                methodSignature.getDeclClassType().getFullyQualifiedName(),
+                location));
+      } else if (signature instanceof FieldSignature) {
+        final FieldSignature fieldSignature = (FieldSignature) signature;
+        symbols.add(
+            new SymbolIndex.Symbol(
+                fieldSignature.getName(),
+                SymbolKind.Field,
+                fieldSignature.getDeclClassType().getFullyQualifiedName(),
+                location));
+      }
+    }
+    return symbols;
+  }
 }
@@ -0,0 +1,335 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.eclipse.lsp4j.SemanticTokenTypes;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
+import sootup.jimple.JimpleLexer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Highlights a Jimple document from the token stream of the JimpleLexer only - i.e. without
+ * parsing. It classifies class names, method names, types and locals by the tokens surrounding
+ * them, so it works for syntactically broken documents, too. The tree based {@link
+ * SyntaxHighlightingProvider} refines the result once a valid parse tree exists.
+ *
+ * @author Markus Schmidt
+ */
+public class LexicalHighlightingProvider {
+
+  private static final Set<String> MODIFIERS =
+      new HashSet<>(
+          Arrays.asList(
+              "public",
+              "protected",
+              "private",
+              "static",
+              "final",
+              "abstract",
+              "native",
+              "synchronized",
+              "transient",
+              "volatile",
+              "strictfp",
+              "enum",
+              "synthetic",
+              "annotation"));
+
+  private static final Set<String> OPERATORS =
+      new HashSet<>(
+          Arrays.asList(
+              "+", "-", "*", "/", "%", "&", "|", "^", "<<", ">>", ">>>", "==", "!=", "<", "<=",
+              ">", ">=", "cmp", "cmpg", "cmpl", "neg", "lengthof"));
+
+  // keywords which are followed by a type
+  private static final Set<String> TYPE_PREFIXES =
+      new HashSet<>(
+          Arrays.asList(
+              "extends", "implements", "throws", "new", "newmultiarray", "instanceof", "catch"));
+
+  // keywords which are followed by a label
+  private static final Set<String> LABEL_PREFIXES =
+      new HashSet<>(Arrays.asList("goto", "from", "to", "with"));
+
+  private LexicalHighlightingProvider() {}
+
+  public static SemanticTokens paintbrush(
+      @Nonnull CharStream charStream, @Nonnull CancelChecker cancelChecker) {
+    final JimpleLexer lexer = new JimpleLexer(charStream);
+    lexer.removeErrorListeners();
+    final List<Token> tokens = new ArrayList<>();
+    for (Token token : lexer.getAllTokens()) {
+      if (token.getChannel() == Token.DEFAULT_CHANNEL) {
+        tokens.add(token);
+      }
+    }
+
+    final SemanticTokenManager semanticTokenManager =
+        new SemanticTokenManager(SyntaxHighlightingProvider.getLegend());
+    new Classifier(semanticTokenManager, tokens, cancelChecker).run();
+    return new SemanticTokens(semanticTokenManager.getCanvas());
+  }
+
+  /** walks over the tokens and keeps just enough context to classify them. */
+  private static class Classifier {
+    @Nonnull private final SemanticTokenManager semanticTokenManager;
+    @Nonnull private final List<Token> tokens;
+    @Nonnull private final CancelChecker cancelChecker;
+
+    private final int keyword;
+    private final int modifier;
+    private final int clazz;
+    private final int iface;
+    private final int method;
+    private final int type;
+    private final int variable;
+    private final int string;
+    private final int number;
+    private final int operator;
+
+    // nesting of braces: 0 = class header, 1 = members, 2+ = method body
+    private int depth = 0;
+    // nesting of parentheses
+    private int parens = 0;
+    // index of the '>' closing the current method/field signature or -1
+    private int signatureEnd = -1;
+    private boolean afterSignatureColon = false;
+    // nesting of parentheses at the beginning of the current signature
+    private int signatureParens = 0;
+
+    private Classifier(
+        @Nonnull SemanticTokenManager semanticTokenManager,
+        @Nonnull List<Token> tokens,
+        @Nonnull CancelChecker cancelChecker) {
+      this.semanticTokenManager = semanticTokenManager;
+      this.tokens = tokens;
+      this.cancelChecker = cancelChecker;
+      keyword = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Keyword);
+      modifier = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Modifier);
+      clazz = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Class);
+      iface = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Interface);
+      method = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Method);
+      type = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Type);
+      variable = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Variable);
+      string = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.String);
+      number = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Number);
+      operator = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Operator);
+    }
+
+    private void run() {
+      for (int i = 0; i < tokens.size(); i++) {
+        if ((i & 1023) == 0) {
+          cancelChecker.checkCanceled();
+        }
+        final Token token = tokens.get(i);
+        final String text = token.getText();
+        if ("<".equals(text) && i > signatureEnd) {
+          signatureEnd = findSignatureEnd(i);
+          afterSignatureColon = false;
+          signatureParens = parens;
+        }
+        final int tokenType = classify(i, token, text);
+        if (tokenType >= 0) {
+          semanticTokenManager.paintText(
+              tokenType, 0, token.getLine() - 1, token.getCharPositionInLine(), length(token));
+        }
+        updateContext(i, text);
+      }
+    }
+
+    /** @return the legend id of the token type or -1 if the token is not painted */
+    private int classify(int i, @Nonnull Token token, @Nonnull String text) {
+      switch (token.getType()) {
+        case JimpleLexer.IDENTIFIER:
+          return classifyIdentifier(i);
+        case JimpleLexer.STRING_CONSTANT:
+          return string;
+        case JimpleLexer.BOOL_CONSTANT:
+        case JimpleLexer.DEC_CONSTANT:
+        case JimpleLexer.HEX_CONSTANT:
+        case JimpleLexer.FLOAT_CONSTANT:
+          return number;
+        default:
+          break;
+      }
+      if (OPERATORS.contains(text)) {
+        // '<' and '>' delimit signatures, too
+        return i <= signatureEnd ? -1 : operator;
+      }
+      if (MODIFIERS.contains(text)) {
+        return modifier;
+      }
+      if (text.startsWith("<") && text.endsWith(">") && text.length() > 2) {
+        // <init> and <clinit>
+        return method;
+      }
+      if (text.startsWith("@") || isWord(text)) {
+        return keyword;
+      }
+      return -1;
+    }
+
+    private int classifyIdentifier(int i) {
+      final String prev = textAt(i - 1);
+      final String next = textAt(i + 1);
+
+      if (i <= signatureEnd) {
+        // <ClassName: Type name(Type, ..)> or <ClassName: Type name>
+        if ("(".equals(next)) {
+          return method;
+        }
+        if (afterSignatureColon && ">".equals(next) && parens == signatureParens) {
+          return variable;
+        }
+        return type;
+      }
+      if ("class".equals(prev) && depth == 0) {
+        return clazz;
+      }
+      if ("interface".equals(prev) && depth == 0) {
+        return iface;
+      }
+      if (TYPE_PREFIXES.contains(prev)) {
+        return type;
+      }
+      if (depth == 0) {
+        // implemented interfaces
+        return type;
+      }
+      if (depth == 1) {
+        // members: [modifiers] type name(type, ..) [throws ..] or [modifiers] type name;
+        if ("(".equals(next)) {
+          return method;
+        }
+        if (";".equals(next) && parens == 0 && !",".equals(prev)) {
+          return variable;
+        }
+        return type;
+      }
+
+      // method body
+      if (LABEL_PREFIXES.contains(prev) || (isStatementStart(i) && ":".equals(next))) {
+        // labels are not painted
+        return -1;
+      }
+      if (prev != null && (prev.startsWith("@") || (":".equals(prev) && isIdentityRef(i - 2)))) {
+        // r0 := @this: Type
+        return type;
+      }
+      if ("(".equals(prev) && isCast(i)) {
+        return type;
+      }
+      if (isStatementStart(i)) {
+        final int nextType = i + 1 < tokens.size() ? tokens.get(i + 1).getType() : -1;
+        if (nextType == JimpleLexer.IDENTIFIER || "[".equals(next)) {
+          // declaration of locals
+          return type;
+        }
+      }
+      return variable;
+    }
+
+    private boolean isIdentityRef(int i) {
+      final String text = textAt(i);
+      return text != null && text.startsWith("@");
+    }
+
+    /** e.g. (java.lang.String) r1 or newarray (int)[r2] */
+    private boolean isCast(int i) {
+      int j = i + 1;
+      while ("[".equals(textAt(j)) || "]".equals(textAt(j))) {
+        j++;
+      }
+      if (!")".equals(textAt(j))) {
+        return false;
+      }
+      // invoke arguments follow the signature: <..>(r1)
+      return !">".equals(textAt(i - 2));
+    }
+
+    private boolean isStatementStart(int i) {
+      final String prev = textAt(i - 1);
+      return prev == null || ";".equals(prev) || "{".equals(prev) || "}".equals(prev);
+    }
+
+    private void updateContext(int i, @Nonnull String text) {
+      switch (text) {
+        case "{":
+          depth++;
+          break;
+        case "}":
+          depth = Math.max(0, depth - 1);
+          break;
+        case "(":
+          parens++;
+          break;
+        case ")":
+          parens = Math.max(0, parens - 1);
+          break;
+        case ";":
+          parens = 0;
+          break;
+        case ":":
+          if (i <= signatureEnd) {
+            afterSignatureColon = true;
+          }
+          break;
+        default:
+          break;
+      }
+    }
+
+    /** @return the index of the '>' closing the signature starting at i or -1 */
+    private int findSignatureEnd(int i) {
+      if (depth == 0
+          || tokens.size() <= i + 1
+          || tokens.get(i + 1).getType() != JimpleLexer.IDENTIFIER) {
+        return -1;
+      }
+      boolean colon = false;
+      for (int j = i + 1; j < tokens.size(); j++) {
+        final String text = tokens.get(j).getText();
+        if (":".equals(text)) {
+          colon = true;
+        } else if (">".equals(text)) {
+          return colon ? j : -1;
+        } else if (";".equals(text) || "{".equals(text) || "}".equals(text)) {
+          return -1;
+        }
+      }
+      return -1;
+    }
+
+    @Nullable
+    private String textAt(int i) {
+      if (i < 0 || i >= tokens.size()) {
+        return null;
+      }
+      return tokens.get(i).getText();
+    }
+  }
+
+  private static boolean isWord(@Nonnull String text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (!Character.isLetter(text.charAt(i))) {
+        return false;
+      }
+    }
+    return !text.isEmpty();
+  }
+
+  private static int length(@Nonnull Token token) {
+    if (token.getStartIndex() < 0 || token.getStopIndex() < token.getStartIndex()) {
+      return token.getText().length();
+    }
+    return token.getStopIndex() - token.getStartIndex() + 1;
+  }
+}
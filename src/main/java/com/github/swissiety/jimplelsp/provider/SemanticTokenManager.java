@@ -1,56 +1,95 @@
 package com.github.swissiety.jimplelsp.provider;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import org.eclipse.lsp4j.SemanticTokensLegend;
 
-/** @author Markus Schmidt */
+/**
+ * Encodes semantic tokens into a growable int[]. Token types and modifiers are resolved to their
+ * legend ids once (see {@link #getTokenTypeId(String)} and {@link #getTokenModifierBit(String)}) so
+ * painting a token neither searches the legend nor boxes any value.
+ *
+ * @author Markus Schmidt
+ */
 public class SemanticTokenManager {
   @Nonnull private final SemanticTokensLegend legend;
+  @Nonnull private final Map<String, Integer> tokenTypeIds = new HashMap<>();
+  @Nonnull private final Map<String, Integer> tokenModifierBits = new HashMap<>();
 
-  @Nonnull final List<Integer> encodedSemanticTokens = new ArrayList<>();
+  @Nonnull int[] encodedSemanticTokens = new int[5 * 256];
+  int size = 0;
   int lastTokenLine, lastTokenColumn = 0;
 
   public SemanticTokenManager(@Nonnull SemanticTokensLegend legend) {
     this.legend = legend;
+    final List<String> tokenTypes = legend.getTokenTypes();
+    for (int i = 0; i < tokenTypes.size(); i++) {
+      tokenTypeIds.put(tokenTypes.get(i), i);
+    }
+    final List<String> tokenModifiers = legend.getTokenModifiers();
+    for (int i = 0; i < tokenModifiers.size() && i < 32; i++) {
+      tokenModifierBits.put(tokenModifiers.get(i), 1 << i);
+    }
+  }
+
+  /** @return the index of the token type in the legend */
+  public int getTokenTypeId(@Nonnull String type) {
+    final Integer typeIdx = tokenTypeIds.get(type);
+    if (typeIdx == null) {
+      throw new RuntimeException(type + " is not supported in semantic token legend!");
+    }
+    return typeIdx;
+  }
+
+  /** @return the bit of the token modifier in the legend or 0 if its not supported */
+  public int getTokenModifierBit(@Nonnull String modifier) {
+    return tokenModifierBits.getOrDefault(modifier, 0);
   }
 
   public void paintText(@Nonnull String type, @Nonnull String mod, int line, int col, int length) {
+    paintText(getTokenTypeId(type), getTokenModifierBit(mod), line, col, length);
+  }
+
+  /**
+   * @param typeId the index of the token type in the legend
+   * @param modifiers the bitmask of the token modifiers
+   */
+  public void paintText(int typeId, int modifiers, int line, int col, int length) {
+    if (size + 5 > encodedSemanticTokens.length) {
+      encodedSemanticTokens =
+          Arrays.copyOf(encodedSemanticTokens, encodedSemanticTokens.length * 2);
+    }
+    final int[] data = encodedSemanticTokens;
+
     //    at index 5*i - deltaLine: token line number, relative to the previous token
-    encodedSemanticTokens.add(line - lastTokenLine);
+    data[size] = line - lastTokenLine;
 
     //    at index 5*i+1 - deltaStart: token start character, relative to the previous token
     // (relative to 0 or the previous token’s start if they are on the same line)
-    if (line == lastTokenLine) {
-      encodedSemanticTokens.add(col - lastTokenColumn);
-    } else {
-      encodedSemanticTokens.add(col);
-    }
+    data[size + 1] = line == lastTokenLine ? col - lastTokenColumn : col;
 
     //    at index 5*i+2 - length: the length of the token.
-    encodedSemanticTokens.add(length);
+    data[size + 2] = length;
 
     //    at index 5*i+3 - tokenType: will be looked up in SemanticTokensLegend.tokenTypes. We
     // currently ask that tokenType < 65536.
-    final int typeIdx = legend.getTokenTypes().indexOf(type); // TODO [ms] performance
-    if (typeIdx < 0) {
-      throw new RuntimeException(type + " is not supported in semantic token legend!");
-    }
-    encodedSemanticTokens.add(typeIdx);
+    data[size + 3] = typeId;
 
     //    at index 5*i+4 - tokenModifiers: each set bit will be looked up in
     // SemanticTokensLegend.tokenModifiers
-    encodedSemanticTokens.add(
-        Math.max(legend.getTokenModifiers().indexOf(mod), 0)); // TODO performance
+    data[size + 4] = modifiers;
 
+    size += 5;
     lastTokenLine = line;
     lastTokenColumn = col;
   }
 
-  public List<Integer> getCanvas() {
-    return encodedSemanticTokens;
+  /** @return the encoded tokens - the list is backed by the painted ints. */
+  public IntArrayList getCanvas() {
+    return new IntArrayList(encodedSemanticTokens, size);
   }
 
   public SemanticTokensLegend getLegend() {
@@ -73,13 +112,12 @@ public class SemanticTokenManager {
 
   public String humanReadableTokenList() {
     StringBuilder sb = new StringBuilder();
-    ListIterator<Integer> it = encodedSemanticTokens.listIterator();
-    while (it.hasNext()) {
-      int deltaLine = it.next();
-      int deltaCol = it.next();
-      int length = it.next();
-      int tokenTypeIdx = it.next();
-      int tokenModIdx = it.next();
+    for (int i = 0; i + 4 < size; i += 5) {
+      int deltaLine = encodedSemanticTokens[i];
+      int deltaCol = encodedSemanticTokens[i + 1];
+      int length = encodedSemanticTokens[i + 2];
+      int tokenTypeIdx = encodedSemanticTokens[i + 3];
+      int tokenModIdx = encodedSemanticTokens[i + 4];
 
       sb.append("token: ").append(legend.getTokenTypes().get(tokenTypeIdx));
       sb.append("\tmodifier: ").append(tokenModIdx);
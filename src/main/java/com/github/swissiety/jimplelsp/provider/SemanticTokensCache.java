@@ -0,0 +1,206 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SemanticTokensCache remembers the last semantic tokens computed for each document together
+ * with the document version they were computed for and a resultId. It allows to answer repeated
+ * requests for an unchanged version without repainting and to answer delta requests with the edits
+ * relative to the tokens the client already has. The latter are remembered separately: tokens
+ * computed for a range request replace the computed ones but not the ones the client refers to.
+ *
+ * @author Markus Schmidt
+ */
+public class SemanticTokensCache {
+
+  /** the tokens sent for a version of a document. */
+  public static final class Entry {
+    @Nonnull private final String resultId;
+    private final int version;
+    @Nonnull private final int[] data;
+    private final boolean refined;
+
+    private Entry(@Nonnull String resultId, int version, @Nonnull int[] data, boolean refined) {
+      this.resultId = resultId;
+      this.version = version;
+      this.data = data;
+      this.refined = refined;
+    }
+
+    @Nonnull
+    public String getResultId() {
+      return resultId;
+    }
+
+    public int getVersion() {
+      return version;
+    }
+
+    @Nonnull
+    public int[] getData() {
+      return data;
+    }
+
+    /** @return whether the tokens are painted from a parse tree instead of the token stream */
+    public boolean isRefined() {
+      return refined;
+    }
+  }
+
+  @Nonnull private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  // the tokens sent as a whole, i.e. the ones the next delta request refers to
+  @Nonnull private final Map<String, Entry> sentEntries = new ConcurrentHashMap<>();
+  @Nonnull private final AtomicLong resultIds = new AtomicLong();
+
+  /**
+   * @return the tokens sent for the given version of the document or null if they are unknown. A
+   *     negative version (i.e. the document is not opened) is never reused as its content on disk
+   *     may have changed meanwhile.
+   */
+  @Nullable
+  public Entry get(@Nonnull String uri, int version) {
+    final Entry entry = entries.get(uri);
+    if (version < 0 || entry == null || entry.version != version) {
+      return null;
+    }
+    return entry;
+  }
+
+  /** @return the last tokens sent for the document if the client refers to them by resultId */
+  @Nullable
+  public Entry getByResultId(@Nonnull String uri, @Nullable String resultId) {
+    final Entry entry = sentEntries.get(uri);
+    if (entry == null || !entry.resultId.equals(resultId)) {
+      return null;
+    }
+    return entry;
+  }
+
+  /** @return whether the last tokens sent for the document are not refined by a parse tree */
+  public boolean isLexical(@Nonnull String uri) {
+    final Entry entry = entries.get(uri);
+    return entry != null && !entry.refined;
+  }
+
+  /** remembers the computed tokens of a version and assigns them a new resultId. */
+  @Nonnull
+  public Entry put(@Nonnull String uri, int version, @Nonnull int[] data, boolean refined) {
+    final Entry entry =
+        new Entry(Long.toString(resultIds.incrementAndGet()), version, data, refined);
+    entries.put(uri, entry);
+    return entry;
+  }
+
+  /**
+   * remembers the tokens which are sent to the client together with their resultId i.e. the
+   * tokens the next delta request refers to.
+   */
+  public void sent(@Nonnull String uri, @Nonnull Entry entry) {
+    sentEntries.put(uri, entry);
+  }
+
+  public void remove(@Nonnull String uri) {
+    entries.remove(uri);
+    sentEntries.remove(uri);
+  }
+
+  /**
+   * @return the edits which transform the previous into the current tokens: a single edit replacing
+   *     everything between the common prefix and the common suffix or no edit if both are equal.
+   */
+  @Nonnull
+  public static List<SemanticTokensEdit> diff(@Nonnull int[] previous, @Nonnull int[] current) {
+    final int minLength = Math.min(previous.length, current.length);
+    int prefix = 0;
+    while (prefix < minLength && previous[prefix] == current[prefix]) {
+      prefix++;
+    }
+    if (prefix == previous.length && prefix == current.length) {
+      return Collections.emptyList();
+    }
+    int suffix = 0;
+    while (suffix < minLength - prefix
+        && previous[previous.length - 1 - suffix] == current[current.length - 1 - suffix]) {
+      suffix++;
+    }
+    final List<Integer> inserted =
+        toList(Arrays.copyOfRange(current, prefix, current.length - suffix));
+    return Collections.singletonList(
+        new SemanticTokensEdit(prefix, previous.length - suffix - prefix, inserted));
+  }
+
+  /**
+   * @return the encoded tokens which start inside the range. The first of them is encoded relative
+   *     to the beginning of the document, all following ones stay relative to their predecessor.
+   */
+  @Nonnull
+  public static List<Integer> slice(@Nonnull int[] data, @Nonnull Range range) {
+    int line = 0;
+    int col = 0;
+    int first = -1;
+    int firstLine = 0;
+    int firstCol = 0;
+    int end = data.length;
+    for (int i = 0; i + 4 < data.length; i += 5) {
+      if (data[i] != 0) {
+        line += data[i];
+        col = data[i + 1];
+      } else {
+        col += data[i + 1];
+      }
+      if (first < 0) {
+        if (isBefore(line, col, range.getStart())) {
+          continue;
+        }
+        first = i;
+        firstLine = line;
+        firstCol = col;
+      }
+      if (!isBefore(line, col, range.getEnd())) {
+        end = i;
+        break;
+      }
+    }
+    if (first < 0 || first >= end) {
+      return Collections.emptyList();
+    }
+    final int[] sliced = Arrays.copyOfRange(data, first, end);
+    sliced[0] = firstLine;
+    sliced[1] = firstCol;
+    return toList(sliced);
+  }
+
+  private static boolean isBefore(int line, int col, @Nonnull Position position) {
+    return line < position.getLine()
+        || (line == position.getLine() && col < position.getCharacter());
+  }
+
+  /** @return a List view of the ints - without copying or boxing them */
+  @Nonnull
+  public static List<Integer> toList(@Nonnull int[] data) {
+    return new IntArrayList(data);
+  }
+
+  @Nonnull
+  public static int[] toArray(@Nonnull List<Integer> data) {
+    if (data instanceof IntArrayList) {
+      return ((IntArrayList) data).toIntArray();
+    }
+    final int[] array = new int[data.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = data.get(i);
+    }
+    return array;
+  }
+}
@@ -6,6 +6,7 @@ import org.antlr.v4.runtime.tree.ParseTree;
 import org.eclipse.lsp4j.SemanticTokenTypes;
 import org.eclipse.lsp4j.SemanticTokens;
 import org.eclipse.lsp4j.SemanticTokensLegend;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import sootup.jimple.JimpleBaseVisitor;
 import sootup.jimple.JimpleParser;
 
@@ -40,8 +41,14 @@ public class SyntaxHighlightingProvider {
   }
 
   public static SemanticTokens paintbrush(@Nonnull ParseTree parseTree) throws IOException {
+    return paintbrush(parseTree, () -> {});
+  }
+
+  /** @param cancelChecker is checked between the members of the class */
+  public static SemanticTokens paintbrush(
+      @Nonnull ParseTree parseTree, @Nonnull CancelChecker cancelChecker) throws IOException {
     SemanticTokenManager semanticTokenManager = new SemanticTokenManager(legend);
-    new SyntaxHighlightingVisitor(semanticTokenManager).visit(parseTree);
+    new SyntaxHighlightingVisitor(semanticTokenManager, cancelChecker).visit(parseTree);
     return new SemanticTokens(semanticTokenManager.getCanvas());
   }
 
@@ -49,43 +56,67 @@ public class SyntaxHighlightingProvider {
   private static class SyntaxHighlightingVisitor extends JimpleBaseVisitor<SemanticTokenManager> {
 
     @Nonnull private final SemanticTokenManager semanticTokenManager;
-
-    private SyntaxHighlightingVisitor(@Nonnull SemanticTokenManager semanticTokenManager) {
+    @Nonnull private final CancelChecker cancelChecker;
+
+    // legend ids of the painted token types
+    private final int keyword;
+    private final int modifier;
+    private final int clazz;
+    private final int iface;
+    private final int method;
+    private final int type;
+    private final int variable;
+    private final int string;
+    private final int number;
+    private final int operator;
+
+    private SyntaxHighlightingVisitor(
+        @Nonnull SemanticTokenManager semanticTokenManager, @Nonnull CancelChecker cancelChecker) {
       this.semanticTokenManager = semanticTokenManager;
+      this.cancelChecker = cancelChecker;
+      keyword = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Keyword);
+      modifier = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Modifier);
+      clazz = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Class);
+      iface = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Interface);
+      method = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Method);
+      type = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Type);
+      variable = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Variable);
+      string = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.String);
+      number = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Number);
+      operator = semanticTokenManager.getTokenTypeId(SemanticTokenTypes.Operator);
     }
 
-    private void paint(@Nonnull String tokentype, @Nonnull Token token) {
+    private void paint(int tokentype, @Nonnull Token token) {
       // TODO: add tokenModifier
       // zero offset line/column
       semanticTokenManager.paintText(
-          tokentype,
-          "",
-          token.getLine() - 1,
-          token.getCharPositionInLine(),
-          token.getText().length());
+          tokentype, 0, token.getLine() - 1, token.getCharPositionInLine(), length(token));
     }
 
-    private void paint(@Nonnull String tokentype, @Nonnull ParserRuleContext ctx) {
+    private void paint(int tokentype, @Nonnull ParserRuleContext ctx) {
       // TODO: add tokenModifier
       // zero offset line/column
-      String tokenText = ctx.getText();
-
+      final int length = ctx.start == ctx.stop ? length(ctx.start) : ctx.getText().length();
       semanticTokenManager.paintText(
-          tokentype,
-          "",
-          ctx.start.getLine() - 1,
-          ctx.start.getCharPositionInLine(),
-          ctx.getText().length());
+          tokentype, 0, ctx.start.getLine() - 1, ctx.start.getCharPositionInLine(), length);
+    }
+
+    /** @return the length of the token without copying its text */
+    private static int length(@Nonnull Token token) {
+      if (token.getStartIndex() < 0 || token.getStopIndex() < token.getStartIndex()) {
+        return token.getText().length();
+      }
+      return token.getStopIndex() - token.getStartIndex() + 1;
     }
 
     @Override
     public SemanticTokenManager visitFile(JimpleParser.FileContext ctx) {
-      ctx.class_modifier().forEach(x -> paint(SemanticTokenTypes.Modifier, x));
+      ctx.class_modifier().forEach(x -> paint(modifier, x));
       visitFile_type(ctx.file_type());
       if (ctx.file_type().getText().charAt(0) == 'c') {
-        paint(SemanticTokenTypes.Class, ctx.classname);
+        paint(clazz, ctx.classname);
       } else {
-        paint(SemanticTokenTypes.Interface, ctx.classname);
+        paint(iface, ctx.classname);
       }
 
       JimpleParser.Extends_clauseContext extendsClauseCtx = ctx.extends_clause();
@@ -97,32 +128,37 @@ public class SyntaxHighlightingProvider {
       if (implements_clauseContext != null) {
         visitImplements_clause(implements_clauseContext);
       }
-      ctx.member().forEach(this::visitMember);
+      ctx.member()
+          .forEach(
+              member -> {
+                cancelChecker.checkCanceled();
+                visitMember(member);
+              });
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitFile_type(JimpleParser.File_typeContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx);
+      paint(keyword, ctx);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitImportItem(JimpleParser.ImportItemContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitExtends_clause(JimpleParser.Extends_clauseContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
-      paint(SemanticTokenTypes.Type, ctx.identifier());
+      paint(keyword, ctx.start);
+      paint(type, ctx.identifier());
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitImplements_clause(JimpleParser.Implements_clauseContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
       JimpleParser.Type_listContext typeList = ctx.type_list();
       if (typeList != null) {
         visitType_list(typeList);
@@ -133,22 +169,22 @@ public class SyntaxHighlightingProvider {
     @Override
     public SemanticTokenManager visitField(JimpleParser.FieldContext ctx) {
       ctx.field_modifier().forEach( modctx -> {
-        paint(SemanticTokenTypes.Modifier, modctx);
+        paint(modifier, modctx);
       });
-      paint(SemanticTokenTypes.Type, ctx.type());
-      paint(SemanticTokenTypes.Variable, ctx.identifier());
+      paint(type, ctx.type());
+      paint(variable, ctx.identifier());
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitMethod(JimpleParser.MethodContext ctx) {
       ctx.method_modifier().forEach( modctx -> {
-        paint(SemanticTokenTypes.Modifier, modctx);
+        paint(modifier, modctx);
       });
       visitMethod_subsignature(ctx.method_subsignature());
       JimpleParser.Throws_clauseContext throws_clauseContext = ctx.throws_clause();
       if (throws_clauseContext != null) {
-        paint(SemanticTokenTypes.Keyword, throws_clauseContext.start); // fix .g4 to use THROWS
+        paint(keyword, throws_clauseContext.start); // fix .g4 to use THROWS
         visitType_list(throws_clauseContext.type_list());
       }
       visitMethod_body(ctx.method_body());
@@ -158,25 +194,25 @@ public class SyntaxHighlightingProvider {
 
     @Override
     public SemanticTokenManager visitTrap_clause(JimpleParser.Trap_clauseContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.CATCH().getSymbol());
-      paint(SemanticTokenTypes.Type, ctx.exceptiontype);
-      paint(SemanticTokenTypes.Keyword, ctx.FROM().getSymbol());
-      paint(SemanticTokenTypes.Keyword, ctx.TO().getSymbol());
-      paint(SemanticTokenTypes.Keyword, ctx.WITH().getSymbol());
+      paint(keyword, ctx.CATCH().getSymbol());
+      paint(type, ctx.exceptiontype);
+      paint(keyword, ctx.FROM().getSymbol());
+      paint(keyword, ctx.TO().getSymbol());
+      paint(keyword, ctx.WITH().getSymbol());
 
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitType(JimpleParser.TypeContext ctx) {
-      paint(SemanticTokenTypes.Type, ctx.start);
+      paint(type, ctx.start);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitMethod_signature(JimpleParser.Method_signatureContext ctx) {
       // paint(SemanticTokenTypes.Variable, ctx.identifier());
-      paint(SemanticTokenTypes.Type, ctx.class_name);
+      paint(type, ctx.class_name);
       visitMethod_subsignature(ctx.method_subsignature());
       return semanticTokenManager;
     }
@@ -185,7 +221,7 @@ public class SyntaxHighlightingProvider {
     public SemanticTokenManager visitMethod_subsignature(
         JimpleParser.Method_subsignatureContext ctx) {
       visitType(ctx.type());
-      paint(SemanticTokenTypes.Method, ctx.method_name());
+      paint(method, ctx.method_name());
       if (ctx.type_list() != null) {
         visitType_list(ctx.type_list());
       }
@@ -194,9 +230,9 @@ public class SyntaxHighlightingProvider {
 
     @Override
     public SemanticTokenManager visitField_signature(JimpleParser.Field_signatureContext ctx) {
-      paint(SemanticTokenTypes.Type, ctx.classname);
-      paint(SemanticTokenTypes.Type, ctx.type());
-      paint(SemanticTokenTypes.Variable, ctx.fieldname);
+      paint(type, ctx.classname);
+      paint(type, ctx.type());
+      paint(variable, ctx.fieldname);
       return semanticTokenManager;
     }
 
@@ -204,7 +240,7 @@ public class SyntaxHighlightingProvider {
     public SemanticTokenManager visitReference(JimpleParser.ReferenceContext ctx) {
       JimpleParser.IdentifierContext identifier = ctx.identifier();
       if (identifier != null) {
-        paint(SemanticTokenTypes.Variable, identifier);
+        paint(variable, identifier);
         final JimpleParser.Array_descriptorContext arrayDescrCtx = ctx.array_descriptor();
         if (arrayDescrCtx != null) {
           visitArray_descriptor(arrayDescrCtx);
@@ -222,7 +258,7 @@ public class SyntaxHighlightingProvider {
     @Override
     public SemanticTokenManager visitImmediate(JimpleParser.ImmediateContext ctx) {
       if (ctx.local != null) {
-        paint(SemanticTokenTypes.Variable, ctx);
+        paint(variable, ctx);
       } else {
         visitConstant(ctx.constant());
       }
@@ -233,13 +269,13 @@ public class SyntaxHighlightingProvider {
     public SemanticTokenManager visitConstant(JimpleParser.ConstantContext ctx) {
       String text = ctx.getText();
       if (text.charAt(0) == '"' || text.charAt(0) == '\'') {
-        paint(SemanticTokenTypes.String, ctx);
+        paint(string, ctx);
       } else if (ctx.CLASS() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.CLASS().getSymbol());
+        paint(keyword, ctx.CLASS().getSymbol());
 // FIXME: what is this now?        paint(SemanticTokenTypes.Type, ctx.identifier());
       } else {
         // number, boolean, ..
-        paint(SemanticTokenTypes.Number, ctx);
+        paint(number, ctx);
       }
       return semanticTokenManager;
     }
@@ -253,7 +289,7 @@ public class SyntaxHighlightingProvider {
           || ctx.BREAKPOINT() != null
           || ctx.THROW() != null
           || ctx.NOP() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.start);
+        paint(keyword, ctx.start);
         if (ctx.immediate() != null) {
           visitImmediate(ctx.immediate());
         }
@@ -262,7 +298,7 @@ public class SyntaxHighlightingProvider {
       } else if (ctx.goto_stmt() != null) {
         visitGoto_stmt(ctx.goto_stmt());
       } else if (ctx.SWITCH() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.start);
+        paint(keyword, ctx.start);
         ctx.case_stmt().forEach(this::visitCase_stmt);
       }
 
@@ -271,19 +307,19 @@ public class SyntaxHighlightingProvider {
 
     @Override
     public SemanticTokenManager visitCase_stmt(JimpleParser.Case_stmtContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitCase_label(JimpleParser.Case_labelContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitDeclaration(JimpleParser.DeclarationContext ctx) {
-      paint(SemanticTokenTypes.Type, ctx.type());
+      paint(type, ctx.type());
       visitArg_list(ctx.arg_list());
       return semanticTokenManager;
     }
@@ -292,17 +328,17 @@ public class SyntaxHighlightingProvider {
     public SemanticTokenManager visitAssignments(JimpleParser.AssignmentsContext ctx) {
       JimpleParser.Identity_refContext identity_refContext = ctx.identity_ref();
       if (identity_refContext != null) {
-        paint(SemanticTokenTypes.Variable, ctx.identifier());
-        paint(SemanticTokenTypes.Keyword, identity_refContext.start);
+        paint(variable, ctx.identifier());
+        paint(keyword, identity_refContext.start);
         if (identity_refContext.DEC_CONSTANT() != null) {
-          paint(SemanticTokenTypes.Keyword, identity_refContext.DEC_CONSTANT().getSymbol());
+          paint(keyword, identity_refContext.DEC_CONSTANT().getSymbol());
         }
       } else {
 
         if (ctx.reference() != null) {
           visitReference(ctx.reference());
         } else {
-          paint(SemanticTokenTypes.Variable, ctx.identifier());
+          paint(variable, ctx.identifier());
         }
         visitValue(ctx.value());
       }
@@ -311,24 +347,24 @@ public class SyntaxHighlightingProvider {
 
     @Override
     public SemanticTokenManager visitGoto_stmt(JimpleParser.Goto_stmtContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitArg_list(JimpleParser.Arg_listContext ctx) {
       for (JimpleParser.ImmediateContext immediateContext : ctx.immediate()) {
-        paint(SemanticTokenTypes.Variable, immediateContext);
+        paint(variable, immediateContext);
       }
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitInvoke_expr(JimpleParser.Invoke_exprContext ctx) {
-      paint(SemanticTokenTypes.Keyword, ctx.start);
+      paint(keyword, ctx.start);
 
       if (ctx.identifier() != null) {
-        paint(SemanticTokenTypes.Variable, ctx.identifier());
+        paint(variable, ctx.identifier());
       }
 
       if (ctx.DYNAMICINVOKE() != null) {
@@ -362,18 +398,18 @@ public class SyntaxHighlightingProvider {
     @Override
     public SemanticTokenManager visitValue(JimpleParser.ValueContext ctx) {
       if (ctx.NEW() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.NEW().getSymbol());
-        paint(SemanticTokenTypes.Type, ctx.identifier());
+        paint(keyword, ctx.NEW().getSymbol());
+        paint(type, ctx.identifier());
       } else if (ctx.NEWARRAY() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.NEWARRAY().getSymbol());
-        paint(SemanticTokenTypes.Type, ctx.type());
+        paint(keyword, ctx.NEWARRAY().getSymbol());
+        paint(type, ctx.type());
       } else if (ctx.NEWMULTIARRAY() != null) {
-        paint(SemanticTokenTypes.Keyword, ctx.NEWMULTIARRAY().getSymbol());
-        paint(SemanticTokenTypes.Type, ctx.type());
+        paint(keyword, ctx.NEWMULTIARRAY().getSymbol());
+        paint(type, ctx.type());
       } else if (ctx.INSTANCEOF() != null) {
-        paint(SemanticTokenTypes.Variable, ctx.op);
-        paint(SemanticTokenTypes.Keyword, ctx.INSTANCEOF().getSymbol());
-        paint(SemanticTokenTypes.Type, ctx.type());
+        paint(variable, ctx.op);
+        paint(keyword, ctx.INSTANCEOF().getSymbol());
+        paint(type, ctx.type());
       } else {
         visitChildren(ctx);
       }
@@ -382,13 +418,13 @@ public class SyntaxHighlightingProvider {
 
     @Override
     public SemanticTokenManager visitBinop(JimpleParser.BinopContext ctx) {
-      paint(SemanticTokenTypes.Operator, ctx);
+      paint(operator, ctx);
       return semanticTokenManager;
     }
 
     @Override
     public SemanticTokenManager visitUnop(JimpleParser.UnopContext ctx) {
-      paint(SemanticTokenTypes.Operator, ctx);
+      paint(operator, ctx);
       return semanticTokenManager;
     }
   }
@@ -1,18 +1,17 @@
 package com.github.swissiety.jimplelsp.resolver;
 
-import com.github.swissiety.jimplelsp.Util;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
-import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.eclipse.lsp4j.TextDocumentPositionParams;
 import sootup.core.frontend.ResolveException;
 import sootup.core.jimple.Jimple;
 import sootup.core.model.Position;
-import sootup.core.model.SootClass;
-import sootup.core.model.SootMethod;
-import sootup.core.signatures.MethodSubSignature;
 import sootup.core.types.Type;
 import sootup.jimple.JimpleBaseListener;
 import sootup.jimple.JimpleParser;
@@ -24,173 +23,492 @@ import java.nio.file.Path;
 import java.util.*;
 
 /**
- * The LocalResolver handles gathering and queriing for Local Positions in a given File.
+ * The LocalResolver handles gathering and queriing for Local Positions in a given File. The methods
+ * are ordered by their position and the Local occurences of each method are stored ordered by
+ * their position in primitive arrays - so finding the method, the selected Local and all
+ * occurences of a Local are binary searches/lookups.
  *
  * @author Markus Schmidt
  */
 public class LocalPositionResolver {
   @Nonnull final Path path;
 
-  @Nonnull
-  private final Map<MethodSubSignature, List<Pair<Position, String>>> localsOfMethod =
-      new HashMap<>();
+  // ordered by position; filled when the walk leaves the file
+  @Nonnull private volatile MethodLocals[] methods = new MethodLocals[0];
 
-  @Nonnull private final Map<MethodSubSignature, Map<String, Type>> localToType = new HashMap<>();
+  @Nonnull private final LocalDeclarationFinder localDeclarationFinder;
 
   public LocalPositionResolver(Path path, ParseTree parseTree) {
-    this.path = path;
+    this(path);
 
     ParseTreeWalker walker = new ParseTreeWalker();
-    walker.walk(new LocalDeclarationFinder(path), parseTree);
+    walker.walk(localDeclarationFinder, parseTree);
   }
 
-  @Nullable
-  private List<Pair<Position, String>> getLocals(SootClass<?> sc, org.eclipse.lsp4j.Position pos) {
-    final Optional<? extends SootMethod> surroundingMethod = getSootMethodFromPosition(sc, pos);
-    return surroundingMethod
-        .map(sootMethod -> localsOfMethod.get(sootMethod.getSignature().getSubSignature()))
-        .orElse(null);
+  /**
+   * creates an empty resolver which is filled by walking the listener from {@link #getListener()}
+   * over the parse tree of the file.
+   */
+  public LocalPositionResolver(@Nonnull Path path) {
+    this.path = path;
+    localDeclarationFinder = new LocalDeclarationFinder(path);
+  }
+
+  private LocalPositionResolver(@Nonnull Path path, @Nonnull JimpleConverterUtil util) {
+    this.path = path;
+    localDeclarationFinder = new LocalDeclarationFinder(path, util);
   }
 
   @Nonnull
-  private Optional<? extends SootMethod> getSootMethodFromPosition(
-      @Nonnull SootClass<?> sc, @Nonnull org.eclipse.lsp4j.Position pos) {
-    return sc.getMethods().stream().filter(m -> isInRangeOf(pos, m.getPosition())).findAny();
+  public ParseTreeListener getListener() {
+    return localDeclarationFinder;
   }
 
-  private Optional<Pair<Position, String>> getSelectedLocalInfo(
-      @Nonnull List<Pair<Position, String>> locals, @Nonnull org.eclipse.lsp4j.Position pos) {
-    // determine name/range of selected local
-    return locals.stream().filter(p -> isInRangeOf(pos, p.getLeft())).findAny();
+  /**
+   * replaces the Local occurences of a member by the ones of its reparsed version. The methods
+   * behind it are moved, i.e. no other member needs to be parsed again.
+   *
+   * @param start the start of the replaced member
+   * @param end the end of the replaced member
+   * @param lineShift the number of lines the end of the member moved: the members behind it start
+   *     on a following line, so they are moved by whole lines
+   * @param member the parse tree of the new member: its tokens carry the positions in the document
+   */
+  @Nonnull
+  public LocalPositionResolver replaceMember(
+      @Nonnull org.eclipse.lsp4j.Position start,
+      @Nonnull org.eclipse.lsp4j.Position end,
+      int lineShift,
+      @Nonnull ParseTree member) {
+    final long startPos = PackedPositions.pack(start);
+    final long endPos = PackedPositions.pack(end);
+    final LocalPositionResolver replaced =
+        new LocalPositionResolver(path, localDeclarationFinder.util);
+    final LocalDeclarationFinder finder = replaced.localDeclarationFinder;
+    ParseTreeWalker.DEFAULT.walk(finder, member);
+
+    // the methods are ordered: the new one takes the place of the replaced one
+    final List<MethodLocals> newMethods = new ArrayList<>(methods.length + 1);
+    for (MethodLocals method : methods) {
+      if (method.end < startPos) {
+        newMethods.add(method);
+      } else if (method.start > endPos) {
+        if (!finder.methodLocals.isEmpty()) {
+          newMethods.addAll(finder.methodLocals);
+          finder.methodLocals.clear();
+        }
+        newMethods.add(method.shiftLines(lineShift));
+      }
+    }
+    newMethods.addAll(finder.methodLocals);
+    finder.methodLocals.clear();
+    replaced.methods = newMethods.toArray(new MethodLocals[0]);
+    return replaced;
+  }
+
+  /**
+   * moves the Local occurences along the changes of the document - without parsing it. Occurences
+   * touched by a change are dropped, as are methods which are not entirely surrounding a change.
+   *
+   * @param changes the changes of the document in the order they were applied
+   * @return the moved resolver or null if a change replaced the whole document
+   */
+  @Nullable
+  public LocalPositionResolver applyChanges(@Nonnull List<TextDocumentContentChangeEvent> changes) {
+    MethodLocals[] movedMethods = methods;
+    for (TextDocumentContentChangeEvent change : changes) {
+      final Range range = change.getRange();
+      if (range == null) {
+        return null;
+      }
+      final long start = PackedPositions.pack(range.getStart());
+      final long end = PackedPositions.pack(range.getEnd());
+      final String text = change.getText();
+      int lineBreaks = 0;
+      for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+        lineBreaks++;
+      }
+      final int lastLineLength = text.length() - (text.lastIndexOf('\n') + 1);
+
+      final List<MethodLocals> changedMethods = new ArrayList<>(movedMethods.length);
+      for (MethodLocals method : movedMethods) {
+        if (method.end < start) {
+          changedMethods.add(method);
+        } else if (method.start > end) {
+          changedMethods.add(method.shift(start, end, lineBreaks, lastLineLength));
+        } else if (method.start < start && end < method.end) {
+          // an edit inside of the method body
+          changedMethods.add(method.applyChange(start, end, lineBreaks, lastLineLength));
+        }
+      }
+      movedMethods = changedMethods.toArray(new MethodLocals[0]);
+    }
+    final LocalPositionResolver moved =
+        new LocalPositionResolver(path, localDeclarationFinder.util);
+    moved.methods = movedMethods;
+    return moved;
+  }
+
+  @Nullable
+  private MethodLocals getMethodFromPosition(@Nonnull org.eclipse.lsp4j.Position pos) {
+    final MethodLocals[] methods = this.methods;
+    final long position = PackedPositions.pack(pos);
+    // binary search for the last method starting before the position
+    int low = 0;
+    int high = methods.length - 1;
+    MethodLocals candidate = null;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (methods[mid].start <= position) {
+        candidate = methods[mid];
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (candidate == null || position > candidate.end) {
+      return null;
+    }
+    return candidate;
   }
 
   @Nonnull
-  public List<? extends Location> resolveReferences(
-      SootClass<?> sc, TextDocumentPositionParams pos) {
-    List<Pair<Position, String>> locals = getLocals(sc, pos.getPosition());
+  public List<? extends Location> resolveReferences(@Nonnull TextDocumentPositionParams pos) {
+    final MethodLocals locals = getMethodFromPosition(pos.getPosition());
     if (locals == null) {
       return Collections.emptyList();
     }
-    final Optional<Pair<Position, String>> localOpt =
-        getSelectedLocalInfo(locals, pos.getPosition());
-    if (!localOpt.isPresent()) {
+    final int selected = locals.getOccurenceAt(pos.getPosition());
+    if (selected < 0) {
       return Collections.emptyList();
     }
-    final String localname = localOpt.get().getRight();
-    List<Location> list = new ArrayList<>();
-    for (Pair<Position, String> l : locals) {
-      if (l.getRight().equals(localname)) {
-        Location location = Util.positionToLocation(pos.getTextDocument().getUri(), l.getLeft());
-        list.add(location);
-      }
+    final int[] occurences = locals.occurencesOfName[locals.nameIds[selected]];
+    final List<Location> list = new ArrayList<>(occurences.length);
+    for (int occurence : occurences) {
+      list.add(new Location(pos.getTextDocument().getUri(), locals.getRange(occurence)));
     }
     return list;
   }
 
   @Nullable
-  public Type resolveTypeDefinition(
-      @Nonnull SootClass<?> sc, @Nonnull org.eclipse.lsp4j.Position pos) {
-    final Optional<? extends SootMethod> surroundingMethod = getSootMethodFromPosition(sc, pos);
-    if (!surroundingMethod.isPresent()) {
-      return null;
-    }
-    final SootMethod sm = surroundingMethod.get();
-    List<Pair<Position, String>> locals = localsOfMethod.get(sm.getSignature().getSubSignature());
+  public Type resolveTypeDefinition(@Nonnull org.eclipse.lsp4j.Position pos) {
+    final MethodLocals locals = getMethodFromPosition(pos);
     if (locals == null) {
       return null;
     }
-
-    final Optional<Pair<Position, String>> localOpt = getSelectedLocalInfo(locals, pos);
-    if (!localOpt.isPresent()) {
+    final int selected = locals.getOccurenceAt(pos);
+    if (selected < 0) {
       return null;
     }
-    final String localname = localOpt.get().getRight();
-
-    final Map<String, Type> stringTypeMap = localToType.get(sm.getSignature().getSubSignature());
-    if (stringTypeMap != null) {
-      return stringTypeMap.get(localname);
-    }
-    return null;
+    return locals.types[locals.nameIds[selected]];
   }
 
   @Nullable
-  public LocationLink resolveDefinition(
-      @Nonnull SootClass<?> sc, @Nonnull TextDocumentPositionParams pos) {
-    List<Pair<Position, String>> locals = getLocals(sc, pos.getPosition());
+  public LocationLink resolveDefinition(@Nonnull TextDocumentPositionParams pos) {
+    final MethodLocals locals = getMethodFromPosition(pos.getPosition());
     if (locals == null) {
       return null;
     }
-    final Optional<Pair<Position, String>> localOpt =
-        getSelectedLocalInfo(locals, pos.getPosition());
-    if (!localOpt.isPresent()) {
+    final int selected = locals.getOccurenceAt(pos.getPosition());
+    if (selected < 0) {
       return null;
     }
-    Pair<Position, String> positionStringPair = localOpt.get();
-    final String localname = positionStringPair.getRight();
+    final int nameId = locals.nameIds[selected];
     // first occurence of that local (in the current method) is the definition (or declaration if
     // existing).
-    final Optional<Pair<Position, String>> deflocalOpt =
-        locals.stream().filter(p -> p.getRight().equals(localname)).findFirst();
-    if (deflocalOpt.isPresent()) {
-      Location location =
-          Util.positionToDefLocation(pos.getTextDocument().getUri(), deflocalOpt.get().getLeft());
-      location
-          .getRange()
-          .setEnd(
-              new org.eclipse.lsp4j.Position(
-                  deflocalOpt.get().getLeft().getLastLine(),
-                  deflocalOpt.get().getLeft().getFirstCol()
-                      + deflocalOpt.get().getRight().length()));
-      return new LocationLink(
-          location.getUri(),
-          location.getRange(),
-          location.getRange(),
-          Util.positionToRange(positionStringPair.getLeft()));
-    }
-    return null;
+    final int definition = locals.occurencesOfName[nameId][0];
+    final long defStart = locals.getOccurenceStart(definition);
+    final Range defRange =
+        new Range(
+            PackedPositions.unpack(defStart),
+            new org.eclipse.lsp4j.Position(
+                PackedPositions.line(locals.getOccurenceEnd(definition)),
+                PackedPositions.character(defStart) + locals.names[nameId].length()));
+    return new LocationLink(
+        pos.getTextDocument().getUri(), defRange, defRange, locals.getRange(selected));
   }
 
-  private boolean isInRangeOf(@Nonnull org.eclipse.lsp4j.Position p1, @Nonnull Position p2) {
-    if (p1.getLine() < p2.getFirstLine()) {
-      return false;
-    } else if (p1.getLine() == p2.getFirstLine() && p1.getCharacter() < p2.getFirstCol()) {
-      return false;
+  /** The Local occurences of a single method. */
+  private static final class MethodLocals {
+    // range of the method
+    private final long start;
+    private final long end;
+
+    // occurences ordered by start position; their lines are not moved by lineShift yet
+    @Nonnull private final long[] starts;
+    @Nonnull private final long[] ends;
+    @Nonnull private final int[] nameIds;
+    // the occurences are shared with the unmoved method: moving it by lines does not copy them
+    private final int lineShift;
+
+    // indexed by name id
+    @Nonnull private final String[] names;
+    @Nonnull private final int[][] occurencesOfName;
+    @Nonnull private final Type[] types;
+
+    private MethodLocals(
+        long start,
+        long end,
+        @Nonnull long[] starts,
+        @Nonnull long[] ends,
+        @Nonnull int[] nameIds,
+        @Nonnull String[] names,
+        @Nonnull Type[] types) {
+      this(start, end, starts, ends, nameIds, names, types, indexOccurences(nameIds, names), 0);
+    }
+
+    private MethodLocals(
+        long start,
+        long end,
+        @Nonnull long[] starts,
+        @Nonnull long[] ends,
+        @Nonnull int[] nameIds,
+        @Nonnull String[] names,
+        @Nonnull Type[] types,
+        @Nonnull int[][] occurencesOfName,
+        int lineShift) {
+      this.start = start;
+      this.end = end;
+      this.starts = starts;
+      this.ends = ends;
+      this.nameIds = nameIds;
+      this.names = names;
+      this.types = types;
+      this.occurencesOfName = occurencesOfName;
+      this.lineShift = lineShift;
+    }
+
+    private long getOccurenceStart(int occurence) {
+      return starts[occurence] + ((long) lineShift << 32);
     }
 
-    if (p1.getLine() > p2.getLastLine()) {
-      return false;
-    } else if (p1.getLine() == p2.getLastLine() && p1.getCharacter() > p2.getLastCol()) {
-      return false;
+    private long getOccurenceEnd(int occurence) {
+      return ends[occurence] + ((long) lineShift << 32);
     }
 
-    return true;
+    @Nonnull
+    private static int[][] indexOccurences(@Nonnull int[] nameIds, @Nonnull String[] names) {
+      final int[] counts = new int[names.length];
+      for (int nameId : nameIds) {
+        counts[nameId]++;
+      }
+      final int[][] occurencesOfName = new int[names.length][];
+      for (int i = 0; i < names.length; i++) {
+        occurencesOfName[i] = new int[counts[i]];
+        counts[i] = 0;
+      }
+      for (int i = 0; i < nameIds.length; i++) {
+        final int nameId = nameIds[i];
+        occurencesOfName[nameId][counts[nameId]++] = i;
+      }
+      return occurencesOfName;
+    }
+
+    /** @return this method moved by whole lines - without touching its occurences */
+    @Nonnull
+    private MethodLocals shiftLines(int lines) {
+      final long shift = (long) lines << 32;
+      return new MethodLocals(
+          start + shift,
+          end + shift,
+          starts,
+          ends,
+          nameIds,
+          names,
+          types,
+          occurencesOfName,
+          lineShift + lines);
+    }
+
+    /** @return this method moved as a range in front of it was replaced */
+    @Nonnull
+    private MethodLocals shift(long replacedStart, long replacedEnd, int lineBreaks, int length) {
+      final long[] shiftedStarts = new long[starts.length];
+      final long[] shiftedEnds = new long[ends.length];
+      for (int i = 0; i < starts.length; i++) {
+        shiftedStarts[i] =
+            PackedPositions.shift(
+                getOccurenceStart(i), replacedStart, replacedEnd, lineBreaks, length);
+        shiftedEnds[i] =
+            PackedPositions.shift(
+                getOccurenceEnd(i), replacedStart, replacedEnd, lineBreaks, length);
+      }
+      return new MethodLocals(
+          PackedPositions.shift(start, replacedStart, replacedEnd, lineBreaks, length),
+          PackedPositions.shift(end, replacedStart, replacedEnd, lineBreaks, length),
+          shiftedStarts,
+          shiftedEnds,
+          nameIds,
+          names,
+          types,
+          occurencesOfName,
+          0);
+    }
+
+    /**
+     * @return this method with a range inside of it replaced: the occurences behind the range are
+     *     moved, the ones touching it are dropped
+     */
+    @Nonnull
+    private MethodLocals applyChange(
+        long replacedStart, long replacedEnd, int lineBreaks, int length) {
+      final long[] keptStarts = new long[starts.length];
+      final long[] keptEnds = new long[ends.length];
+      final int[] keptNameIds = new int[nameIds.length];
+      int size = 0;
+      for (int i = 0; i < starts.length; i++) {
+        final long occurenceStart = getOccurenceStart(i);
+        final long occurenceEnd = getOccurenceEnd(i);
+        if (occurenceEnd < replacedStart) {
+          keptStarts[size] = occurenceStart;
+          keptEnds[size] = occurenceEnd;
+        } else if (occurenceStart > replacedEnd) {
+          keptStarts[size] =
+              PackedPositions.shift(occurenceStart, replacedStart, replacedEnd, lineBreaks, length);
+          keptEnds[size] =
+              PackedPositions.shift(occurenceEnd, replacedStart, replacedEnd, lineBreaks, length);
+        } else {
+          continue;
+        }
+        keptNameIds[size] = nameIds[i];
+        size++;
+      }
+      return new MethodLocals(
+          start,
+          PackedPositions.shift(end, replacedStart, replacedEnd, lineBreaks, length),
+          Arrays.copyOf(keptStarts, size),
+          Arrays.copyOf(keptEnds, size),
+          Arrays.copyOf(keptNameIds, size),
+          names,
+          types);
+    }
+
+    /** @return the index of the occurence surrounding the position or -1 */
+    private int getOccurenceAt(@Nonnull org.eclipse.lsp4j.Position pos) {
+      // compared with the unmoved occurences
+      final long position = PackedPositions.pack(pos) - ((long) lineShift << 32);
+      final int index = PackedPositions.floorIndex(starts, starts.length, position);
+      if (index < 0 || position > ends[index]) {
+        return -1;
+      }
+      return index;
+    }
+
+    @Nonnull
+    private Range getRange(int occurence) {
+      return new Range(
+          PackedPositions.unpack(getOccurenceStart(occurence)),
+          PackedPositions.unpack(getOccurenceEnd(occurence)));
+    }
+  }
+
+  /** collects the Local occurences of a method while its walked. */
+  private static final class MethodLocalsBuilder {
+    private final long start;
+    private final long end;
+
+    @Nonnull private long[] starts = new long[16];
+    @Nonnull private long[] ends = new long[16];
+    @Nonnull private int[] nameIds = new int[16];
+    private int size = 0;
+
+    @Nonnull private final Map<String, Integer> nameToId = new HashMap<>();
+    @Nonnull private final List<String> names = new ArrayList<>();
+    @Nonnull private final Map<Integer, Type> types = new HashMap<>();
+
+    private MethodLocalsBuilder(@Nonnull Position range) {
+      start = PackedPositions.pack(range.getFirstLine(), range.getFirstCol());
+      end = PackedPositions.pack(range.getLastLine(), range.getLastCol());
+    }
+
+    private int getNameId(@Nonnull String name) {
+      Integer id = nameToId.get(name);
+      if (id == null) {
+        id = names.size();
+        nameToId.put(name, id);
+        names.add(name);
+      }
+      return id;
+    }
+
+    private void declare(@Nonnull String name, @Nullable Type type) {
+      types.put(getNameId(name), type);
+    }
+
+    private void add(@Nonnull Position position, @Nonnull String name) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+        ends = Arrays.copyOf(ends, size * 2);
+        nameIds = Arrays.copyOf(nameIds, size * 2);
+      }
+      starts[size] = PackedPositions.pack(position.getFirstLine(), position.getFirstCol());
+      ends[size] = PackedPositions.pack(position.getLastLine(), position.getLastCol());
+      nameIds[size] = getNameId(name);
+      size++;
+    }
+
+    @Nonnull
+    private MethodLocals build() {
+      final int[] order = PackedPositions.sortedOrder(starts, size);
+      final long[] sortedStarts = new long[size];
+      final long[] sortedEnds = new long[size];
+      final int[] sortedNameIds = new int[size];
+      for (int i = 0; i < size; i++) {
+        sortedStarts[i] = starts[order[i]];
+        sortedEnds[i] = ends[order[i]];
+        sortedNameIds[i] = nameIds[order[i]];
+      }
+      final Type[] typeArray = new Type[names.size()];
+      for (Map.Entry<Integer, Type> entry : types.entrySet()) {
+        typeArray[entry.getKey()] = entry.getValue();
+      }
+      return new MethodLocals(
+          start,
+          end,
+          sortedStarts,
+          sortedEnds,
+          sortedNameIds,
+          names.toArray(new String[0]),
+          typeArray);
+    }
   }
 
   private final class LocalDeclarationFinder extends JimpleBaseListener {
     private final Path path;
     private final JimpleConverterUtil util;
 
-    private MethodSubSignature currentMethodSig = null;
-    private List<Pair<Position, String>> currentLocalPositionList = null;
-    private Map<String, Type> currentLocalToType = null;
+    @Nonnull private final List<MethodLocals> methodLocals = new ArrayList<>();
+    private MethodLocalsBuilder currentMethod = null;
 
     private LocalDeclarationFinder(@Nonnull Path path) {
+      this(path, new JimpleConverterUtil(path));
+    }
+
+    private LocalDeclarationFinder(@Nonnull Path path, @Nonnull JimpleConverterUtil util) {
       this.path = path;
-      util = new JimpleConverterUtil(path);
+      this.util = util;
     }
 
     @Override
     public void enterMethod(JimpleParser.MethodContext ctx) {
-      currentMethodSig = util.getMethodSubSignature(ctx.method_subsignature(), ctx);
-      currentLocalPositionList = new ArrayList<>();
-      currentLocalToType = new HashMap<>();
+      currentMethod = new MethodLocalsBuilder(JimpleConverterUtil.buildPositionFromCtx(ctx));
       super.enterMethod(ctx);
     }
 
     @Override
     public void exitMethod(JimpleParser.MethodContext ctx) {
-      localsOfMethod.put(currentMethodSig, currentLocalPositionList);
-      localToType.put(currentMethodSig, currentLocalToType);
+      methodLocals.add(currentMethod.build());
+      currentMethod = null;
+    }
+
+    @Override
+    public void exitFile(JimpleParser.FileContext ctx) {
+      final MethodLocals[] sortedMethods = methodLocals.toArray(new MethodLocals[0]);
+      // methods do not overlap and are walked in order - sorting is just a safety net
+      Arrays.sort(sortedMethods, Comparator.comparingLong(m -> m.start));
+      methods = sortedMethods;
+      methodLocals.clear();
+      super.exitFile(ctx);
     }
 
     @Override
@@ -212,19 +530,22 @@ public class LocalPositionResolver {
       final Type type = util.getType(ctx.type().getText());
       for (JimpleParser.ImmediateContext immediateCtx : arg_listCtx.immediate()) {
         // remember type
-        currentLocalToType.put(Jimple.unescape(immediateCtx.local.getText()), type);
+        currentMethod.declare(Jimple.unescape(immediateCtx.local.getText()), type);
       }
 
       super.enterDeclaration(ctx);
     }
 
+    private void addOccurence(@Nonnull ParserRuleContext localCtx) {
+      currentMethod.add(
+          JimpleConverterUtil.buildPositionFromCtx(localCtx),
+          Jimple.unescape(localCtx.getText()));
+    }
+
     @Override
     public void enterAssignments(JimpleParser.AssignmentsContext ctx) {
       if (ctx.local != null) {
-        currentLocalPositionList.add(
-            Pair.of(
-                JimpleConverterUtil.buildPositionFromCtx(ctx.local),
-                Jimple.unescape(ctx.local.getText())));
+        addOccurence(ctx.local);
       }
       super.enterAssignments(ctx);
     }
@@ -232,10 +553,7 @@ public class LocalPositionResolver {
     @Override
     public void enterReference(JimpleParser.ReferenceContext ctx) {
       if (ctx.identifier() != null) {
-        currentLocalPositionList.add(
-            Pair.of(
-                JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()),
-                Jimple.unescape(ctx.identifier().getText())));
+        addOccurence(ctx.identifier());
       }
       super.enterReference(ctx);
     }
@@ -243,10 +561,7 @@ public class LocalPositionResolver {
     @Override
     public void enterInvoke_expr(JimpleParser.Invoke_exprContext ctx) {
       if (ctx.local_name != null) {
-        currentLocalPositionList.add(
-            Pair.of(
-                JimpleConverterUtil.buildPositionFromCtx(ctx.local_name),
-                Jimple.unescape(ctx.local_name.getText())));
+        addOccurence(ctx.local_name);
       }
       super.enterInvoke_expr(ctx);
     }
@@ -254,10 +569,7 @@ public class LocalPositionResolver {
     @Override
     public void enterImmediate(JimpleParser.ImmediateContext ctx) {
       if (ctx.local != null) {
-        currentLocalPositionList.add(
-            Pair.of(
-                JimpleConverterUtil.buildPositionFromCtx(ctx.local),
-                Jimple.unescape(ctx.local.getText())));
+        addOccurence(ctx.local);
       }
       super.enterImmediate(ctx);
     }
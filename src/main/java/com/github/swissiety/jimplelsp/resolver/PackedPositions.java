@@ -0,0 +1,108 @@
+package com.github.swissiety.jimplelsp.resolver;
+
+import org.eclipse.lsp4j.Position;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * Helps to store Positions packed into a long: the line in the upper, the column in the lower 32
+ * bits. The natural order of the packed longs is the order of the Positions.
+ *
+ * @author Markus Schmidt
+ */
+class PackedPositions {
+
+  private PackedPositions() {}
+
+  static long pack(int line, int character) {
+    return ((long) line << 32) | (character & 0xFFFFFFFFL);
+  }
+
+  static long pack(@Nonnull Position position) {
+    return pack(position.getLine(), position.getCharacter());
+  }
+
+  static int line(long position) {
+    return (int) (position >>> 32);
+  }
+
+  static int character(long position) {
+    return (int) position;
+  }
+
+  @Nonnull
+  static Position unpack(long position) {
+    return new Position(line(position), character(position));
+  }
+
+  /**
+   * moves a position behind a replaced range: [start, end) was replaced by a text with the given
+   * number of line breaks whose last line has the given length.
+   */
+  static long shift(long position, long start, long end, int lineBreaks, int lastLineLength) {
+    if (line(position) == line(end)) {
+      final int column = lineBreaks == 0 ? character(start) + lastLineLength : lastLineLength;
+      return pack(line(start) + lineBreaks, column + character(position) - character(end));
+    }
+    final int removedLineBreaks = line(end) - line(start);
+    return pack(line(position) + lineBreaks - removedLineBreaks, character(position));
+  }
+
+  /**
+   * @return the indices [0, size) ordered ascending by their key. Ordering is stable and cheap if
+   *     the keys are (nearly) sorted already.
+   */
+  @Nonnull
+  static int[] sortedOrder(@Nonnull long[] keys, int size) {
+    final int[] order = new int[size];
+    boolean sorted = true;
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+      if (i > 0 && keys[i - 1] > keys[i]) {
+        sorted = false;
+      }
+    }
+    if (!sorted) {
+      mergeSort(keys, order, new int[size], 0, size);
+    }
+    return order;
+  }
+
+  /** merge sort of the indices in [from, to) by their key */
+  private static void mergeSort(
+      @Nonnull long[] keys, @Nonnull int[] order, @Nonnull int[] tmp, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    final int mid = (from + to) >>> 1;
+    mergeSort(keys, order, tmp, from, mid);
+    mergeSort(keys, order, tmp, mid, to);
+    if (keys[order[mid - 1]] <= keys[order[mid]]) {
+      // already in order
+      return;
+    }
+    System.arraycopy(order, from, tmp, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < mid && keys[tmp[left]] <= keys[tmp[right]])) {
+        order[i] = tmp[left++];
+      } else {
+        order[i] = tmp[right++];
+      }
+    }
+  }
+
+  /**
+   * @return the index of the last key in [0, size) which is less than or equal to the given key or
+   *     -1 if there is none.
+   */
+  static int floorIndex(@Nonnull long[] sortedKeys, int size, long key) {
+    int index = Arrays.binarySearch(sortedKeys, 0, size, key);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    return index;
+  }
+}
@@ -4,10 +4,12 @@ import com.github.swissiety.jimplelsp.Util;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.lsp4j.Location;
 import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import sootup.core.frontend.ResolveException;
 import sootup.core.jimple.Jimple;
 import sootup.core.model.FullPosition;
@@ -24,7 +26,10 @@ import sootup.jimple.parser.JimpleConverterUtil;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -41,13 +46,183 @@ public class SignaturePositionResolver {
   @Nonnull private final JimpleConverterUtil util;
 
   public SignaturePositionResolver(@Nonnull Path path, @Nonnull ParseTree parseTree) {
-    this.path = path;
-    util = new JimpleConverterUtil(path);
+    this(path);
 
     ParseTreeWalker walker = new ParseTreeWalker();
     walker.walk(occurences, parseTree);
   }
 
+  /**
+   * creates an empty resolver which is filled by walking the listener from {@link #getListener()}
+   * over the parse tree of the file.
+   */
+  public SignaturePositionResolver(@Nonnull Path path) {
+    this.path = path;
+    util = new JimpleConverterUtil(path);
+  }
+
+  /** restores a resolver from already known occurences e.g. from the persistent index. */
+  public SignaturePositionResolver(
+      @Nonnull Path path,
+      @Nonnull List<Pair<Signature, Range>> signatureOccurences,
+      @Nonnull List<Pair<Signature, Range>> declarations) {
+    this.path = path;
+    util = new JimpleConverterUtil(path);
+
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    for (Pair<Signature, Range> occurence : signatureOccurences) {
+      builder.add(
+          occurence.getRight().getStart(), occurence.getRight().getEnd(), occurence.getLeft());
+    }
+    occurences.positionContainer = builder.build();
+    occurences.declarations = declarations;
+  }
+
+  private SignaturePositionResolver(
+      @Nonnull Path path,
+      @Nonnull JimpleConverterUtil util,
+      @Nonnull SignatureRangeContainer positionContainer,
+      @Nonnull List<Pair<Signature, Range>> declarations) {
+    this.path = path;
+    this.util = util;
+    occurences.positionContainer = positionContainer;
+    occurences.declarations = declarations;
+  }
+
+  /**
+   * moves the occurences to their positions after the changes of the document, so the resolver of
+   * the last valid version stays usable while the document is edited. Occurences touched by a
+   * change are dropped.
+   *
+   * @param changes the changes of the document in the order they were applied
+   * @return the moved resolver or null if a change replaced the whole document
+   */
+  @Nullable
+  public SignaturePositionResolver applyChanges(
+      @Nonnull List<TextDocumentContentChangeEvent> changes) {
+    SignatureRangeContainer container = occurences.positionContainer;
+    List<Pair<Signature, Range>> declarations = occurences.declarations;
+    for (TextDocumentContentChangeEvent change : changes) {
+      final Range range = change.getRange();
+      if (range == null) {
+        return null;
+      }
+      final long start = PackedPositions.pack(range.getStart());
+      final long end = PackedPositions.pack(range.getEnd());
+      final String text = change.getText();
+      int lineBreaks = 0;
+      for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+        lineBreaks++;
+      }
+      final int lastLineLength = text.length() - (text.lastIndexOf('\n') + 1);
+
+      container = container.applyChange(start, end, lineBreaks, lastLineLength);
+      declarations = moveDeclarations(declarations, start, end, lineBreaks, lastLineLength);
+    }
+    return new SignaturePositionResolver(
+        path, util, container, Collections.unmodifiableList(declarations));
+  }
+
+  /**
+   * replaces the occurences of a member by the ones of its reparsed version. The occurences of the
+   * other members are kept or moved, i.e. no other member needs to be parsed again.
+   *
+   * @param start the start of the replaced member
+   * @param end the end of the replaced member
+   * @param lineShift the number of lines the end of the member moved: the members behind it start
+   *     on a following line, so they are moved by whole lines
+   * @param member the parse tree of the new member: its tokens carry the positions in the document
+   */
+  @Nonnull
+  public SignaturePositionResolver replaceMember(
+      @Nonnull org.eclipse.lsp4j.Position start,
+      @Nonnull org.eclipse.lsp4j.Position end,
+      int lineShift,
+      @Nonnull ParseTree member) {
+    final long startPos = PackedPositions.pack(start);
+    final long endPos = PackedPositions.pack(end);
+    final SignatureOccurenceAggregator aggregator = new SignatureOccurenceAggregator();
+    aggregator.clazz = occurences.clazz;
+    ParseTreeWalker.DEFAULT.walk(aggregator, member);
+
+    // the declarations are ordered: the new ones take the place of the replaced ones
+    final List<Pair<Signature, Range>> declarations =
+        new ArrayList<>(occurences.declarations.size() + aggregator.currentDeclarations.size());
+    boolean replaced = false;
+    for (Pair<Signature, Range> declaration : occurences.declarations) {
+      final Range range = declaration.getRight();
+      if (PackedPositions.pack(range.getEnd()) < startPos) {
+        declarations.add(declaration);
+      } else if (PackedPositions.pack(range.getStart()) > endPos) {
+        if (!replaced) {
+          declarations.addAll(aggregator.currentDeclarations);
+          replaced = true;
+        }
+        final Range movedRange =
+            new Range(
+                new org.eclipse.lsp4j.Position(
+                    range.getStart().getLine() + lineShift, range.getStart().getCharacter()),
+                new org.eclipse.lsp4j.Position(
+                    range.getEnd().getLine() + lineShift, range.getEnd().getCharacter()));
+        declarations.add(Pair.of(declaration.getLeft(), movedRange));
+      }
+    }
+    if (!replaced) {
+      declarations.addAll(aggregator.currentDeclarations);
+    }
+
+    final SignaturePositionResolver replacedResolver =
+        new SignaturePositionResolver(
+            path,
+            util,
+            occurences.positionContainer.replace(
+                startPos, endPos, lineShift, aggregator.positionBuilder.build()),
+            Collections.unmodifiableList(declarations));
+    // the next member of the class may be replaced as well
+    replacedResolver.occurences.clazz = occurences.clazz;
+    return replacedResolver;
+  }
+
+  /** @return the declarations behind a replaced range moved, the ones overlapping it dropped */
+  @Nonnull
+  private static List<Pair<Signature, Range>> moveDeclarations(
+      @Nonnull List<Pair<Signature, Range>> declarations,
+      long start,
+      long end,
+      int lineBreaks,
+      int lastLineLength) {
+    final List<Pair<Signature, Range>> movedDeclarations = new ArrayList<>(declarations.size());
+    for (Pair<Signature, Range> declaration : declarations) {
+      final long declarationStart = PackedPositions.pack(declaration.getRight().getStart());
+      final long declarationEnd = PackedPositions.pack(declaration.getRight().getEnd());
+      if (declarationEnd < start) {
+        movedDeclarations.add(declaration);
+      } else if (declarationStart > end) {
+        final Range movedRange =
+            new Range(
+                PackedPositions.unpack(
+                    PackedPositions.shift(
+                        declarationStart, start, end, lineBreaks, lastLineLength)),
+                PackedPositions.unpack(
+                    PackedPositions.shift(
+                        declarationEnd, start, end, lineBreaks, lastLineLength)));
+        movedDeclarations.add(Pair.of(declaration.getLeft(), movedRange));
+      }
+    }
+    return movedDeclarations;
+  }
+
+  @Nonnull
+  public ParseTreeListener getListener() {
+    return occurences;
+  }
+
+  /** @return all Signature occurences of this file ordered by their position. */
+  @Nonnull
+  public List<Pair<Signature, Range>> getOccurences() {
+    return occurences.positionContainer.getOccurences();
+  }
+
   @Nullable
   public Pair<Signature, Range> resolve(@Nonnull org.eclipse.lsp4j.Position position) {
     return occurences.resolve(position);
@@ -60,6 +235,32 @@ public class SignaturePositionResolver {
         .collect(Collectors.toList());
   }
 
+  /** @return the declared class, methods and fields of this file with the range of their names */
+  @Nonnull
+  public List<Pair<Signature, Range>> getDeclarations() {
+    return occurences.declarations;
+  }
+
+  /** @return the distinct Signatures which occur in this file */
+  @Nonnull
+  public Set<Signature> getSignatures() {
+    return occurences.positionContainer.getSignatures();
+  }
+
+  /** @return whether the Signature occurs in this file */
+  public boolean contains(@Nonnull Signature signature) {
+    return occurences.positionContainer.contains(signature);
+  }
+
+  /**
+   * @return a rough estimate of the heap in bytes this resolver occupies. The Signatures are shared
+   *     with the rest of the server so only their references are counted.
+   */
+  public long getEstimatedSize() {
+    // per occurence: two packed positions, the Signature reference and its entry in the index
+    return 256L + 40L * occurences.positionContainer.size() + 64L * occurences.declarations.size();
+  }
+
   /** skips e.g. the methods returntype to get the identifier (or class type) */
   @Nullable
   public Location findFirstMatchingSignature(Signature signature, Position position) {
@@ -73,7 +274,11 @@ public class SignaturePositionResolver {
 
   private final class SignatureOccurenceAggregator extends JimpleBaseListener {
 
-    SignatureRangeContainer positionContainer = new SignatureRangeContainer();
+    // filled during the walk and frozen into positionContainer when the walk leaves the file
+    SignatureRangeContainer.Builder positionBuilder = new SignatureRangeContainer.Builder();
+    volatile SignatureRangeContainer positionContainer = SignatureRangeContainer.EMPTY;
+    List<Pair<Signature, Range>> currentDeclarations = new ArrayList<>();
+    volatile List<Pair<Signature, Range>> declarations = Collections.emptyList();
     ClassType clazz;
 
     @Nullable
@@ -117,17 +322,28 @@ public class SignaturePositionResolver {
       String classname = Jimple.unescape(ctx.classname.getText());
       clazz = util.getClassType(classname);
 
-      positionContainer.add(buildPositionFromToken(ctx.classname), clazz);
+      final Position classnamePosition = buildPositionFromToken(ctx.classname);
+      positionBuilder.add(classnamePosition, clazz);
+      currentDeclarations.add(Pair.of(clazz, Util.positionToRange(classnamePosition)));
 
       if (ctx.extends_clause() != null) {
         ClassType superclass = util.getClassType(ctx.extends_clause().classname.getText());
-        positionContainer.add(
+        positionBuilder.add(
             JimpleConverterUtil.buildPositionFromCtx(ctx.extends_clause().classname), superclass);
       }
 
       super.enterFile(ctx);
     }
 
+    @Override
+    public void exitFile(JimpleParser.FileContext ctx) {
+      positionContainer = positionBuilder.build();
+      positionBuilder = new SignatureRangeContainer.Builder();
+      declarations = Collections.unmodifiableList(currentDeclarations);
+      currentDeclarations = new ArrayList<>();
+      super.exitFile(ctx);
+    }
+
     @Override
     public void enterMethod(JimpleParser.MethodContext ctx) {
       // parsing the declaration
@@ -147,9 +363,10 @@ public class SignaturePositionResolver {
           util.getIdentifierFactory()
               .getMethodSignature(clazz, Jimple.unescape(methodname), type, params);
 
-      positionContainer.add(
-          JimpleConverterUtil.buildPositionFromCtx(ctx.method_subsignature().method_name()),
-          methodSignature);
+      final Position methodnamePosition =
+          JimpleConverterUtil.buildPositionFromCtx(ctx.method_subsignature().method_name());
+      positionBuilder.add(methodnamePosition, methodSignature);
+      currentDeclarations.add(Pair.of(methodSignature, Util.positionToRange(methodnamePosition)));
 
       super.enterMethod(ctx);
     }
@@ -161,19 +378,20 @@ public class SignaturePositionResolver {
           util.getIdentifierFactory()
               .getFieldSignature(
                   Jimple.unescape(fieldname), clazz, util.getType(ctx.type().getText()));
-      positionContainer.add(
-          JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()), fieldSignature);
+      final Position fieldnamePosition = JimpleConverterUtil.buildPositionFromCtx(ctx.identifier());
+      positionBuilder.add(fieldnamePosition, fieldSignature);
+      currentDeclarations.add(Pair.of(fieldSignature, Util.positionToRange(fieldnamePosition)));
       super.enterField(ctx);
     }
 
     @Override
     public void enterMethod_signature(JimpleParser.Method_signatureContext ctx) {
-      positionContainer.add(
+      positionBuilder.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.class_name),
           util.getClassType(ctx.class_name.getText()));
       final JimpleParser.Method_nameContext method_nameCtx =
           ctx.method_subsignature().method_name();
-      positionContainer.add(
+      positionBuilder.add(
           JimpleConverterUtil.buildPositionFromCtx(method_nameCtx),
           util.getMethodSignature(ctx, null));
 
@@ -182,10 +400,10 @@ public class SignaturePositionResolver {
 
     @Override
     public void enterField_signature(JimpleParser.Field_signatureContext ctx) {
-      positionContainer.add(
+      positionBuilder.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.classname),
           util.getClassType(ctx.classname.getText()));
-      positionContainer.add(
+      positionBuilder.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.fieldname), util.getFieldSignature(ctx));
       super.enterField_signature(ctx);
     }
@@ -193,7 +411,7 @@ public class SignaturePositionResolver {
     @Override
     public void enterConstant(JimpleParser.ConstantContext ctx) {
       if (ctx.CLASS() != null) {
-        // FIXME what is this now: positionContainer.add(JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()),util.getClassType(ctx.identifier().getText()));
+        // FIXME what is this now: positionBuilder.add(JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()),util.getClassType(ctx.identifier().getText()));
       }
       super.enterConstant(ctx);
     }
@@ -201,7 +419,7 @@ public class SignaturePositionResolver {
     @Override
     public void enterValue(JimpleParser.ValueContext ctx) {
       if (ctx.NEW() != null) {
-        positionContainer.add(
+        positionBuilder.add(
             JimpleConverterUtil.buildPositionFromCtx(ctx.base_type),
             util.getClassType(ctx.base_type.getText()));
       }
@@ -213,7 +431,7 @@ public class SignaturePositionResolver {
       // add information for resolving classes correctly
       util.addImport(ctx);
 
-      positionContainer.add(
+      positionBuilder.add(
           JimpleConverterUtil.buildPositionFromCtx(ctx.location),
           util.getClassType(ctx.location.getText()));
       super.enterImportItem(ctx);
@@ -223,7 +441,7 @@ public class SignaturePositionResolver {
     public void enterType(JimpleParser.TypeContext ctx) {
       final Type type = util.getType(ctx.getText());
       if (type instanceof ClassType) {
-        positionContainer.add(
+        positionBuilder.add(
             JimpleConverterUtil.buildPositionFromCtx(ctx.identifier()), (Signature) type);
       }
       super.enterType(ctx);
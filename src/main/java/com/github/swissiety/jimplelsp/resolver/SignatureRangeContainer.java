@@ -8,100 +8,407 @@ import sootup.core.signatures.Signature;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The Datastructure holds information about Signatures of Soot and their Range positions in a File.
+ * It is immutable and created via a {@link Builder}. Positions are stored packed into longs (see
+ * {@link PackedPositions}). An index from each Signature to its occurences allows lookups by
+ * Signature without scanning all occurences. The occurences behind a reparsed member are moved by
+ * whole lines lazily, i.e. the lines are adjusted when an occurence is read.
  *
  * @author Markus Schmidt
  */
 class SignatureRangeContainer {
 
-  @Nonnull List<Position> startPositions = new ArrayList<>();
-  @Nonnull List<Position> endPositions = new ArrayList<>();
-  @Nonnull List<Signature> signatures = new ArrayList<>();
+  static final SignatureRangeContainer EMPTY =
+      new SignatureRangeContainer(new long[0], new long[0], new Signature[0]);
 
-  Comparator<Position> comparator = new PositionComparator();
+  // number of lazily moved ranges of occurences until the positions are moved eagerly
+  private static final int MAX_LINE_SHIFTS = 32;
 
-  void add( sootup.core.model.Position position, Signature sig) {
-    // insert sorted to be accessed via binary search
-    final Position startPos = new Position(position.getFirstLine(), position.getFirstCol());
-    int idx = Collections.binarySearch(startPositions, startPos, new PositionComparator());
-    if (idx < 0) {
-      // calculate insertion index
-      idx = -idx - 1;
+  // sorted by start position; the stored lines are not moved yet
+  @Nonnull private final long[] startPositions;
+  @Nonnull private final long[] endPositions;
+  @Nonnull private final Signature[] signatures;
+  // the occurences from shiftIndices[k] on are moved by lineShifts[k] lines; ascending indices
+  @Nonnull private final int[] shiftIndices;
+  @Nonnull private final int[] lineShifts;
+  // Signature -> ascending indices of its occurences; built on the first lookup by Signature
+  @Nullable private volatile Map<Signature, int[]> occurenceIndex;
 
-    } else {
-      throw new IllegalStateException(
-          "position " + startPos + " is already taken by " + signatures.get(idx));
+  private SignatureRangeContainer(
+      @Nonnull long[] startPositions,
+      @Nonnull long[] endPositions,
+      @Nonnull Signature[] signatures) {
+    this(startPositions, endPositions, signatures, new int[0], new int[0]);
+  }
+
+  private SignatureRangeContainer(
+      @Nonnull long[] startPositions,
+      @Nonnull long[] endPositions,
+      @Nonnull Signature[] signatures,
+      @Nonnull int[] shiftIndices,
+      @Nonnull int[] lineShifts) {
+    this.startPositions = startPositions;
+    this.endPositions = endPositions;
+    this.signatures = signatures;
+    this.shiftIndices = shiftIndices;
+    this.lineShifts = lineShifts;
+  }
+
+  @Nonnull
+  private Map<Signature, int[]> getOccurenceIndex() {
+    Map<Signature, int[]> index = occurenceIndex;
+    if (index == null) {
+      // a concurrent lookup builds an equal index
+      index = buildOccurenceIndex(signatures);
+      occurenceIndex = index;
+    }
+    return index;
+  }
+
+  @Nonnull
+  private static Map<Signature, int[]> buildOccurenceIndex(@Nonnull Signature[] signatures) {
+    if (signatures.length == 0) {
+      return Collections.emptyMap();
+    }
+    // count first to allocate exactly sized arrays
+    final Map<Signature, int[]> counts = new HashMap<>();
+    for (Signature signature : signatures) {
+      counts.computeIfAbsent(signature, k -> new int[1])[0]++;
+    }
+    final Map<Signature, int[]> index = new HashMap<>((int) (counts.size() / 0.75f) + 1);
+    for (int i = 0; i < signatures.length; i++) {
+      final int[] count = counts.get(signatures[i]);
+      int[] indices = index.get(signatures[i]);
+      if (indices == null) {
+        indices = new int[count[0]];
+        index.put(signatures[i], indices);
+        // from now on: number of filled indices
+        count[0] = 0;
+      }
+      indices[count[0]++] = i;
     }
+    return index;
+  }
+
+  /** @return the number of lines the occurence at the given index is moved */
+  private int getLineShift(int index) {
+    if (shiftIndices.length == 0) {
+      return 0;
+    }
+    int k = Arrays.binarySearch(shiftIndices, index);
+    if (k < 0) {
+      k = -k - 2;
+    }
+    return k < 0 ? 0 : lineShifts[k];
+  }
 
-    startPositions.add(idx, startPos);
-    endPositions.add(idx, new Position(position.getLastLine(), position.getLastCol()));
+  private long getStart(int index) {
+    return startPositions[index] + ((long) getLineShift(index) << 32);
+  }
+
+  private long getEnd(int index) {
+    return endPositions[index] + ((long) getLineShift(index) << 32);
+  }
+
+  @Nonnull
+  private Range getRange(int index) {
+    final long lineShift = (long) getLineShift(index) << 32;
+    return new Range(
+        PackedPositions.unpack(startPositions[index] + lineShift),
+        PackedPositions.unpack(endPositions[index] + lineShift));
+  }
 
-    signatures.add(idx, sig);
+  int size() {
+    return signatures.length;
   }
 
   @Nullable
   Pair<Signature, Range> resolve(@Nonnull Position position) {
-    if (startPositions.isEmpty()) {
+    if (signatures.length == 0) {
       return null;
     }
-    int index = getStartingIndex(position);
-
-    if (index < 0) {
-      return null;
-    }
-
-    final Position startPos = startPositions.get(index);
-    final Position endPos = endPositions.get(index);
-    if (comparator.compare(startPos, position) <= 0 && comparator.compare(position, endPos) <= 0) {
-      return Pair.of(signatures.get(index), new Range(startPos, endPos));
+    final long pos = PackedPositions.pack(position);
+    final int index = getStartingIndex(pos);
+    if (getStart(index) <= pos && pos <= getEnd(index)) {
+      return Pair.of(signatures[index], getRange(index));
     }
     return null;
   }
 
   // binary search for position or return next smaller occurence (i.e. start position of a Range)
-  private int getStartingIndex(@Nonnull Position position) {
-    int index =
-        Collections.binarySearch(startPositions, position, PositionComparator.getInstance());
-    if (index < 0) {
-      // not exactly found: check if next smaller neighbour is surrounding it
-      index = (-index) - 1 - 1;
-    } else if (index >= startPositions.size()) {
-      // not exactly found: (greater than last element) check if next smaller neighbour is
-      // surrounding it
-      index = index - 1;
+  private int getStartingIndex(long position) {
+    // not exactly found: check if next smaller neighbour is surrounding it
+    return Math.max(0, floorIndex(position));
+  }
+
+  /** @return the index of the last occurence starting at or before the position or -1 */
+  private int floorIndex(long position) {
+    if (shiftIndices.length == 0) {
+      return PackedPositions.floorIndex(startPositions, startPositions.length, position);
+    }
+    // moving by whole lines retains the order
+    int low = 0;
+    int high = signatures.length - 1;
+    int index = -1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (getStart(mid) <= position) {
+        index = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
     }
-    return Math.max(0, index);
+    return index;
   }
 
   public List<Range> resolve(@Nonnull Signature signature) {
-    final List<Range> ranges = new ArrayList<>();
-    for (int i = 0, signaturesSize = signatures.size(); i < signaturesSize; i++) {
-      Signature sig = signatures.get(i);
-      if (sig.equals(signature)) {
-        ranges.add(new Range(startPositions.get(i), endPositions.get(i)));
-      }
+    final int[] indices = getOccurenceIndex().get(signature);
+    if (indices == null) {
+      return Collections.emptyList();
+    }
+    final List<Range> ranges = new ArrayList<>(indices.length);
+    for (int index : indices) {
+      ranges.add(getRange(index));
     }
     return ranges;
   }
 
+  @Nonnull
+  Set<Signature> getSignatures() {
+    return Collections.unmodifiableSet(getOccurenceIndex().keySet());
+  }
+
+  boolean contains(@Nonnull Signature signature) {
+    return getOccurenceIndex().containsKey(signature);
+  }
+
+  /**
+   * @return the occurences after [start, end) was replaced by a text with the given number of line
+   *     breaks whose last line has the given length. Occurences overlapping or touching the
+   *     replaced range are dropped (e.g. typing at the end of a name changes it), the ones behind
+   *     it are moved.
+   */
+  @Nonnull
+  SignatureRangeContainer applyChange(long start, long end, int lineBreaks, int lastLineLength) {
+    final long[] newStarts = new long[signatures.length];
+    final long[] newEnds = new long[signatures.length];
+    final Signature[] newSignatures = new Signature[signatures.length];
+    int size = 0;
+    for (int i = 0; i < signatures.length; i++) {
+      final long occurenceStart = getStart(i);
+      final long occurenceEnd = getEnd(i);
+      if (occurenceEnd < start) {
+        newStarts[size] = occurenceStart;
+        newEnds[size] = occurenceEnd;
+      } else if (occurenceStart > end) {
+        newStarts[size] =
+            PackedPositions.shift(occurenceStart, start, end, lineBreaks, lastLineLength);
+        newEnds[size] =
+            PackedPositions.shift(occurenceEnd, start, end, lineBreaks, lastLineLength);
+      } else {
+        continue;
+      }
+      newSignatures[size++] = signatures[i];
+    }
+    // the order is retained: the occurences in front are unchanged and the ones behind moved alike
+    return new SignatureRangeContainer(
+        Arrays.copyOf(newStarts, size),
+        Arrays.copyOf(newEnds, size),
+        Arrays.copyOf(newSignatures, size));
+  }
+
+  /**
+   * replaces the occurences in [start, end] by the given ones. The occurences behind the range
+   * are moved by whole lines without touching them: their lines are adjusted when they are read.
+   *
+   * @param lineShift the number of lines the occurences behind the range are moved
+   * @param replacement the occurences inside of the replaced range at their new positions
+   */
+  @Nonnull
+  SignatureRangeContainer replace(
+      long start, long end, int lineShift, @Nonnull SignatureRangeContainer replacement) {
+    final int from = floorIndex(start - 1) + 1;
+    final int to = floorIndex(end) + 1;
+    final int replacementSize = replacement.signatures.length;
+    final int behind = from + replacementSize;
+    final int size = behind + signatures.length - to;
+
+    final long[] newStarts = new long[size];
+    final long[] newEnds = new long[size];
+    final Signature[] newSignatures = new Signature[size];
+    System.arraycopy(startPositions, 0, newStarts, 0, from);
+    System.arraycopy(endPositions, 0, newEnds, 0, from);
+    System.arraycopy(signatures, 0, newSignatures, 0, from);
+    for (int i = 0; i < replacementSize; i++) {
+      newStarts[from + i] = replacement.getStart(i);
+      newEnds[from + i] = replacement.getEnd(i);
+      newSignatures[from + i] = replacement.signatures[i];
+    }
+    System.arraycopy(startPositions, to, newStarts, behind, signatures.length - to);
+    System.arraycopy(endPositions, to, newEnds, behind, signatures.length - to);
+    System.arraycopy(signatures, to, newSignatures, behind, signatures.length - to);
+
+    // the moved ranges in front, the replacement which is not moved and the ones behind
+    final LineShifts shifts = new LineShifts(shiftIndices.length + 2, size);
+    int k = 0;
+    for (; k < shiftIndices.length && shiftIndices[k] < from; k++) {
+      shifts.add(shiftIndices[k], lineShifts[k]);
+    }
+    shifts.add(from, 0);
+    shifts.add(behind, getLineShift(to) + lineShift);
+    for (; k < shiftIndices.length; k++) {
+      if (shiftIndices[k] > to) {
+        shifts.add(shiftIndices[k] - to + behind, lineShifts[k] + lineShift);
+      }
+    }
+
+    final SignatureRangeContainer container =
+        new SignatureRangeContainer(
+            newStarts,
+            newEnds,
+            newSignatures,
+            Arrays.copyOf(shifts.indices, shifts.size),
+            Arrays.copyOf(shifts.lineShifts, shifts.size));
+    if (shifts.size > MAX_LINE_SHIFTS) {
+      // keep reading cheap: move all positions now
+      for (int i = 0; i < size; i++) {
+        newStarts[i] = container.getStart(i);
+        newEnds[i] = container.getEnd(i);
+      }
+      return new SignatureRangeContainer(newStarts, newEnds, newSignatures);
+    }
+    return container;
+  }
+
+  /** collects the lazily moved ranges of occurences: redundant entries are dropped. */
+  private static final class LineShifts {
+    @Nonnull private final int[] indices;
+    @Nonnull private final int[] lineShifts;
+    private final int limit;
+    private int size = 0;
+
+    private LineShifts(int capacity, int limit) {
+      indices = new int[capacity];
+      lineShifts = new int[capacity];
+      this.limit = limit;
+    }
+
+    private void add(int index, int lineShift) {
+      if (index >= limit) {
+        return;
+      }
+      if (size > 0 && indices[size - 1] == index) {
+        // the previous range is empty
+        size--;
+      }
+      final int previousShift = size > 0 ? lineShifts[size - 1] : 0;
+      if (previousShift == lineShift) {
+        return;
+      }
+      indices[size] = index;
+      lineShifts[size] = lineShift;
+      size++;
+    }
+  }
+
+  @Nonnull
+  List<Pair<Signature, Range>> getOccurences() {
+    final List<Pair<Signature, Range>> occurences = new ArrayList<>(signatures.length);
+    for (int i = 0; i < signatures.length; i++) {
+      occurences.add(Pair.of(signatures[i], getRange(i)));
+    }
+    return occurences;
+  }
+
   @Nullable
   public Range findFirstMatchingSignature(
       Signature signature, sootup.core.model.Position position) {
+    if (signatures.length == 0) {
+      return null;
+    }
+    final int[] indices = getOccurenceIndex().get(signature);
+    if (indices == null) {
+      return null;
+    }
+    final int idx = getStartingIndex(
+        PackedPositions.pack(position.getFirstLine(), position.getFirstCol()));
 
-    int idx = getStartingIndex(new Position(position.getFirstLine(), position.getFirstCol()));
+    // first occurence at or behind idx
+    int i = Arrays.binarySearch(indices, idx);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return i < indices.length ? getRange(indices[i]) : null;
+  }
 
-    // loop is expected to do max. 2 iterations
-    for (int i = idx, signaturesSize = signatures.size(); i < signaturesSize; i++) {
-      Signature sig = signatures.get(i);
-      if (sig.equals(signature)) {
-        return new Range(startPositions.get(i), endPositions.get(i));
+  /**
+   * The Builder collects the occurences in the order they are found and sorts them once when the
+   * container is built.
+   */
+  static class Builder {
+    @Nonnull private long[] startPositions = new long[64];
+    @Nonnull private long[] endPositions = new long[64];
+    @Nonnull private Signature[] signatures = new Signature[64];
+    private int size = 0;
+
+    void add(@Nonnull sootup.core.model.Position position, @Nonnull Signature sig) {
+      add(
+          PackedPositions.pack(position.getFirstLine(), position.getFirstCol()),
+          PackedPositions.pack(position.getLastLine(), position.getLastCol()),
+          sig);
+    }
+
+    void add(@Nonnull Position startPos, @Nonnull Position endPos, @Nonnull Signature sig) {
+      add(PackedPositions.pack(startPos), PackedPositions.pack(endPos), sig);
+    }
+
+    private void add(long startPos, long endPos, @Nonnull Signature sig) {
+      if (size == signatures.length) {
+        final int capacity = size * 2;
+        startPositions = Arrays.copyOf(startPositions, capacity);
+        endPositions = Arrays.copyOf(endPositions, capacity);
+        signatures = Arrays.copyOf(signatures, capacity);
       }
+      startPositions[size] = startPos;
+      endPositions[size] = endPos;
+      signatures[size] = sig;
+      size++;
+    }
+
+    @Nonnull
+    SignatureRangeContainer build() {
+      if (size == 0) {
+        return EMPTY;
+      }
+      // the occurences of a tree walk are nearly sorted already
+      final int[] order = PackedPositions.sortedOrder(startPositions, size);
+
+      final long[] sortedStarts = new long[size];
+      final long[] sortedEnds = new long[size];
+      final Signature[] sortedSignatures = new Signature[size];
+      for (int i = 0; i < size; i++) {
+        final int idx = order[i];
+        sortedStarts[i] = startPositions[idx];
+        sortedEnds[i] = endPositions[idx];
+        sortedSignatures[i] = signatures[idx];
+        if (i > 0 && sortedStarts[i - 1] == sortedStarts[i]) {
+          throw new IllegalStateException(
+              "position "
+                  + PackedPositions.unpack(sortedStarts[i])
+                  + " is already taken by "
+                  + sortedSignatures[i - 1]);
+        }
+      }
+      return new SignatureRangeContainer(sortedStarts, sortedEnds, sortedSignatures);
     }
-    return null;
   }
 }
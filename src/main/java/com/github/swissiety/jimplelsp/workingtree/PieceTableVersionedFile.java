@@ -0,0 +1,426 @@
+package com.github.swissiety.jimplelsp.workingtree;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A version of an opened document stored as piece table: the content is a sequence of pieces which
+ * refer to ranges of immutable buffers - the initial content and the text inserted by edits. An
+ * edit appends the inserted text to the add buffer of the document and creates a new piece
+ * sequence, so older versions stay valid and can be read concurrently.
+ *
+ * <p>Each piece knows its number of line breaks, so mapping a Position to an offset is a binary
+ * search over the pieces instead of a scan of the whole content.
+ *
+ * @author Markus Schmidt
+ */
+public class PieceTableVersionedFile implements VersionedFile {
+
+    // the pieces are merged into a new buffer if an edit exceeds this count
+    private static final int MAX_PIECES = 2048;
+    // inserted texts of at least this size get an own buffer with an index of its line breaks
+    private static final int LARGE_INSERTION = 1024;
+    private static final int ADD_BLOCK_SIZE = 16 * 1024;
+
+    /** immutable characters - except for the unused tail of an add block. */
+    private static final class Buffer {
+        @Nonnull private final char[] chars;
+        // sorted offsets of the line breaks or null if the buffer is scanned instead
+        @Nullable private final int[] lineBreakIndex;
+
+        private Buffer(@Nonnull char[] chars, @Nullable int[] lineBreakIndex) {
+            this.chars = chars;
+            this.lineBreakIndex = lineBreakIndex;
+        }
+
+        @Nonnull
+        static Buffer indexed(@Nonnull char[] chars) {
+            int[] lineBreaks = new int[16];
+            int count = 0;
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == '\n') {
+                    if (count == lineBreaks.length) {
+                        lineBreaks = Arrays.copyOf(lineBreaks, count * 2);
+                    }
+                    lineBreaks[count++] = i;
+                }
+            }
+            return new Buffer(chars, Arrays.copyOf(lineBreaks, count));
+        }
+    }
+
+    /** a range of a buffer. */
+    private static final class Piece {
+        @Nonnull private final Buffer buffer;
+        private final int start;
+        private final int length;
+        private final int lineBreaks;
+
+        private Piece(@Nonnull Buffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+            if (buffer.lineBreakIndex != null) {
+                lineBreaks =
+                        lowerBound(buffer.lineBreakIndex, start + length)
+                                - lowerBound(buffer.lineBreakIndex, start);
+            } else {
+                int count = 0;
+                for (int i = start; i < start + length; i++) {
+                    if (buffer.chars[i] == '\n') {
+                        count++;
+                    }
+                }
+                lineBreaks = count;
+            }
+        }
+
+        /** @return the offset of the k-th (1-based) line break relative to the piece start */
+        int lineBreakOffset(int k) {
+            if (buffer.lineBreakIndex != null) {
+                return buffer.lineBreakIndex[lowerBound(buffer.lineBreakIndex, start) + k - 1]
+                        - start;
+            }
+            for (int i = start; i < start + length; i++) {
+                if (buffer.chars[i] == '\n' && --k == 0) {
+                    return i - start;
+                }
+            }
+            throw new IllegalArgumentException("the piece has less line breaks");
+        }
+
+        @Nonnull
+        Piece subPiece(int from, int to) {
+            return new Piece(buffer, start + from, to - from);
+        }
+    }
+
+    /** the buffer for text inserted by edits - written only by the thread applying the edits. */
+    private static final class AddBuffer {
+        @Nonnull private Buffer block = new Buffer(new char[ADD_BLOCK_SIZE], null);
+        private int used = 0;
+
+        @Nonnull
+        Piece append(@Nonnull String text) {
+            if (text.length() >= LARGE_INSERTION) {
+                return new Piece(Buffer.indexed(text.toCharArray()), 0, text.length());
+            }
+            if (used + text.length() > block.chars.length) {
+                block = new Buffer(new char[ADD_BLOCK_SIZE], null);
+                used = 0;
+            }
+            // the chars are written before the piece referencing them is published
+            text.getChars(0, text.length(), block.chars, used);
+            final Piece piece = new Piece(block, used, text.length());
+            used += text.length();
+            return piece;
+        }
+    }
+
+    @Nonnull private final String uri;
+    private final int version;
+    @Nonnull private final AddBuffer addBuffer;
+    @Nonnull private final Piece[] pieces;
+    // document offset of each piece
+    @Nonnull private final int[] offsets;
+    // number of line breaks in front of each piece
+    @Nonnull private final int[] lineBreaksBefore;
+    private final int length;
+    private final int lineBreaks;
+
+    public PieceTableVersionedFile(@Nonnull String uri, @Nonnull String content, int version) {
+        this(uri, version, new AddBuffer(), pieceOf(content.toCharArray()));
+    }
+
+    @Nonnull
+    private static Piece[] pieceOf(@Nonnull char[] content) {
+        if (content.length == 0) {
+            return new Piece[0];
+        }
+        return new Piece[] {new Piece(Buffer.indexed(content), 0, content.length)};
+    }
+
+    private PieceTableVersionedFile(
+            @Nonnull String uri,
+            int version,
+            @Nonnull AddBuffer addBuffer,
+            @Nonnull Piece[] pieces) {
+        this.uri = uri;
+        this.version = version;
+        this.addBuffer = addBuffer;
+        this.pieces = pieces;
+        this.offsets = new int[pieces.length];
+        this.lineBreaksBefore = new int[pieces.length];
+        int offset = 0;
+        int breaks = 0;
+        for (int i = 0; i < pieces.length; i++) {
+            offsets[i] = offset;
+            lineBreaksBefore[i] = breaks;
+            offset += pieces[i].length;
+            breaks += pieces[i].lineBreaks;
+        }
+        this.length = offset;
+        this.lineBreaks = breaks;
+    }
+
+    @Override
+    public String getUriStr() {
+        return uri;
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getContent() {
+        return getText(0, length);
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getLineCount() {
+        return lineBreaks + 1;
+    }
+
+    /**
+     * applies the changes of a didChange notification.
+     *
+     * @return the new version of the document - this version stays unchanged.
+     */
+    @Nonnull
+    public PieceTableVersionedFile applyChanges(
+            int newVersion, @Nonnull List<TextDocumentContentChangeEvent> changes) {
+        PieceTableVersionedFile file = this;
+        for (TextDocumentContentChangeEvent change : changes) {
+            file = file.applyChange(newVersion, change.getRange(), change.getText());
+        }
+        return file;
+    }
+
+    /** replaces the range - or the whole content if the range is null - with the text */
+    @Nonnull
+    PieceTableVersionedFile applyChange(
+            int newVersion, @Nullable Range range, @Nonnull String text) {
+        if (range == null) {
+            // the text is the full content of the file
+            return new PieceTableVersionedFile(
+                    uri, newVersion, addBuffer, pieceOf(text.toCharArray()));
+        }
+        final int startOffset = getOffset(range.getStart());
+        final int endOffset = Math.max(startOffset, getOffset(range.getEnd()));
+
+        final List<Piece> newPieces = new ArrayList<>(pieces.length + 2);
+        final int first = pieceIndexAt(startOffset);
+        for (int i = 0; i < first; i++) {
+            newPieces.add(pieces[i]);
+        }
+        if (first < pieces.length && offsets[first] < startOffset) {
+            newPieces.add(pieces[first].subPiece(0, startOffset - offsets[first]));
+        }
+        if (!text.isEmpty()) {
+            newPieces.add(addBuffer.append(text));
+        }
+        final int last = pieceIndexAt(endOffset);
+        if (last < pieces.length) {
+            final Piece lastPiece = pieces[last];
+            final int from = endOffset - offsets[last];
+            newPieces.add(from == 0 ? lastPiece : lastPiece.subPiece(from, lastPiece.length));
+            for (int i = last + 1; i < pieces.length; i++) {
+                newPieces.add(pieces[i]);
+            }
+        }
+
+        final PieceTableVersionedFile file =
+                new PieceTableVersionedFile(
+                        uri, newVersion, addBuffer, newPieces.toArray(new Piece[0]));
+        if (newPieces.size() > MAX_PIECES) {
+            // keep edits and lookups cheap: merge the pieces into a new buffer
+            return new PieceTableVersionedFile(
+                    uri, newVersion, addBuffer, pieceOf(file.getContent().toCharArray()));
+        }
+        return file;
+    }
+
+    /** @return the index of the piece containing the offset or the number of pieces at the end */
+    private int pieceIndexAt(int offset) {
+        if (offset >= length) {
+            return pieces.length;
+        }
+        int lo = 0;
+        int hi = pieces.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /** @return the offset of the position; characters behind the end of a line are clamped to it */
+    @Override
+    public int getOffset(@Nonnull Position position) {
+        return getOffset(position.getLine(), position.getCharacter());
+    }
+
+    public int getOffset(int line, int character) {
+        if (line > lineBreaks) {
+            return length;
+        }
+        final int lineStart = getLineStart(line);
+        final int lineEnd = line < lineBreaks ? getLineStart(line + 1) - 1 : length;
+        return Math.min(lineStart + Math.max(character, 0), lineEnd);
+    }
+
+    private int getLineStart(int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        // the last piece with less line breaks in front of it contains the line break
+        int lo = 0;
+        int hi = pieces.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (lineBreaksBefore[mid] < line) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return offsets[lo] + pieces[lo].lineBreakOffset(line - lineBreaksBefore[lo]) + 1;
+    }
+
+    public char charAt(int offset) {
+        if (offset < 0 || offset >= length) {
+            throw new IndexOutOfBoundsException("offset " + offset + " of length " + length);
+        }
+        final int idx = pieceIndexAt(offset);
+        final Piece piece = pieces[idx];
+        return piece.buffer.chars[piece.start + offset - offsets[idx]];
+    }
+
+    /** @return the text from start (inclusive) to end (exclusive) */
+    @Nonnull
+    public String getText(int start, int end) {
+        start = Math.max(0, start);
+        end = Math.min(end, length);
+        if (start >= end) {
+            return "";
+        }
+        final char[] text = new char[end - start];
+        int written = 0;
+        for (int i = pieceIndexAt(start); i < pieces.length && offsets[i] < end; i++) {
+            final Piece piece = pieces[i];
+            final int from = Math.max(start - offsets[i], 0);
+            final int to = Math.min(end - offsets[i], piece.length);
+            System.arraycopy(piece.buffer.chars, piece.start + from, text, written, to - from);
+            written += to - from;
+        }
+        return new String(text);
+    }
+
+    /** @return a CharStream which reads the pieces directly instead of a copy of the content */
+    @Override
+    public CharStream getCharStream() {
+        return new PieceCharStream();
+    }
+
+    /**
+     * A CharStream over the pieces of this version. It reads UTF-16 chars - like the positions of
+     * the Language Server Protocol.
+     */
+    private class PieceCharStream implements CharStream {
+        private int index = 0;
+        // the piece containing the last read char
+        private int piece = 0;
+
+        @Override
+        public String getText(Interval interval) {
+            return PieceTableVersionedFile.this.getText(interval.a, interval.b + 1);
+        }
+
+        @Override
+        public void consume() {
+            if (index >= length) {
+                throw new IllegalStateException("cannot consume EOF");
+            }
+            index++;
+        }
+
+        @Override
+        public int LA(int i) {
+            if (i == 0) {
+                // undefined
+                return 0;
+            }
+            final int offset = i > 0 ? index + i - 1 : index + i;
+            if (offset < 0 || offset >= length) {
+                return IntStream.EOF;
+            }
+            if (offset < offsets[piece] || offset >= offsets[piece] + pieces[piece].length) {
+                piece = pieceIndexAt(offset);
+            }
+            final Piece p = pieces[piece];
+            return p.buffer.chars[p.start + offset - offsets[piece]];
+        }
+
+        @Override
+        public int mark() {
+            return -1;
+        }
+
+        @Override
+        public void release(int marker) {}
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public void seek(int index) {
+            this.index = Math.min(Math.max(index, 0), length);
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public String getSourceName() {
+            return uri;
+        }
+    }
+
+    /** @return the lowest index whose value is at least the key */
+    private static int lowerBound(@Nonnull int[] sorted, int key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -1,5 +1,11 @@
 package com.github.swissiety.jimplelsp.workingtree;
 
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.Position;
+
+import javax.annotation.Nonnull;
+
 public interface VersionedFile {
 
     String getUriStr();
@@ -7,4 +13,27 @@ public interface VersionedFile {
     int getVersion();
 
     String getContent();
+
+    /** @return a new CharStream over the content e.g. to lex/parse it */
+    default CharStream getCharStream() {
+        return CharStreams.fromString(getContent(), getUriStr());
+    }
+
+    /** @return the offset of the position; characters behind the end of a line are clamped to it */
+    default int getOffset(@Nonnull Position position) {
+        final String content = getContent();
+        int lineStart = 0;
+        for (int line = 0; line < position.getLine(); line++) {
+            final int lineBreak = content.indexOf('\n', lineStart);
+            if (lineBreak < 0) {
+                return content.length();
+            }
+            lineStart = lineBreak + 1;
+        }
+        int lineEnd = content.indexOf('\n', lineStart);
+        if (lineEnd < 0) {
+            lineEnd = content.length();
+        }
+        return Math.min(lineStart + Math.max(position.getCharacter(), 0), lineEnd);
+    }
 }
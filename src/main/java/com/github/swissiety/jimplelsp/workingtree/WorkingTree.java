@@ -1,18 +1,13 @@
 package com.github.swissiety.jimplelsp.workingtree;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.URI;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
 import org.eclipse.lsp4j.DidOpenTextDocumentParams;
 import org.eclipse.lsp4j.DidSaveTextDocumentParams;
-import org.eclipse.lsp4j.Range;
-import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
 import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
@@ -38,7 +33,8 @@ public class WorkingTree {
      */
     public WorkingTree(@Nonnull String language) {
         this.language = language;
-        this.versionedFiles = new HashMap<>();
+        // read by the analysis worker while the client thread updates it
+        this.versionedFiles = new ConcurrentHashMap<>();
     }
 
     /**
@@ -53,7 +49,7 @@ public class WorkingTree {
         }
 
         String uri = doc.getUri();
-        VersionedFile sourceFile = new InMemoryVersionedFileImpl(uri, doc.getText(), doc.getVersion());
+        VersionedFile sourceFile = new PieceTableVersionedFile(uri, doc.getText(), doc.getVersion());
          //this.fileStates.put(clientUri, FileState.OPENED);
         this.versionedFiles.put(uri, sourceFile);
     }
@@ -62,30 +58,30 @@ public class WorkingTree {
      * Update the changed file and generate source file module for updated file.
      *
      * @param params the params
+     * @return whether the file was updated i.e. it is opened and the version is newer
      */
-    public void didChange(DidChangeTextDocumentParams params) {
+    public boolean didChange(DidChangeTextDocumentParams params) {
         VersionedTextDocumentIdentifier doc = params.getTextDocument();
         String uri = doc.getUri();
         URI clientUri = URI.create(uri);
         // this.fileStates.put(clientUri, FileState.CHANGED);
-        VersionedFile existFile = versionedFiles.get(URI.create(uri));
+        VersionedFile existFile = versionedFiles.get(uri);
+        if (existFile == null) {
+            return false;
+        }
         int newVersion = doc.getVersion();
         if (newVersion > existFile.getVersion()) {
-            String existText = existFile.getContent();
-            String newText = existText;
-            for (TextDocumentContentChangeEvent change : params.getContentChanges()) {
-                if (change.getRange() == null) {
-                    // the nextText should be the full context of the file.
-                    newText = change.getText();
-                } else {
-                    newText = replaceText(newText, change);
-                }
-            }
-            if (newText != null) {
-                VersionedFile newFile = new InMemoryVersionedFileImpl(uri, newText, newVersion);
-                this.versionedFiles.put(uri, newFile);
-            }
+            final PieceTableVersionedFile existTable =
+                    existFile instanceof PieceTableVersionedFile
+                            ? (PieceTableVersionedFile) existFile
+                            : new PieceTableVersionedFile(
+                                    uri, existFile.getContent(), existFile.getVersion());
+            // edits are applied to the pieces - the previous version stays readable meanwhile
+            this.versionedFiles.put(
+                    uri, existTable.applyChanges(newVersion, params.getContentChanges()));
+            return true;
         }
+        return false;
     }
 
     public void didSave(DidSaveTextDocumentParams params) {
@@ -95,42 +91,15 @@ public class WorkingTree {
     }
 
     /**
-     * Replace the old text according to the change.
+     * Remove the closed file from versionedFiles: its content is on disk again.
      *
-     * @param text the text
-     * @param change the change
-     * @return the string
+     * @param params the params
      */
-    private String replaceText(String text, TextDocumentContentChangeEvent change) {
-        try {
-            Range range = change.getRange();
-            BufferedReader reader = new BufferedReader(new StringReader(text));
-            StringWriter writer = new StringWriter();
-            int line = 0;
-            while (line < range.getStart().getLine()) {
-                writer.write(reader.readLine() + '\n');
-                line++;
-            }
-            for (int character = 0; character < range.getStart().getCharacter(); character++) {
-                writer.write(reader.read());
-            }
-            // write the changed text
-            writer.write(change.getText());
-            // skip the old text
-            reader.skip(change.getRangeLength());
-            int next = reader.read();
-            while (next != -1) {
-                writer.write(next);
-                next = reader.read();
-            }
-            return writer.toString();
-        } catch (IOException e) {
-            // FIXME log(e);
-        }
-        return null;
+    public void didClose(DidCloseTextDocumentParams params) {
+        TextDocumentIdentifier doc = params.getTextDocument();
+        this.versionedFiles.remove(doc.getUri());
     }
 
-
     /**
      * Gets the versioned files.
      *
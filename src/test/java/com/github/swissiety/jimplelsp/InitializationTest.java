@@ -0,0 +1,90 @@
+package com.github.swissiety.jimplelsp;
+
+import org.eclipse.lsp4j.ClientCapabilities;
+import org.eclipse.lsp4j.DidChangeWatchedFilesCapabilities;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.InitializedParams;
+import org.eclipse.lsp4j.WorkspaceClientCapabilities;
+import org.eclipse.lsp4j.WorkspaceFolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InitializationTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final JimpleLspServer server = new JimpleLspServer();
+  private final TestLanguageClient client = new TestLanguageClient();
+  private String uri;
+
+  @Before
+  public void setUp() throws IOException {
+    server.connectClient(client);
+    final Path file = folder.getRoot().toPath().resolve("A.jimple");
+    Files.write(
+        file,
+        "public class de.upb.A extends java.lang.Object\n{\n}\n".getBytes(StandardCharsets.UTF_8));
+    uri = Util.pathToUri(file);
+  }
+
+  @After
+  public void tearDown() {
+    server.exit();
+  }
+
+  private void initialize(ClientCapabilities capabilities) throws Exception {
+    final InitializeParams params = new InitializeParams();
+    params.setCapabilities(capabilities);
+    params.setWorkspaceFolders(
+        Collections.singletonList(
+            new WorkspaceFolder(Util.pathToUri(folder.getRoot().toPath()), "test")));
+    server.initialize(params).get(5, TimeUnit.SECONDS);
+    server.initialized(new InitializedParams());
+  }
+
+  private void assertIndexed() throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (server.uriToClasstype(uri) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertNotNull("the workspace was not indexed", server.uriToClasstype(uri));
+    assertEquals("de.upb.A", server.uriToClasstype(uri).getFullyQualifiedName());
+  }
+
+  @Test
+  public void testInitializedIndexesTheWorkspaceAndRegistersTheWatcher() throws Exception {
+    final WorkspaceClientCapabilities workspace = new WorkspaceClientCapabilities();
+    workspace.setDidChangeWatchedFiles(new DidChangeWatchedFilesCapabilities(true));
+    final ClientCapabilities capabilities = new ClientCapabilities();
+    capabilities.setWorkspace(workspace);
+
+    initialize(capabilities);
+
+    assertIndexed();
+    assertEquals(1, client.registrations.size());
+    assertEquals(
+        "workspace/didChangeWatchedFiles",
+        client.registrations.get(0).getRegistrations().get(0).getMethod());
+  }
+
+  @Test
+  public void testInitializedWithoutWorkspaceCapabilitiesIndexesTheWorkspace() throws Exception {
+    initialize(new ClientCapabilities());
+
+    assertIndexed();
+    // the server watches the workspace itself
+    assertTrue(client.registrations.isEmpty());
+  }
+}
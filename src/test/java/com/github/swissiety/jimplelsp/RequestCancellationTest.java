@@ -0,0 +1,110 @@
+package com.github.swissiety.jimplelsp;
+
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RequestCancellationTest {
+
+  private final String uri = "file:///jimplelsp-test/A.jimple";
+  private final JimpleLspServer server = new JimpleLspServer();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch proceed = new CountDownLatch(1);
+  private final AtomicBoolean completed = new AtomicBoolean(false);
+
+  @Before
+  public void setUp() {
+    server.connectClient(new TestLanguageClient());
+    server
+        .getJimpleTextDocumentService()
+        .didOpen(
+            new DidOpenTextDocumentParams(
+                new TextDocumentItem(uri, "jimple", 1, "public class A {}")));
+  }
+
+  @After
+  public void tearDown() {
+    server.exit();
+  }
+
+  private CompletableFuture<String> request() {
+    return server.pool(
+        uri,
+        cancelChecker -> {
+          started.countDown();
+          try {
+            proceed.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          cancelChecker.checkCanceled();
+          completed.set(true);
+          return "done";
+        });
+  }
+
+  private void change(int version, String text) {
+    server
+        .getJimpleTextDocumentService()
+        .didChange(
+            new DidChangeTextDocumentParams(
+                new VersionedTextDocumentIdentifier(uri, version),
+                Collections.singletonList(new TextDocumentContentChangeEvent(text))));
+  }
+
+  @Test
+  public void testRequestOnUnchangedDocumentCompletes() throws Exception {
+    final CompletableFuture<String> future = request();
+    proceed.countDown();
+    assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    assertTrue(completed.get());
+  }
+
+  @Test
+  public void testRequestStopsIfTheDocumentChanged() throws Exception {
+    final CompletableFuture<String> future = request();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    change(2, "public class B {}");
+    proceed.countDown();
+
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("the request is outdated");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ResponseErrorException);
+      assertEquals(
+          ResponseErrorCode.ContentModified.getValue(),
+          ((ResponseErrorException) e.getCause()).getResponseError().getCode());
+    }
+    assertFalse(completed.get());
+  }
+
+  @Test
+  public void testRequestStopsIfTheClientCancelsIt() throws Exception {
+    final CompletableFuture<String> future = request();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    future.cancel(true);
+    proceed.countDown();
+
+    assertTrue(future.isCancelled());
+    // the request notices the cancellation at its next check
+    Thread.sleep(200);
+    assertFalse(completed.get());
+  }
+}
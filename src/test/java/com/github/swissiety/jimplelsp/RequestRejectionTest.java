@@ -0,0 +1,97 @@
+package com.github.swissiety.jimplelsp;
+
+import com.google.gson.JsonObject;
+import org.eclipse.lsp4j.ClientCapabilities;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseErrorCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestRejectionTest {
+
+  private final JimpleLspServer server = new JimpleLspServer();
+  private final CountDownLatch started = new CountDownLatch(1);
+  private final CountDownLatch proceed = new CountDownLatch(1);
+
+  @Before
+  public void setUp() throws Exception {
+    server.connectClient(new TestLanguageClient());
+    // a single request thread with a single waiting request
+    final JsonObject scheduler = new JsonObject();
+    scheduler.addProperty("requestThreads", 1);
+    scheduler.addProperty("queueCapacity", 1);
+    final JsonObject options = new JsonObject();
+    options.add("scheduler", scheduler);
+    final InitializeParams params = new InitializeParams();
+    params.setCapabilities(new ClientCapabilities());
+    params.setInitializationOptions(options);
+    server.initialize(params).get(5, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    proceed.countDown();
+    server.exit();
+  }
+
+  private CompletableFuture<String> request() {
+    return server.pool(
+        null,
+        cancelChecker -> {
+          started.countDown();
+          try {
+            proceed.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return "done";
+        });
+  }
+
+  @Test
+  public void testRequestIsRejectedIfTheLaneIsFull() throws Exception {
+    final CompletableFuture<String> running = request();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+
+    // the call itself must not throw: the rejection is delivered via the future
+    final List<CompletableFuture<String>> futures = new ArrayList<>();
+    CompletableFuture<String> rejected = null;
+    for (int i = 0; i < 10 && rejected == null; i++) {
+      final CompletableFuture<String> future = request();
+      if (future.isCompletedExceptionally()) {
+        rejected = future;
+      } else {
+        futures.add(future);
+      }
+    }
+    assertNotNull("the lane accepted all requests", rejected);
+
+    try {
+      rejected.get(5, TimeUnit.SECONDS);
+      fail("the request was rejected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ResponseErrorException);
+      assertEquals(
+          ResponseErrorCode.ContentModified.getValue(),
+          ((ResponseErrorException) e.getCause()).getResponseError().getCode());
+    }
+
+    // the accepted requests are still answered
+    proceed.countDown();
+    assertEquals("done", running.get(5, TimeUnit.SECONDS));
+    for (CompletableFuture<String> future : futures) {
+      assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    }
+  }
+}
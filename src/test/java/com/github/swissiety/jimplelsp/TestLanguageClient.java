@@ -0,0 +1,44 @@
+package com.github.swissiety.jimplelsp;
+
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.RegistrationParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** records the diagnostics and registrations of the server and ignores everything else. */
+class TestLanguageClient implements LanguageClient {
+  final List<PublishDiagnosticsParams> diagnostics = new CopyOnWriteArrayList<>();
+  final List<RegistrationParams> registrations = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void telemetryEvent(Object object) {}
+
+  @Override
+  public void publishDiagnostics(PublishDiagnosticsParams diagnostics) {
+    this.diagnostics.add(diagnostics);
+  }
+
+  @Override
+  public void showMessage(MessageParams messageParams) {}
+
+  @Override
+  public CompletableFuture<MessageActionItem> showMessageRequest(
+      ShowMessageRequestParams requestParams) {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void logMessage(MessageParams message) {}
+
+  @Override
+  public CompletableFuture<Void> registerCapability(RegistrationParams params) {
+    registrations.add(params);
+    return CompletableFuture.completedFuture(null);
+  }
+}
@@ -0,0 +1,122 @@
+package com.github.swissiety.jimplelsp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sootup.core.model.SootClass;
+import sootup.core.model.SootMethod;
+import sootup.core.types.ClassType;
+import sootup.jimple.parser.JimpleView;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ViewUpdateTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final JimpleLspServer server = new JimpleLspServer();
+
+  @Before
+  public void setUp() {
+    server.connectClient(new TestLanguageClient());
+  }
+
+  private String classWithMethod(String className, String methodName) {
+    return "public class "
+        + className
+        + " extends java.lang.Object\n{\n    public void "
+        + methodName
+        + "()\n    {\n        return;\n    }\n}\n";
+  }
+
+  private String write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return Util.pathToUri(file);
+  }
+
+  private Set<String> methodNames(SootClass<?> clazz) {
+    return clazz.getMethods().stream().map(SootMethod::getName).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testChangedDocumentReplacesOnlyItsClass() throws IOException {
+    final Path fileA = folder.getRoot().toPath().resolve("A.jimple");
+    final Path fileB = folder.getRoot().toPath().resolve("B.jimple");
+    final String uriA = write(fileA, classWithMethod("de.upb.A", "before"));
+    final String uriB = write(fileB, classWithMethod("de.upb.B", "unchanged"));
+    assertTrue(server.quarantineInputOrUpdate(uriA));
+    assertTrue(server.quarantineInputOrUpdate(uriB));
+
+    final JimpleView view = server.getView();
+    final ClassType typeA = view.getIdentifierFactory().getClassType("de.upb.A");
+    final ClassType typeB = view.getIdentifierFactory().getClassType("de.upb.B");
+    assertTrue(methodNames(view.getClass(typeA).get()).contains("before"));
+    final SootClass<?> classB = view.getClass(typeB).get();
+
+    write(fileA, classWithMethod("de.upb.A", "after"));
+    assertTrue(server.quarantineInputOrUpdate(uriA));
+
+    // the view is patched - not recreated
+    assertSame(view, server.getView());
+    final Set<String> methodsOfA = methodNames(view.getClass(typeA).get());
+    assertTrue(methodsOfA.contains("after"));
+    assertFalse(methodsOfA.contains("before"));
+    assertSame(classB, view.getClass(typeB).get());
+  }
+
+  @Test
+  public void testRenamedClassIsRemovedFromTheView() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("A.jimple");
+    final String uri = write(file, classWithMethod("de.upb.A", "m"));
+    assertTrue(server.quarantineInputOrUpdate(uri));
+    final JimpleView view = server.getView();
+    final ClassType oldType = view.getIdentifierFactory().getClassType("de.upb.A");
+    assertTrue(view.getClass(oldType).isPresent());
+
+    write(file, classWithMethod("de.upb.Renamed", "m"));
+    assertTrue(server.quarantineInputOrUpdate(uri));
+
+    assertFalse(view.getClass(oldType).isPresent());
+    assertTrue(
+        view.getClass(view.getIdentifierFactory().getClassType("de.upb.Renamed")).isPresent());
+  }
+
+  @Test
+  public void testChangedBodyKeepsTheClassLookupAndHierarchy() throws IOException {
+    final Path file = folder.getRoot().toPath().resolve("A.jimple");
+    final String uri = write(file, classWithMethod("de.upb.A", "m"));
+    assertTrue(server.quarantineInputOrUpdate(uri));
+    final JimpleView view = server.getView();
+    final ClassType typeA = view.getIdentifierFactory().getClassType("de.upb.A");
+    final ClassType object = view.getIdentifierFactory().getClassType("java.lang.Object");
+    assertEquals(
+        Collections.singleton(object), server.getTypeHierarchy().directSupertypesOf(typeA));
+
+    // detects whether the class lookup and the hierarchy are updated again
+    server.getTypeHierarchy().remove(typeA);
+    server.getWorkspaceClassTypes().remove(typeA);
+
+    write(
+        file,
+        classWithMethod("de.upb.A", "m").replace("return;", "de.upb.A r0;\n\n        return;"));
+    assertTrue(server.quarantineInputOrUpdate(uri));
+    assertTrue(server.getTypeHierarchy().directSupertypesOf(typeA).isEmpty());
+    assertNull(server.classTypeToPath(typeA));
+
+    write(file, classWithMethod("de.upb.A", "m").replace("java.lang.Object", "de.upb.B"));
+    assertTrue(server.quarantineInputOrUpdate(uri));
+    assertEquals(
+        Collections.singleton(view.getIdentifierFactory().getClassType("de.upb.B")),
+        server.getTypeHierarchy().directSupertypesOf(typeA));
+    assertEquals(Util.uriToPath(uri), server.classTypeToPath(typeA));
+  }
+}
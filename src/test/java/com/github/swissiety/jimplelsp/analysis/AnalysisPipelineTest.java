@@ -0,0 +1,261 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import com.github.swissiety.jimplelsp.Util;
+import com.github.swissiety.jimplelsp.workingtree.PieceTableVersionedFile;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.junit.Test;
+import sootup.core.frontend.ResolveException;
+import sootup.core.signatures.Signature;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnalysisPipelineTest {
+
+  private final Path path = Paths.get("src/test/resources/signatureOccurences.jimple");
+
+  private TextDocumentPositionParams at(int line, int character) {
+    return new TextDocumentPositionParams(
+        new TextDocumentIdentifier(Util.pathToUri(path)), new Position(line, character));
+  }
+
+  @Test
+  public void testAllResultsAreDerivedFromOneParse() throws IOException {
+    final DocumentAnalysis analysis = AnalysisPipeline.analyze(path, CharStreams.fromPath(path));
+
+    assertTrue(analysis.isValid());
+    assertEquals(-1, analysis.getVersion());
+    assertNotNull(analysis.getParseTree());
+    assertNotNull(analysis.getClassSource());
+    assertEquals("de.upb.Car", analysis.getClassSource().getClassType().toString());
+
+    final Pair<Signature, Range> classSignature =
+        analysis.getSignaturePositionResolver().resolve(new Position(2, 20));
+    assertNotNull(classSignature);
+    assertEquals("de.upb.Car", classSignature.getLeft().toString());
+
+    // r0 in "specialinvoke r0.<...>" is declared by "de.upb.Car r0;"
+    final LocationLink definition =
+        analysis.getLocalPositionResolver().resolveDefinition(at(11, 23));
+    assertNotNull(definition);
+    assertEquals(new Position(7, 19), definition.getTargetRange().getStart());
+    assertEquals(3, analysis.getLocalPositionResolver().resolveReferences(at(9, 8)).size());
+  }
+
+  @Test
+  public void testInvalidInputKeepsOnlyTheError() {
+    final DocumentAnalysis analysis =
+        AnalysisPipeline.analyze(
+            path, CharStreams.fromString("public class de.upb.Car {\n  public void m(\n}"), 3);
+
+    assertFalse(analysis.isValid());
+    assertEquals(3, analysis.getVersion());
+    assertTrue(analysis.getError() instanceof ResolveException);
+    assertNull(analysis.getParseTree());
+    assertNull(analysis.getClassSource());
+    assertNull(analysis.getSignaturePositionResolver());
+    assertNull(analysis.getLocalPositionResolver());
+  }
+
+  private PieceTableVersionedFile openFile() throws IOException {
+    return new PieceTableVersionedFile(
+        Util.pathToUri(path), new String(Files.readAllBytes(path), StandardCharsets.UTF_8), 1);
+  }
+
+  private static List<TextDocumentContentChangeEvent> change(
+      int startLine, int startCharacter, int endLine, int endCharacter, String text) {
+    return Collections.singletonList(
+        new TextDocumentContentChangeEvent(
+            new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter)),
+            text));
+  }
+
+  @Test
+  public void testEditInsideOfABodyParsesOnlyThatMethod() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+    assertTrue(full.isValid());
+
+    // a second invoke behind "r0 := @this: de.upb.Car;"
+    final List<TextDocumentContentChangeEvent> changes =
+        change(9, 32, 9, 32, "\n        specialinvoke r0.<java.lang.Object: void <init>()>();");
+    final PieceTableVersionedFile changedFile = file.applyChanges(2, changes);
+    final DocumentAnalysis incremental =
+        AnalysisPipeline.analyzeIncrementally(
+            full, changedFile, ChangedRegion.apply(null, changes));
+
+    assertNotNull(incremental);
+    assertTrue(incremental.isValid());
+    assertEquals(2, incremental.getVersion());
+    assertNull(incremental.getParseTree());
+    assertSame(full.getClassSource(), incremental.getClassSource());
+    assertEquals(4, incremental.getLocalPositionResolver().resolveReferences(at(12, 23)).size());
+    assertEquals(
+        "<de.upb.Car: void driving()>",
+        incremental.getSignaturePositionResolver().resolve(new Position(17, 17)).getLeft()
+            .toString());
+    assertEquals(new Position(15, 5), incremental.getMembers().getEnd(0));
+    assertEquals(new Position(17, 4), incremental.getMembers().getStart(1));
+
+    // the incremental analysis is the base of the next one: an empty line in the second method
+    final List<TextDocumentContentChangeEvent> nextChanges = change(22, 32, 22, 32, "\n");
+    final DocumentAnalysis next =
+        AnalysisPipeline.analyzeIncrementally(
+            incremental,
+            changedFile.applyChanges(3, nextChanges),
+            ChangedRegion.apply(null, nextChanges));
+    assertNotNull(next);
+    assertTrue(next.isValid());
+    assertEquals(4, next.getLocalPositionResolver().resolveReferences(at(29, 15)).size());
+    assertEquals(4, next.getLocalPositionResolver().resolveReferences(at(12, 23)).size());
+  }
+
+  @Test
+  public void testSplitMethodIsAnalyzedAsAWhole() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+
+    final List<TextDocumentContentChangeEvent> split =
+        change(9, 32, 9, 32, "\n        return;\n    }\n\n    public void split()\n    {");
+    assertNull(
+        AnalysisPipeline.analyzeIncrementally(
+            full, file.applyChanges(2, split), ChangedRegion.apply(null, split)));
+
+    // a change of the header is not limited to a body
+    final List<TextDocumentContentChangeEvent> renamed = change(16, 16, 16, 16, "2");
+    assertNull(
+        AnalysisPipeline.analyzeIncrementally(
+            full, file.applyChanges(2, renamed), ChangedRegion.apply(null, renamed)));
+    // unknown changes
+    assertNull(AnalysisPipeline.analyzeIncrementally(full, file.applyChanges(2, renamed), null));
+  }
+
+  @Test
+  public void testInvalidBodyIsReported() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+
+    // removes the ';' of "r0 := @this: de.upb.Car;"
+    final List<TextDocumentContentChangeEvent> changes = change(9, 31, 9, 32, "");
+    final DocumentAnalysis invalid =
+        AnalysisPipeline.analyzeIncrementally(
+            full, file.applyChanges(2, changes), ChangedRegion.apply(null, changes));
+
+    assertNotNull(invalid);
+    assertFalse(invalid.isValid());
+    assertEquals(2, invalid.getVersion());
+    assertTrue(invalid.getError() instanceof ResolveException);
+    assertNull(invalid.getLocalPositionResolver());
+  }
+
+  @Test
+  public void testContentHash() {
+    final CharStream text = CharStreams.fromString("public class de.upb.Car {}");
+    final long hash = AnalysisPipeline.contentHash(text);
+
+    assertEquals(hash, AnalysisPipeline.contentHash(text));
+    assertEquals(0, text.index());
+    assertEquals(
+        hash, AnalysisPipeline.contentHash(CharStreams.fromString("public class de.upb.Car {}")));
+    assertNotEquals(
+        hash, AnalysisPipeline.contentHash(CharStreams.fromString("public class de.upb.Bus {}")));
+  }
+
+  @Test
+  public void testUnchangedContentReusesTheAnalysis() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+    assertSame(full, AnalysisPipeline.analyzeUnchanged(full, file));
+
+    // e.g. saved after a change was undone
+    final PieceTableVersionedFile changed = file.applyChanges(2, change(9, 32, 9, 32, " "));
+    assertNull(AnalysisPipeline.analyzeUnchanged(full, changed));
+    final PieceTableVersionedFile undone = changed.applyChanges(3, change(9, 32, 9, 33, ""));
+    final DocumentAnalysis unchanged = AnalysisPipeline.analyzeUnchanged(full, undone);
+
+    assertNotNull(unchanged);
+    assertEquals(3, unchanged.getVersion());
+    assertSame(undone, unchanged.getFile());
+    assertEquals(full.getContentHash(), unchanged.getContentHash());
+    assertSame(full.getParseTree(), unchanged.getParseTree());
+    assertSame(full.getClassSource(), unchanged.getClassSource());
+    assertSame(full.getSignaturePositionResolver(), unchanged.getSignaturePositionResolver());
+    assertSame(full.getLocalPositionResolver(), unchanged.getLocalPositionResolver());
+  }
+
+  @Test
+  public void testIncrementalAnalysisIsNotUnchanged() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+
+    final List<TextDocumentContentChangeEvent> changes = change(9, 32, 9, 32, "\n");
+    final PieceTableVersionedFile changed = file.applyChanges(2, changes);
+    final DocumentAnalysis incremental =
+        AnalysisPipeline.analyzeIncrementally(full, changed, ChangedRegion.apply(null, changes));
+    assertNotNull(incremental);
+    assertEquals(0, incremental.getContentHash());
+
+    // the class and its bodies are derived from the whole document once
+    assertNull(AnalysisPipeline.analyzeUnchanged(incremental, changed));
+    assertNull(
+        AnalysisPipeline.analyzeUnchanged(
+            incremental, changed.applyChanges(3, change(9, 32, 10, 0, ""))));
+  }
+
+  private static sootup.core.model.Position methodPosition(DocumentAnalysis analysis, String name) {
+    return analysis.getClassSource().resolveMethods().stream()
+        .filter(method -> method.getName().equals(name))
+        .findFirst()
+        .get()
+        .getPosition();
+  }
+
+  @Test
+  public void testPositionsOfTheKeptClassAreMoved() throws IOException {
+    final PieceTableVersionedFile file = openFile();
+    final DocumentAnalysis full = AnalysisPipeline.analyze(path, file);
+    final sootup.core.model.Position init = methodPosition(full, "<init>");
+    final sootup.core.model.Position driving = methodPosition(full, "driving");
+    assertSame(driving, full.toAnalyzedPosition(driving));
+
+    // a line more in the body of <init>
+    final List<TextDocumentContentChangeEvent> changes = change(9, 32, 9, 32, "\n");
+    final PieceTableVersionedFile changedFile = file.applyChanges(2, changes);
+    final DocumentAnalysis incremental =
+        AnalysisPipeline.analyzeIncrementally(
+            full, changedFile, ChangedRegion.apply(null, changes));
+    assertNotNull(incremental);
+    assertEquals(init.getFirstLine(), incremental.toAnalyzedPosition(init).getFirstLine());
+    assertEquals(init.getLastLine() + 1, incremental.toAnalyzedPosition(init).getLastLine());
+    assertEquals(
+        driving.getFirstLine() + 1, incremental.toAnalyzedPosition(driving).getFirstLine());
+    assertEquals(driving.getLastLine() + 1, incremental.toAnalyzedPosition(driving).getLastLine());
+
+    // two lines less in the body of driving()
+    final List<TextDocumentContentChangeEvent> nextChanges = change(23, 0, 25, 0, "");
+    final DocumentAnalysis next =
+        AnalysisPipeline.analyzeIncrementally(
+            incremental,
+            changedFile.applyChanges(3, nextChanges),
+            ChangedRegion.apply(null, nextChanges));
+    assertNotNull(next);
+    assertEquals(init.getLastLine() + 1, next.toAnalyzedPosition(init).getLastLine());
+    assertEquals(driving.getFirstLine() + 1, next.toAnalyzedPosition(driving).getFirstLine());
+    assertEquals(driving.getLastLine() - 1, next.toAnalyzedPosition(driving).getLastLine());
+  }
+}
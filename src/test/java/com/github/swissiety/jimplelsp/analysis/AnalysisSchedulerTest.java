@@ -0,0 +1,51 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AnalysisSchedulerTest {
+
+  private final String uri = "file:///A.jimple";
+
+  @Test
+  public void testBurstResultsInTheLatestAnalysis() throws InterruptedException {
+    final AnalysisScheduler scheduler = new AnalysisScheduler(Runnable::run);
+    final AtomicInteger analyzed = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    scheduler.schedule(uri, () -> analyzed.addAndGet(1), 200);
+    scheduler.schedule(uri, () -> analyzed.addAndGet(10), 200);
+    scheduler.schedule(
+        uri,
+        () -> {
+          analyzed.addAndGet(100);
+          done.countDown();
+        },
+        50);
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    Thread.sleep(300);
+    assertEquals(100, analyzed.get());
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testCompletedAnalysisIsNotKept() throws InterruptedException {
+    final AnalysisScheduler scheduler = new AnalysisScheduler(Runnable::run);
+    final CountDownLatch done = new CountDownLatch(1);
+    scheduler.schedule(uri, done::countDown, 0);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    // the entry is removed right after the analysis returned
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (scheduler.isPending(uri) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(scheduler.isPending(uri));
+    scheduler.shutdown();
+  }
+}
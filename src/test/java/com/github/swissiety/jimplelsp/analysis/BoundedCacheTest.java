@@ -0,0 +1,127 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class BoundedCacheTest {
+
+  @Test
+  public void testLeastRecentlyUsedValuesAreEvicted() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(10, String::length);
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    // use a: b is the least recently used one now
+    assertEquals("aaaa", cache.get("a"));
+    cache.put("c", "cccc");
+
+    assertEquals(2, cache.size());
+    assertEquals(8, cache.getWeight());
+    assertFalse(cache.isRetained("b"));
+    assertTrue(cache.isRetained("a"));
+    assertTrue(cache.isRetained("c"));
+  }
+
+  @Test
+  public void testBudgetCanBeReduced() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(100, String::length);
+    cache.put("a", "aaaa");
+    cache.put("b", "bbbb");
+    cache.put("c", "cccc");
+    assertEquals(3, cache.size());
+
+    cache.setBudget(4);
+    assertEquals(1, cache.size());
+    assertEquals(4, cache.getWeight());
+  }
+
+  @Test
+  public void testOversizedValueIsKept() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(2, String::length);
+    cache.put("a", "aaaa");
+    assertEquals("aaaa", cache.get("a"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testComputeIfAbsent() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(100, String::length);
+    assertEquals("a!", cache.computeIfAbsent("a", k -> k + "!"));
+    assertEquals("a!", cache.computeIfAbsent("a", k -> k + "?"));
+    assertNull(cache.computeIfAbsent("b", k -> null));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void testConcurrentMissesComputeOnce() throws Exception {
+    final BoundedCache<String, String> cache = new BoundedCache<>(100, String::length);
+    final AtomicInteger computations = new AtomicInteger();
+    final CountDownLatch computing = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    final Function<String, String> computation =
+        k -> {
+          computations.incrementAndGet();
+          computing.countDown();
+          try {
+            proceed.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return k + "!";
+        };
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<String> first = executor.submit(() -> cache.computeIfAbsent("a", computation));
+      assertTrue(computing.await(5, TimeUnit.SECONDS));
+      final Future<String> second = executor.submit(() -> cache.computeIfAbsent("a", computation));
+      proceed.countDown();
+
+      assertEquals("a!", first.get(5, TimeUnit.SECONDS));
+      assertEquals("a!", second.get(5, TimeUnit.SECONDS));
+      assertEquals(1, computations.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedComputationIsNotCached() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(100, String::length);
+    try {
+      cache.computeIfAbsent(
+          "a",
+          k -> {
+            throw new IllegalStateException("cancelled");
+          });
+      fail();
+    } catch (IllegalStateException expected) {
+      // the next caller computes it again
+    }
+    assertEquals("a!", cache.computeIfAbsent("a", k -> k + "!"));
+  }
+
+  @Test
+  public void testRemovalDuringComputationIsNotOverwritten() {
+    final BoundedCache<String, String> cache = new BoundedCache<>(100, String::length);
+    final String value =
+        cache.computeIfAbsent(
+            "a",
+            k -> {
+              // e.g. the document became invalid while it was analyzed
+              cache.remove(k);
+              return "outdated";
+            });
+    assertEquals("outdated", value);
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.getWeight());
+  }
+}
@@ -0,0 +1,69 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ChangedRegionTest {
+
+  private static TextDocumentContentChangeEvent change(
+      int startLine, int startCharacter, int endLine, int endCharacter, String text) {
+    return new TextDocumentContentChangeEvent(
+        new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter)),
+        text);
+  }
+
+  @Test
+  public void testInsertion() {
+    final ChangedRegion region =
+        ChangedRegion.apply(null, Collections.singletonList(change(2, 3, 2, 3, "ab\ncd")));
+    assertNotNull(region);
+    assertEquals(new Position(2, 3), region.getStart());
+    assertEquals(new Position(2, 3), region.getPreviousEnd());
+    assertEquals(new Position(3, 2), region.getEnd());
+    // the rest of the line moved behind the inserted text, the following lines by a line
+    assertEquals(new Position(3, 4), region.toCurrent(new Position(2, 5)));
+    assertEquals(new Position(5, 1), region.toCurrent(new Position(4, 1)));
+  }
+
+  @Test
+  public void testChangesInFrontOfAndBehindTheRegion() {
+    final ChangedRegion region =
+        ChangedRegion.apply(
+            null,
+            Arrays.asList(
+                change(2, 3, 2, 3, "ab\ncd"),
+                // removes the first 4 chars of line 1
+                change(1, 0, 1, 4, ""),
+                change(5, 0, 5, 1, "x")));
+    assertNotNull(region);
+    assertEquals(new Position(1, 0), region.getStart());
+    // the unchanged text starts behind the last change: line 4 of the analyzed version
+    assertEquals(new Position(4, 1), region.getPreviousEnd());
+    assertEquals(new Position(5, 1), region.getEnd());
+    assertEquals(new Position(6, 0), region.toCurrent(new Position(5, 0)));
+
+    // further changes extend the region
+    final ChangedRegion extended =
+        ChangedRegion.apply(region, Collections.singletonList(change(0, 2, 0, 2, "\n")));
+    assertNotNull(extended);
+    assertEquals(new Position(0, 2), extended.getStart());
+    assertEquals(new Position(4, 1), extended.getPreviousEnd());
+    assertEquals(new Position(6, 1), extended.getEnd());
+  }
+
+  @Test
+  public void testReplacedDocumentHasNoRegion() {
+    assertNull(
+        ChangedRegion.apply(
+            null,
+            Arrays.asList(
+                change(2, 3, 2, 3, "ab"), new TextDocumentContentChangeEvent("class A {}"))));
+  }
+}
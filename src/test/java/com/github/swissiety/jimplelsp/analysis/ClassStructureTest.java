@@ -0,0 +1,87 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class ClassStructureTest {
+
+  private final Path path = Paths.get("A.jimple");
+
+  private static String clazz(String header, String method, String body) {
+    return header
+        + "\n{\n    private int field;\n\n    "
+        + method
+        + "\n    {\n"
+        + body
+        + "        return;\n    }\n}\n";
+  }
+
+  private static String clazz(String header) {
+    return clazz(header, "public void m()", "");
+  }
+
+  private ClassStructure structure(String text) {
+    final DocumentAnalysis analysis = AnalysisPipeline.analyze(path, CharStreams.fromString(text));
+    assertTrue(analysis.isValid());
+    return ClassStructure.of(analysis.getClassSource());
+  }
+
+  private final ClassStructure structure =
+      structure(clazz("public class de.upb.A extends java.lang.Object"));
+
+  @Test
+  public void testChangedBodyKeepsTheStructure() {
+    final ClassStructure changedBody =
+        structure(
+            clazz(
+                "public class de.upb.A extends java.lang.Object",
+                "public void m()",
+                "        de.upb.A r0;\n\n        r0 := @this: de.upb.A;\n\n"));
+
+    assertEquals(structure, changedBody);
+    assertEquals(structure.hashCode(), changedBody.hashCode());
+  }
+
+  @Test
+  public void testChangedModifierChangesTheStructure() {
+    assertNotEquals(
+        structure, structure(clazz("public final class de.upb.A extends java.lang.Object")));
+    assertNotEquals(
+        structure,
+        structure(
+            clazz("public class de.upb.A extends java.lang.Object", "public final void m()", "")));
+  }
+
+  @Test
+  public void testChangedSupertypeChangesTheStructure() {
+    assertNotEquals(structure, structure(clazz("public class de.upb.A extends de.upb.B")));
+    assertNotEquals(
+        structure,
+        structure(
+            clazz("public class de.upb.A extends java.lang.Object implements java.lang.Runnable")));
+  }
+
+  @Test
+  public void testChangedMemberSignatureChangesTheStructure() {
+    assertNotEquals(
+        structure,
+        structure(
+            clazz("public class de.upb.A extends java.lang.Object", "public void m(int)", "")));
+    assertNotEquals(
+        structure,
+        structure(
+            clazz("public class de.upb.A extends java.lang.Object", "public void n()", "")));
+    assertNotEquals(
+        structure,
+        structure(
+            clazz(
+                "public class de.upb.A extends java.lang.Object",
+                "public void m() throws java.lang.Exception",
+                "")));
+  }
+}
@@ -0,0 +1,64 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Test;
+import sootup.core.frontend.ResolveException;
+import sootup.jimple.JimpleParser;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JimpleParsingTest {
+
+  private JimpleParser.FileContext parse(Path path) throws IOException {
+    return JimpleParsing.parseFile(
+        JimpleConverterUtil.createJimpleParser(CharStreams.fromPath(path), path));
+  }
+
+  @Test
+  public void testValidInput() throws IOException {
+    final JimpleParser.FileContext file =
+        parse(Paths.get("src/test/resources/signatureOccurences.jimple"));
+    assertEquals(2, file.member().size());
+  }
+
+  @Test
+  public void testSyntaxErrorIsReportedByTheFallback() throws IOException {
+    try {
+      parse(Paths.get("src/test/resources/partial_invalid_inputs/invalid_juststmt.jimple"));
+      fail("the input is invalid");
+    } catch (ResolveException expected) {
+      // the error of the LL stage - not the bail out of the SLL stage
+    }
+  }
+
+  @Test
+  public void testWarmUpCorpusIsValid() throws IOException {
+    final String[] corpus = {"/warmup/Statements.jimple", "/warmup/Declarations.jimple"};
+    for (String resource : corpus) {
+      // the corpus is read from the classpath - like the warm up does
+      try (InputStream is = JimpleParsing.class.getResourceAsStream(resource)) {
+        assertNotNull(resource, is);
+        final Path path = Paths.get("warmup.jimple");
+        final JimpleParser.FileContext file =
+            JimpleParsing.parseFile(
+                JimpleConverterUtil.createJimpleParser(CharStreams.fromStream(is), path));
+        assertFalse(file.member().isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void testWarmUpReportsNoErrors() {
+    final List<Exception> errors = new ArrayList<>();
+    JimpleParsing.warmUp(errors::add);
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+}
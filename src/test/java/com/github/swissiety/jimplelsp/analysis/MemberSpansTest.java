@@ -0,0 +1,60 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.Position;
+import org.junit.Before;
+import org.junit.Test;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class MemberSpansTest {
+
+  private final Path path = Paths.get("src/test/resources/signatureOccurences.jimple");
+  private MemberSpans members;
+
+  @Before
+  public void setUp() throws IOException {
+    members =
+        MemberSpans.of(
+            JimpleConverterUtil.createJimpleParser(CharStreams.fromPath(path), path).file());
+  }
+
+  @Test
+  public void testSpansOfTheMembers() {
+    assertEquals(2, members.size());
+    assertEquals(new Position(5, 4), members.getStart(0));
+    assertEquals(new Position(14, 5), members.getEnd(0));
+    assertEquals(new Position(16, 4), members.getStart(1));
+    assertEquals(new Position(28, 5), members.getEnd(1));
+    assertTrue(members.getStartOffset(0) < members.getStopOffset(0));
+    assertTrue(members.getStopOffset(0) < members.getStartOffset(1));
+  }
+
+  @Test
+  public void testChangeInsideOfABody() {
+    assertEquals(0, members.findBody(new Position(9, 32), new Position(9, 32)));
+    assertEquals(0, members.findBody(new Position(7, 0), new Position(11, 10)));
+    // the closing brace belongs to the body
+    assertEquals(0, members.findBody(new Position(14, 4), new Position(14, 5)));
+    assertEquals(1, members.findBody(new Position(25, 8), new Position(25, 21)));
+  }
+
+  @Test
+  public void testChangeOutsideOfABody() {
+    // the header and the opening brace
+    assertEquals(-1, members.findBody(new Position(5, 16), new Position(5, 16)));
+    assertEquals(-1, members.findBody(new Position(6, 4), new Position(6, 5)));
+    // behind the closing brace
+    assertEquals(-1, members.findBody(new Position(14, 4), new Position(14, 6)));
+    // in front of the first member and between the members
+    assertEquals(-1, members.findBody(new Position(3, 0), new Position(3, 1)));
+    assertEquals(-1, members.findBody(new Position(15, 0), new Position(15, 0)));
+    // spans both methods
+    assertEquals(-1, members.findBody(new Position(9, 0), new Position(21, 0)));
+  }
+}
@@ -0,0 +1,123 @@
+package com.github.swissiety.jimplelsp.analysis;
+
+import com.github.swissiety.jimplelsp.workingtree.PieceTableVersionedFile;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class WorkspaceSnapshotTest {
+
+  private final String uri = "file:///A.jimple";
+  private final Path path = Paths.get("A.jimple");
+
+  private DocumentAnalysis analysisOf(int version) {
+    return new DocumentAnalysis(path, version, new Exception("test"));
+  }
+
+  @Test
+  public void testChangesDoNotAffectOlderSnapshots() {
+    final WorkspaceSnapshot first =
+        WorkspaceSnapshot.EMPTY.withDocument(new PieceTableVersionedFile(uri, "a", 1));
+    final WorkspaceSnapshot second =
+        first.withDocument(new PieceTableVersionedFile(uri, "ab", 2));
+
+    assertEquals(1, first.getVersion(uri));
+    assertEquals("a", first.getDocument(uri).getFile().getContent());
+    assertEquals(2, second.getVersion(uri));
+
+    final WorkspaceSnapshot closed = second.withoutDocument(uri);
+    assertNull(closed.getDocument(uri));
+    assertEquals(-1, closed.getVersion(uri));
+    assertEquals(2, second.getVersion(uri));
+  }
+
+  @Test
+  public void testAnalysisIsRetainedForNewerVersions() {
+    final DocumentAnalysis analysis = analysisOf(1);
+    final WorkspaceSnapshot analyzed =
+        WorkspaceSnapshot.EMPTY
+            .withDocument(new PieceTableVersionedFile(uri, "a", 1))
+            .withAnalysis(uri, analysis);
+    assertSame(analysis, analyzed.getDocument(uri).getCurrentAnalysis());
+
+    final WorkspaceSnapshot changed =
+        analyzed.withDocument(new PieceTableVersionedFile(uri, "ab", 2));
+    assertSame(analysis, changed.getDocument(uri).getAnalysis());
+    assertNull(changed.getDocument(uri).getCurrentAnalysis());
+  }
+
+  @Test
+  public void testOutdatedAnalysisIsIgnored() {
+    final DocumentAnalysis newer = analysisOf(2);
+    final WorkspaceSnapshot snapshot =
+        WorkspaceSnapshot.EMPTY
+            .withDocument(new PieceTableVersionedFile(uri, "ab", 2))
+            .withAnalysis(uri, newer);
+
+    assertSame(snapshot, snapshot.withAnalysis(uri, analysisOf(1)));
+    assertSame(snapshot, snapshot.withAnalysis("file:///B.jimple", analysisOf(1)));
+  }
+
+  @Test
+  public void testInvalidAnalysisIsRememberedForItsVersionOnly() {
+    final DocumentAnalysis valid = analysisOf(1);
+    final DocumentAnalysis invalid = analysisOf(2);
+    final WorkspaceSnapshot snapshot =
+        WorkspaceSnapshot.EMPTY
+            .withDocument(new PieceTableVersionedFile(uri, "a", 1))
+            .withAnalysis(uri, valid)
+            .withDocument(new PieceTableVersionedFile(uri, "ab", 2))
+            .withInvalidAnalysis(uri, invalid);
+    assertSame(invalid, snapshot.getDocument(uri).getInvalidAnalysis());
+    assertSame(valid, snapshot.getDocument(uri).getAnalysis());
+    assertSame(snapshot, snapshot.withInvalidAnalysis(uri, analysisOf(1)));
+
+    final WorkspaceSnapshot changed =
+        snapshot.withDocument(new PieceTableVersionedFile(uri, "abc", 3));
+    assertNull(changed.getDocument(uri).getInvalidAnalysis());
+    assertSame(valid, changed.getDocument(uri).getAnalysis());
+  }
+
+  @Test
+  public void testChangedRegionIsTrackedSinceTheAnalysis() {
+    WorkspaceSnapshot snapshot =
+        WorkspaceSnapshot.EMPTY
+            .withDocument(new PieceTableVersionedFile(uri, "a\nb", 1))
+            .withAnalysis(uri, analysisOf(1));
+    assertNull(snapshot.getDocument(uri).getChangedRegion());
+
+    snapshot =
+        snapshot.withDocument(
+            new PieceTableVersionedFile(uri, "a\nxb", 2),
+            Collections.singletonList(
+                new TextDocumentContentChangeEvent(
+                    new Range(new Position(1, 0), new Position(1, 0)), "x")));
+    snapshot =
+        snapshot.withDocument(
+            new PieceTableVersionedFile(uri, "ya\nxb", 3),
+            Collections.singletonList(
+                new TextDocumentContentChangeEvent(
+                    new Range(new Position(0, 0), new Position(0, 0)), "y")));
+    final ChangedRegion region = snapshot.getDocument(uri).getChangedRegion();
+    assertNotNull(region);
+    assertEquals(new Position(0, 0), region.getStart());
+    assertEquals(new Position(1, 0), region.getPreviousEnd());
+    assertEquals(new Position(1, 1), region.getEnd());
+
+    // unknown changes
+    assertNull(
+        snapshot
+            .withDocument(new PieceTableVersionedFile(uri, "b", 4))
+            .getDocument(uri)
+            .getChangedRegion());
+    // the analysis of the current version
+    assertNull(snapshot.withAnalysis(uri, analysisOf(3)).getDocument(uri).getChangedRegion());
+  }
+}
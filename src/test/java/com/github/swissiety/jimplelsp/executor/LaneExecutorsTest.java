@@ -0,0 +1,74 @@
+package com.github.swissiety.jimplelsp.executor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LaneExecutorsTest {
+
+  private final LaneExecutors executors = new LaneExecutors();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executors.shutdown();
+  }
+
+  /** occupies the only thread and the only queue slot of the lane. */
+  private Executor saturate(Lane lane) throws InterruptedException {
+    executors.setParallelism(lane, 1);
+    executors.setQueueCapacity(lane, 1);
+    final Executor executor = executors.executor(lane, LaneExecutors.PRIORITY_NORMAL);
+    final CountDownLatch running = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          running.countDown();
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    executor.execute(() -> {});
+    return executor;
+  }
+
+  @Test
+  public void testFullInteractiveLaneRejects() throws InterruptedException {
+    final Executor executor = saturate(Lane.INTERACTIVE);
+    try {
+      executor.execute(() -> fail("must not run on the submitting thread"));
+      fail("the queue is full");
+    } catch (RejectedExecutionException expected) {
+      // the request is answered with an error instead
+    }
+  }
+
+  @Test
+  public void testFullAnalysisLaneRejects() throws InterruptedException {
+    final Executor executor = saturate(Lane.ANALYSIS);
+    try {
+      executor.execute(() -> fail("must not run on the submitting thread"));
+      fail("the queue is full");
+    } catch (RejectedExecutionException expected) {
+      // the AnalysisScheduler retries it
+    }
+  }
+
+  @Test
+  public void testFullBackgroundLaneThrottlesTheSubmitter() throws InterruptedException {
+    final Executor executor = saturate(Lane.BACKGROUND);
+    final AtomicReference<Thread> runner = new AtomicReference<>();
+    executor.execute(() -> runner.set(Thread.currentThread()));
+    assertSame(Thread.currentThread(), runner.get());
+  }
+}
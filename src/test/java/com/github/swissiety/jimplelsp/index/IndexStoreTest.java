@@ -0,0 +1,77 @@
+package com.github.swissiety.jimplelsp.index;
+
+import static org.junit.Assert.*;
+
+import com.github.swissiety.jimplelsp.resolver.SignaturePositionResolver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaIdentifierFactory;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+public class IndexStoreTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private FileIndex createIndex(Path path) throws IOException {
+    final SignaturePositionResolver resolver =
+        new SignaturePositionResolver(
+            path, JimpleConverterUtil.createJimpleParser(CharStreams.fromPath(path), path).file());
+    final ClassType classType = JavaIdentifierFactory.getInstance().getClassType("de.upb.Car");
+    return new FileIndex(
+        classType,
+        JavaIdentifierFactory.getInstance().getClassType("de.upb.Vehicle"),
+        Collections.emptyList(),
+        resolver.getOccurences(),
+        resolver.getDeclarations());
+  }
+
+  @Test
+  public void testRoundtrip() throws IOException {
+    Path path = tmpFolder.newFile("Car.jimple").toPath();
+    Files.copy(
+        Paths.get("src/test/resources/signatureOccurences.jimple"),
+        path,
+        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    final IndexStore store = new IndexStore(tmpFolder.newFolder("index").toPath());
+    assertNull(store.load(path));
+
+    final FileIndex index = createIndex(path);
+    store.store(path, index);
+
+    final FileIndex loaded = store.load(path);
+    assertNotNull(loaded);
+    assertEquals(index.getClassType(), loaded.getClassType());
+    assertEquals(index.getSuperclass(), loaded.getSuperclass());
+    assertEquals(index.getOccurences(), loaded.getOccurences());
+    assertEquals(index.getDeclarations(), loaded.getDeclarations());
+  }
+
+  @Test
+  public void testOutdatedEntry() throws IOException {
+    Path path = tmpFolder.newFile("Car.jimple").toPath();
+    Files.copy(
+        Paths.get("src/test/resources/signatureOccurences.jimple"),
+        path,
+        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    final IndexStore store = new IndexStore(tmpFolder.newFolder("index").toPath());
+    store.store(path, createIndex(path));
+
+    // touching the file without changing its content keeps the entry valid
+    Files.setLastModifiedTime(path, FileTime.fromMillis(0));
+    assertNotNull(store.load(path));
+
+    Files.write(path, "// changed".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+    assertNull(store.load(path));
+  }
+}
@@ -0,0 +1,43 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.junit.Test;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaIdentifierFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReferenceIndexTest {
+
+  private final ClassType a = JavaIdentifierFactory.getInstance().getClassType("de.upb.A");
+  private final ClassType b = JavaIdentifierFactory.getInstance().getClassType("de.upb.B");
+  private final Path fileA = Paths.get("A.jimple");
+  private final Path fileB = Paths.get("B.jimple");
+
+  @Test
+  public void testUpdateReplacesSignaturesOfFile() {
+    final ReferenceIndex index = new ReferenceIndex();
+    index.update(fileA, new HashSet<>(Arrays.<Signature>asList(a, b)));
+    index.update(fileB, Collections.<Signature>singleton(b));
+
+    assertEquals(Collections.singleton(fileA), index.getFiles(a));
+    assertEquals(new HashSet<>(Arrays.asList(fileA, fileB)), index.getFiles(b));
+
+    // fileA does not mention B anymore
+    index.update(fileA, Collections.<Signature>singleton(a));
+    assertEquals(Collections.singleton(fileB), index.getFiles(b));
+
+    index.remove(fileB);
+    assertTrue(index.getFiles(b).isEmpty());
+    final Set<Path> files = index.getFiles(a);
+    assertEquals(Collections.singleton(fileA), files);
+  }
+}
@@ -0,0 +1,110 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReindexQueueTest {
+
+  @Test
+  public void testBurstIsCoalescedIntoOneBatch() throws InterruptedException {
+    final List<ReindexQueue.Batch> batches = new CopyOnWriteArrayList<>();
+    final CountDownLatch processed = new CountDownLatch(1);
+    final ReindexQueue queue =
+        new ReindexQueue(
+            Runnable::run,
+            batch -> {
+              batches.add(batch);
+              processed.countDown();
+            },
+            50);
+    final Path a = Paths.get("a.jimple");
+    final Path b = Paths.get("b.jimple");
+    queue.changed(a);
+    queue.changed(b);
+    queue.changed(a);
+    // e.g. rewritten by deleting and creating it: the last event counts
+    queue.deleted(b);
+
+    assertTrue(processed.await(5, TimeUnit.SECONDS));
+    queue.shutdown();
+    assertEquals(1, batches.size());
+    assertEquals(1, batches.get(0).getChanged().size());
+    assertTrue(batches.get(0).getChanged().contains(a));
+    assertEquals(1, batches.get(0).getDeleted().size());
+    assertTrue(batches.get(0).getDeleted().contains(b));
+  }
+
+  @Test
+  public void testEventsDuringProcessingAreDebounced() throws InterruptedException {
+    final List<ReindexQueue.Batch> batches = new CopyOnWriteArrayList<>();
+    final long[] enqueuedNanos = new long[1];
+    final long[] processedNanos = new long[1];
+    final CountDownLatch processed = new CountDownLatch(2);
+    final ReindexQueue[] queue = new ReindexQueue[1];
+    queue[0] =
+        new ReindexQueue(
+            Runnable::run,
+            batch -> {
+              batches.add(batch);
+              if (batches.size() == 1) {
+                // e.g. a build writes more files while the first ones are indexed
+                queue[0].changed(Paths.get("c.jimple"));
+                enqueuedNanos[0] = System.nanoTime();
+              } else {
+                processedNanos[0] = System.nanoTime();
+              }
+              processed.countDown();
+            },
+            50);
+    queue[0].changed(Paths.get("a.jimple"));
+
+    assertTrue(processed.await(5, TimeUnit.SECONDS));
+    queue[0].shutdown();
+    assertEquals(2, batches.size());
+    assertTrue(batches.get(1).getChanged().contains(Paths.get("c.jimple")));
+    assertTrue(processedNanos[0] - enqueuedNanos[0] >= TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  public void testReleaseDuringProcessingIsDeferred() throws InterruptedException {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final List<ReindexQueue.Batch> batches = new CopyOnWriteArrayList<>();
+    final CountDownLatch processed = new CountDownLatch(2);
+    final ReindexQueue[] queue = new ReindexQueue[1];
+    queue[0] =
+        new ReindexQueue(
+            executor,
+            batch -> {
+              batches.add(batch);
+              if (batches.size() == 1) {
+                queue[0].changed(Paths.get("c.jimple"));
+                try {
+                  // the delay of the new event is over while this batch is processed
+                  Thread.sleep(200);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+              }
+              processed.countDown();
+            },
+            50);
+    queue[0].changed(Paths.get("a.jimple"));
+
+    assertTrue(processed.await(5, TimeUnit.SECONDS));
+    queue[0].shutdown();
+    executor.shutdown();
+    assertEquals(2, batches.size());
+    assertEquals(1, batches.get(1).getChanged().size());
+    assertTrue(batches.get(1).getChanged().contains(Paths.get("c.jimple")));
+  }
+}
@@ -0,0 +1,76 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SymbolKind;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SymbolIndexTest {
+
+  private static final String CONTAINER = "java.lang.StringBuilder";
+
+  private final Path file = Paths.get("StringBuilder.jimple");
+  private final Location location =
+      new Location(
+          "file:///StringBuilder.jimple", new Range(new Position(0, 0), new Position(0, 1)));
+
+  private SymbolIndex createIndex() {
+    final SymbolIndex index = new SymbolIndex();
+    index.update(
+        file,
+        Arrays.asList(
+            new SymbolIndex.Symbol("StringBuilder", SymbolKind.Class, "java.lang", location),
+            new SymbolIndex.Symbol("append", SymbolKind.Method, CONTAINER, location),
+            new SymbolIndex.Symbol("toString", SymbolKind.Method, CONTAINER, location),
+            new SymbolIndex.Symbol("count", SymbolKind.Field, CONTAINER, location)));
+    return index;
+  }
+
+  private List<String> search(SymbolIndex index, String query) {
+    final List<String> names = new java.util.ArrayList<>();
+    for (SymbolIndex.Symbol symbol : index.search(query, 10, s -> true, () -> {})) {
+      names.add(symbol.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void testMatching() {
+    final SymbolIndex index = createIndex();
+    // prefix
+    assertEquals(Collections.singletonList("append"), search(index, "app"));
+    // camel case
+    assertEquals("StringBuilder", search(index, "sb").get(0));
+    // substring
+    assertEquals(Collections.singletonList("toString"), search(index, "ostr"));
+    // fuzzy
+    assertEquals(Collections.singletonList("count"), search(index, "cnt"));
+    // prefix ranks before substring
+    assertEquals(Arrays.asList("StringBuilder", "toString"), search(index, "string"));
+  }
+
+  @Test
+  public void testRemove() {
+    final SymbolIndex index = createIndex();
+    index.remove(file);
+    assertTrue(search(index, "app").isEmpty());
+    assertTrue(search(index, "sb").isEmpty());
+  }
+
+  @Test
+  public void testCamelCaseInitials() {
+    assertEquals("sb", SymbolIndex.camelCaseInitials("StringBuilder"));
+    assertEquals("gv", SymbolIndex.camelCaseInitials("get_value"));
+    assertEquals("i", SymbolIndex.camelCaseInitials("<init>"));
+  }
+}
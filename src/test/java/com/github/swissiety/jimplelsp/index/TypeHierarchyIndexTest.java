@@ -0,0 +1,49 @@
+package com.github.swissiety.jimplelsp.index;
+
+import org.junit.Test;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaIdentifierFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TypeHierarchyIndexTest {
+
+  private final JavaIdentifierFactory factory = JavaIdentifierFactory.getInstance();
+  private final ClassType iface = factory.getClassType("de.upb.I");
+  private final ClassType a = factory.getClassType("de.upb.A");
+  private final ClassType b = factory.getClassType("de.upb.B");
+  private final ClassType c = factory.getClassType("de.upb.C");
+
+  @Test
+  public void testTransitiveSubtypes() {
+    final TypeHierarchyIndex hierarchy = new TypeHierarchyIndex();
+    hierarchy.update(a, null, Collections.singletonList(iface));
+    hierarchy.update(b, a, Collections.emptyList());
+    hierarchy.update(c, null, Collections.emptyList());
+
+    assertEquals(new HashSet<>(Arrays.asList(a, b)), hierarchy.subtypesOf(iface));
+    assertEquals(Collections.singleton(b), hierarchy.subtypesOf(a));
+    assertTrue(hierarchy.subtypesOf(c).isEmpty());
+  }
+
+  @Test
+  public void testUpdateAndRemove() {
+    final TypeHierarchyIndex hierarchy = new TypeHierarchyIndex();
+    hierarchy.update(a, null, Collections.singletonList(iface));
+    hierarchy.update(b, a, Collections.emptyList());
+
+    // B extends C now
+    hierarchy.update(b, c, Collections.emptyList());
+    assertEquals(Collections.singleton(a), hierarchy.subtypesOf(iface));
+    assertEquals(Collections.singleton(b), hierarchy.subtypesOf(c));
+
+    hierarchy.remove(b);
+    assertTrue(hierarchy.subtypesOf(c).isEmpty());
+    assertTrue(hierarchy.directSupertypesOf(b).isEmpty());
+  }
+}
@@ -0,0 +1,93 @@
+package com.github.swissiety.jimplelsp.index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkspaceWatcherTest {
+
+  @Rule public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private final BlockingQueue<ReindexQueue.Batch> batches = new LinkedBlockingQueue<>();
+  // the paths reported so far
+  private final Set<Path> changed = new HashSet<>();
+  private final Set<Path> deleted = new HashSet<>();
+  private ReindexQueue queue;
+  private WorkspaceWatcher watcher;
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = tmpFolder.getRoot().toPath();
+    queue = new ReindexQueue(Runnable::run, batches::add, 50);
+    watcher = new WorkspaceWatcher(Collections.singletonList(root), queue);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    watcher.close();
+    queue.shutdown();
+  }
+
+  /** @return whether the path was reported within the timeout */
+  private boolean awaitReported(Set<Path> reported, Path path) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!reported.contains(path)) {
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return false;
+      }
+      final ReindexQueue.Batch batch = batches.poll(remaining, TimeUnit.NANOSECONDS);
+      if (batch != null) {
+        changed.addAll(batch.getChanged());
+        deleted.addAll(batch.getDeleted());
+      }
+    }
+    return true;
+  }
+
+  @Test
+  public void testChangedAndDeletedFilesAreReported() throws IOException, InterruptedException {
+    final Path notes = Files.write(root.resolve("notes.txt"), "no jimple".getBytes());
+    final Path file = Files.write(root.resolve("A.jimple"), "class A {}".getBytes());
+    assertTrue(awaitReported(changed, file));
+    assertFalse(changed.contains(notes));
+
+    Files.delete(file);
+    assertTrue(awaitReported(deleted, file));
+  }
+
+  @Test
+  public void testCreatedDirectoriesAreWatched() throws IOException, InterruptedException {
+    final Path directory = Files.createDirectory(root.resolve("de"));
+    assertTrue(awaitReported(changed, directory));
+
+    final Path file = Files.write(directory.resolve("B.jimple"), "class B {}".getBytes());
+    assertTrue(awaitReported(changed, file));
+  }
+
+  @Test
+  public void testHiddenDirectoriesAreNotWatched() throws IOException, InterruptedException {
+    final Path hidden = Files.createDirectory(root.resolve(".git"));
+    final Path hiddenFile = Files.write(hidden.resolve("C.jimple"), "class C {}".getBytes());
+    // reported after the events of the hidden directory
+    final Path file = Files.write(root.resolve("A.jimple"), "class A {}".getBytes());
+    assertTrue(awaitReported(changed, file));
+
+    assertFalse(changed.contains(hidden));
+    assertFalse(changed.contains(hiddenFile));
+  }
+}
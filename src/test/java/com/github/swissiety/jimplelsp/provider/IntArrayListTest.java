@@ -0,0 +1,55 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import static org.junit.Assert.*;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.Arrays;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.junit.Test;
+
+public class IntArrayListTest {
+
+  private final Gson gson =
+      new GsonBuilder()
+          .registerTypeAdapter(IntArrayList.class, new IntArrayList.GsonAdapter())
+          .create();
+
+  @Test
+  public void testView() {
+    final IntArrayList list = new IntArrayList(new int[] {1, 2, 3, 0}, 3);
+    assertEquals(Arrays.asList(1, 2, 3), list);
+    assertArrayEquals(new int[] {1, 2, 3}, list.toIntArray());
+    try {
+      list.get(3);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  @Test
+  public void testSerialization() {
+    final IntArrayList list = new IntArrayList(new int[] {0, 4, 2, 1, 0, 0}, 5);
+    assertEquals("[0,4,2,1,0]", gson.toJson(list));
+    assertEquals(list, gson.fromJson("[0,4,2,1,0]", IntArrayList.class));
+
+    // the runtime type of the tokens is serialized by the adapter
+    assertEquals("{\"data\":[0,4,2,1,0]}", gson.toJson(new SemanticTokens(list)));
+  }
+
+  @Test
+  public void testSemanticTokenManager() {
+    final SemanticTokenManager manager =
+        new SemanticTokenManager(SyntaxHighlightingProvider.getLegend());
+    final int keyword = manager.getTokenTypeId("keyword");
+    manager.paintText(keyword, 0, 1, 4, 6);
+    manager.paintText(manager.getTokenTypeId("type"), 0, 1, 11, 3);
+    manager.paintText("variable", "", 3, 2, 1);
+
+    assertEquals(
+        Arrays.asList(
+            1, 4, 6, keyword, 0, 0, 7, 3, manager.getTokenTypeId("type"), 0, 2, 2, 1,
+            manager.getTokenTypeId("variable"), 0),
+        manager.getCanvas());
+  }
+}
@@ -0,0 +1,145 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.SemanticTokenTypes;
+import org.eclipse.lsp4j.SemanticTokens;
+import org.junit.Test;
+
+public class LexicalHighlightingProviderTest {
+
+  /** @return "line:column" -> token type */
+  private Map<String, String> decode(SemanticTokens tokens) {
+    final List<String> types = SyntaxHighlightingProvider.getLegend().getTokenTypes();
+    final List<Integer> data = tokens.getData();
+    final Map<String, String> decoded = new HashMap<>();
+    int line = 0;
+    int col = 0;
+    for (int i = 0; i + 4 < data.size(); i += 5) {
+      if (data.get(i) != 0) {
+        line += data.get(i);
+        col = data.get(i + 1);
+      } else {
+        col += data.get(i + 1);
+      }
+      decoded.put(line + ":" + col, types.get(data.get(i + 3)));
+    }
+    return decoded;
+  }
+
+  @Test
+  public void testClassification() throws IOException {
+    final Map<String, String> tokens =
+        decode(
+            LexicalHighlightingProvider.paintbrush(
+                CharStreams.fromPath(Paths.get("src/test/resources/signatureOccurences.jimple")),
+                () -> {}));
+
+    assertEquals(SemanticTokenTypes.Modifier, tokens.get("2:0"));
+    assertEquals(SemanticTokenTypes.Keyword, tokens.get("2:7"));
+    assertEquals(SemanticTokenTypes.Class, tokens.get("2:13"));
+    assertEquals(SemanticTokenTypes.Type, tokens.get("2:32"));
+    // local declaration: de.upb.Car r0;
+    assertEquals(SemanticTokenTypes.Type, tokens.get("7:8"));
+    assertEquals(SemanticTokenTypes.Variable, tokens.get("7:19"));
+    // public void driving() throws java.lang.Exception
+    assertEquals(SemanticTokenTypes.Method, tokens.get("16:16"));
+    assertEquals(SemanticTokenTypes.Keyword, tokens.get("23:14"));
+    assertEquals(SemanticTokenTypes.String, tokens.get("25:79"));
+  }
+
+  /** @return "line:column:length:type" of each token in document order */
+  private List<String> decodeAll(SemanticTokens tokens) {
+    final List<String> types = SyntaxHighlightingProvider.getLegend().getTokenTypes();
+    final List<Integer> data = tokens.getData();
+    final List<String> decoded = new ArrayList<>();
+    int line = 0;
+    int col = 0;
+    for (int i = 0; i + 4 < data.size(); i += 5) {
+      if (data.get(i) != 0) {
+        line += data.get(i);
+        col = data.get(i + 1);
+      } else {
+        col += data.get(i + 1);
+      }
+      decoded.add(line + ":" + col + ":" + data.get(i + 2) + ":" + types.get(data.get(i + 3)));
+    }
+    return decoded;
+  }
+
+  @Test
+  public void testAllTokensOfADocument() {
+    final String document =
+        "public class de.upb.A extends java.lang.Object\n"
+            + "{\n"
+            + "    private java.lang.String name;\n"
+            + "\n"
+            + "    public java.lang.String greet() throws java.lang.Exception\n"
+            + "    {\n"
+            + "        de.upb.A r0;\n"
+            + "        java.lang.String $r1;\n"
+            + "\n"
+            + "        $r1 = virtualinvoke r0.<de.upb.A: java.lang.String"
+            + " concat(java.lang.String)>(\"x\");\n"
+            + "        r0.<de.upb.A: java.lang.String name> = $r1;\n"
+            + "        return $r1;\n"
+            + "    }\n"
+            + "}\n";
+
+    assertEquals(
+        Arrays.asList(
+            "0:0:6:modifier",
+            "0:7:5:keyword",
+            "0:13:8:class",
+            "0:22:7:keyword",
+            "0:30:16:type",
+            "2:4:7:modifier",
+            "2:12:16:type",
+            "2:29:4:variable",
+            "4:4:6:modifier",
+            "4:11:16:type",
+            "4:28:5:method",
+            "4:36:6:keyword",
+            "4:43:19:type",
+            "6:8:8:type",
+            "6:17:2:variable",
+            "7:8:16:type",
+            "7:25:3:variable",
+            "9:8:3:variable",
+            "9:14:13:keyword",
+            "9:28:2:variable",
+            "9:32:8:type",
+            "9:42:16:type",
+            "9:59:6:method",
+            "9:66:16:type",
+            "9:85:3:string",
+            "10:8:2:variable",
+            "10:12:8:type",
+            "10:22:16:type",
+            "10:39:4:variable",
+            "10:47:3:variable",
+            "11:8:6:keyword",
+            "11:15:3:variable"),
+        decodeAll(
+            LexicalHighlightingProvider.paintbrush(CharStreams.fromString(document), () -> {})));
+  }
+
+  @Test
+  public void testBrokenDocument() throws IOException {
+    final SemanticTokens tokens =
+        LexicalHighlightingProvider.paintbrush(
+            CharStreams.fromPath(
+                Paths.get(
+                    "src/test/resources/partial_invalid_inputs/invalid_firsthalfofclass.jimple")),
+            () -> {});
+    assertFalse(tokens.getData().isEmpty());
+  }
+}
@@ -0,0 +1,108 @@
+package com.github.swissiety.jimplelsp.provider;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SemanticTokensEdit;
+import org.junit.Test;
+
+public class SemanticTokensCacheTest {
+
+  // three tokens: (0,0), (0,4), (2,1)
+  private final int[] tokens = {0, 0, 3, 0, 0, 0, 4, 2, 1, 0, 2, 1, 5, 3, 0};
+
+  @Test
+  public void testVersionAndResultId() {
+    final SemanticTokensCache cache = new SemanticTokensCache();
+    assertNull(cache.get("file:///a.jimple", 1));
+
+    final SemanticTokensCache.Entry entry = cache.put("file:///a.jimple", 1, tokens, true);
+    assertSame(entry, cache.get("file:///a.jimple", 1));
+    assertNull(cache.get("file:///a.jimple", 2));
+    cache.sent("file:///a.jimple", entry);
+    assertSame(entry, cache.getByResultId("file:///a.jimple", entry.getResultId()));
+
+    final SemanticTokensCache.Entry next = cache.put("file:///a.jimple", 2, tokens, true);
+    assertNotEquals(entry.getResultId(), next.getResultId());
+    cache.sent("file:///a.jimple", next);
+    assertNull(cache.getByResultId("file:///a.jimple", entry.getResultId()));
+
+    // documents which are not opened are never reused
+    cache.put("file:///b.jimple", -1, tokens, true);
+    assertNull(cache.get("file:///b.jimple", -1));
+
+    cache.remove("file:///a.jimple");
+    assertNull(cache.get("file:///a.jimple", 2));
+  }
+
+  @Test
+  public void testTokensOfARangeRequestDoNotReplaceTheSentOnes() {
+    final SemanticTokensCache cache = new SemanticTokensCache();
+    final SemanticTokensCache.Entry sent = cache.put("file:///a.jimple", 1, tokens, false);
+    cache.sent("file:///a.jimple", sent);
+
+    // e.g. painted again from the parse tree for a range request
+    final SemanticTokensCache.Entry range = cache.put("file:///a.jimple", 1, tokens, true);
+    assertSame(range, cache.get("file:///a.jimple", 1));
+    assertSame(sent, cache.getByResultId("file:///a.jimple", sent.getResultId()));
+    assertNull(cache.getByResultId("file:///a.jimple", range.getResultId()));
+
+    cache.remove("file:///a.jimple");
+    assertNull(cache.getByResultId("file:///a.jimple", sent.getResultId()));
+  }
+
+  @Test
+  public void testDiff() {
+    assertEquals(Collections.emptyList(), SemanticTokensCache.diff(tokens, tokens.clone()));
+
+    final int[] changed = tokens.clone();
+    changed[7] = 5;
+    final List<SemanticTokensEdit> edits = SemanticTokensCache.diff(tokens, changed);
+    assertEquals(1, edits.size());
+    assertEquals(7, edits.get(0).getStart());
+    assertEquals(1, edits.get(0).getDeleteCount());
+    assertEquals(Collections.singletonList(5), edits.get(0).getData());
+
+    final int[] appended = Arrays.copyOf(tokens, tokens.length + 5);
+    final SemanticTokensEdit append = SemanticTokensCache.diff(tokens, appended).get(0);
+    assertEquals(tokens.length, append.getStart());
+    assertEquals(0, append.getDeleteCount());
+    assertEquals(5, append.getData().size());
+
+    final SemanticTokensEdit removal =
+        SemanticTokensCache.diff(tokens, Arrays.copyOf(tokens, 10)).get(0);
+    assertEquals(10, removal.getStart());
+    assertEquals(5, removal.getDeleteCount());
+    assertTrue(removal.getData().isEmpty());
+  }
+
+  @Test
+  public void testSlice() {
+    // everything
+    assertEquals(
+        SemanticTokensCache.toList(tokens),
+        SemanticTokensCache.slice(tokens, new Range(new Position(0, 0), new Position(5, 0))));
+
+    // the second token is encoded relative to the document start
+    assertEquals(
+        Arrays.asList(0, 4, 2, 1, 0, 2, 1, 5, 3, 0),
+        SemanticTokensCache.slice(tokens, new Range(new Position(0, 2), new Position(5, 0))));
+
+    // only the first line
+    assertEquals(
+        Arrays.asList(0, 0, 3, 0, 0, 0, 4, 2, 1, 0),
+        SemanticTokensCache.slice(tokens, new Range(new Position(0, 0), new Position(1, 0))));
+
+    assertEquals(
+        Arrays.asList(2, 1, 5, 3, 0),
+        SemanticTokensCache.slice(tokens, new Range(new Position(1, 0), new Position(3, 0))));
+
+    assertTrue(
+        SemanticTokensCache.slice(tokens, new Range(new Position(1, 0), new Position(2, 0)))
+            .isEmpty());
+  }
+}
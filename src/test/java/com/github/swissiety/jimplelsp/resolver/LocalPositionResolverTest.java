@@ -0,0 +1,206 @@
+package com.github.swissiety.jimplelsp.resolver;
+
+import com.github.swissiety.jimplelsp.Util;
+import org.antlr.v4.runtime.CharStreams;
+import org.eclipse.lsp4j.Location;
+import org.eclipse.lsp4j.LocationLink;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentPositionParams;
+import org.junit.Before;
+import org.junit.Test;
+import sootup.core.types.Type;
+import sootup.jimple.JimpleParser;
+import sootup.jimple.parser.JimpleConverterUtil;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalPositionResolverTest {
+
+  private final Path path = Paths.get("src/test/resources/signatureOccurences.jimple");
+  private LocalPositionResolver resolver;
+
+  @Before
+  public void setUp() throws IOException {
+    resolver =
+        new LocalPositionResolver(
+            path, JimpleConverterUtil.createJimpleParser(CharStreams.fromPath(path), path).file());
+  }
+
+  private TextDocumentPositionParams at(int line, int character) {
+    return new TextDocumentPositionParams(
+        new TextDocumentIdentifier(Util.pathToUri(path)), new Position(line, character));
+  }
+
+  private static Range range(int line, int start, int end) {
+    return new Range(new Position(line, start), new Position(line, end));
+  }
+
+  @Test
+  public void testOccurenceBoundaries() {
+    // "r0 := @this: de.upb.Car;" - r0 occupies [8, 10)
+    assertEquals(3, resolver.resolveReferences(at(9, 8)).size());
+    assertEquals(3, resolver.resolveReferences(at(9, 9)).size());
+    // the cursor behind the last character still touches the local
+    assertEquals(3, resolver.resolveReferences(at(9, 10)).size());
+
+    assertTrue(resolver.resolveReferences(at(9, 7)).isEmpty());
+    assertTrue(resolver.resolveReferences(at(9, 11)).isEmpty());
+    assertNull(resolver.resolveDefinition(at(9, 7)));
+    assertNull(resolver.resolveDefinition(at(9, 11)));
+  }
+
+  @Test
+  public void testPositionsBetweenOccurences() {
+    // the empty line between two occurences of r0
+    assertTrue(resolver.resolveReferences(at(10, 0)).isEmpty());
+    // inside the method signature of the invoke behind r0
+    assertTrue(resolver.resolveReferences(at(11, 30)).isEmpty());
+    // the method header: inside the method but in front of its first local
+    assertTrue(resolver.resolveReferences(at(5, 4)).isEmpty());
+    // between the methods and behind the last one
+    assertTrue(resolver.resolveReferences(at(15, 0)).isEmpty());
+    assertTrue(resolver.resolveReferences(at(29, 0)).isEmpty());
+    // in front of the first method
+    assertTrue(resolver.resolveReferences(at(2, 0)).isEmpty());
+  }
+
+  @Test
+  public void testReferencesAreResolvedInTheirMethod() {
+    final List<? extends Location> r0 = resolver.resolveReferences(at(11, 23));
+    assertEquals(3, r0.size());
+    assertEquals(range(7, 19, 21), r0.get(0).getRange());
+    assertEquals(range(9, 8, 10), r0.get(1).getRange());
+    assertEquals(range(11, 22, 24), r0.get(2).getRange());
+
+    // $r0 of the second method is not r0 of the first one
+    final List<? extends Location> $r0 = resolver.resolveReferences(at(27, 15));
+    assertEquals(4, $r0.size());
+    assertEquals(range(18, 28, 31), $r0.get(0).getRange());
+    assertEquals(range(27, 14, 17), $r0.get(3).getRange());
+
+    assertEquals(2, resolver.resolveReferences(at(21, 8)).size());
+  }
+
+  @Test
+  public void testDefinitionAndTypeOfMultipleMethods() {
+    final LocationLink r0 = resolver.resolveDefinition(at(11, 22));
+    assertNotNull(r0);
+    assertEquals(range(7, 19, 21), r0.getTargetRange());
+    assertEquals(range(11, 22, 24), r0.getOriginSelectionRange());
+
+    final LocationLink r1 = resolver.resolveDefinition(at(21, 9));
+    assertNotNull(r1);
+    assertEquals(range(19, 19, 21), r1.getTargetRange());
+
+    final Type r0Type = resolver.resolveTypeDefinition(new Position(9, 8));
+    assertNotNull(r0Type);
+    assertEquals("de.upb.Car", r0Type.toString());
+    final Type $r0Type = resolver.resolveTypeDefinition(new Position(23, 8));
+    assertNotNull($r0Type);
+    assertEquals("java.lang.Exception", $r0Type.toString());
+  }
+
+  private static TextDocumentContentChangeEvent change(
+      int startLine, int startCharacter, int endLine, int endCharacter, String text) {
+    return new TextDocumentContentChangeEvent(
+        new Range(new Position(startLine, startCharacter), new Position(endLine, endCharacter)),
+        text);
+  }
+
+  @Test
+  public void testEditInsideOfAMethodMovesTheFollowingOccurences() {
+    // a new statement behind "r0 := @this: de.upb.Car;"
+    final LocalPositionResolver moved =
+        resolver.applyChanges(
+            Collections.singletonList(change(9, 32, 9, 32, "\n        nop;")));
+    assertNotNull(moved);
+
+    final List<? extends Location> r0 = moved.resolveReferences(at(12, 23));
+    assertEquals(3, r0.size());
+    assertEquals(range(7, 19, 21), r0.get(0).getRange());
+    assertEquals(range(9, 8, 10), r0.get(1).getRange());
+    assertEquals(range(12, 22, 24), r0.get(2).getRange());
+    assertEquals(4, moved.resolveReferences(at(28, 15)).size());
+    // the resolver of the unchanged version is not affected
+    assertEquals(3, resolver.resolveReferences(at(11, 23)).size());
+  }
+
+  @Test
+  public void testEditedOccurenceIsDropped() {
+    final LocalPositionResolver moved =
+        resolver.applyChanges(Collections.singletonList(change(9, 8, 9, 10, "r9")));
+    assertNotNull(moved);
+
+    assertTrue(moved.resolveReferences(at(9, 8)).isEmpty());
+    assertEquals(2, moved.resolveReferences(at(11, 23)).size());
+  }
+
+  @Test
+  public void testMethodWithAnEditedHeaderIsDropped() {
+    // removes the line "    public void <init>()"
+    final LocalPositionResolver moved =
+        resolver.applyChanges(Collections.singletonList(change(5, 0, 6, 0, "")));
+    assertNotNull(moved);
+
+    assertTrue(moved.resolveReferences(at(10, 23)).isEmpty());
+    assertEquals(4, moved.resolveReferences(at(26, 15)).size());
+  }
+
+  @Test
+  public void testReplacedDocumentCanNotBeMoved() {
+    assertNull(
+        resolver.applyChanges(
+            Collections.singletonList(new TextDocumentContentChangeEvent("class A {}"))));
+  }
+
+  @Test
+  public void testReplaceMemberMovesTheFollowingMethods() throws IOException {
+    // the constructor grows by a line: a second invoke behind "r0 := @this: de.upb.Car;"
+    final String text =
+        new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+            .replace(
+                "r0 := @this: de.upb.Car;",
+                "r0 := @this: de.upb.Car;\n"
+                    + "        specialinvoke r0.<java.lang.Object: void <init>()>();");
+    final JimpleParser.FileContext file =
+        JimpleConverterUtil.createJimpleParser(CharStreams.fromString(text), path).file();
+    final LocalPositionResolver replaced =
+        resolver.replaceMember(new Position(5, 4), new Position(14, 5), 1, file.member(0));
+
+    final List<? extends Location> r0 = replaced.resolveReferences(at(12, 23));
+    assertEquals(4, r0.size());
+    assertEquals(range(10, 22, 24), r0.get(2).getRange());
+    assertEquals(range(12, 22, 24), r0.get(3).getRange());
+
+    // the second method is moved by a line
+    final List<? extends Location> $r0 = replaced.resolveReferences(at(28, 15));
+    assertEquals(4, $r0.size());
+    assertEquals(range(19, 28, 31), $r0.get(0).getRange());
+    assertTrue(replaced.resolveReferences(at(27, 15)).isEmpty());
+    final LocationLink r1 = replaced.resolveDefinition(at(22, 9));
+    assertNotNull(r1);
+    assertEquals(range(20, 19, 21), r1.getTargetRange());
+    final Type $r0Type = replaced.resolveTypeDefinition(new Position(24, 8));
+    assertNotNull($r0Type);
+    assertEquals("java.lang.Exception", $r0Type.toString());
+
+    // the moved method can be moved along edits again
+    final LocalPositionResolver moved =
+        replaced.applyChanges(Collections.singletonList(change(19, 0, 19, 0, "\n")));
+    assertNotNull(moved);
+    assertEquals(range(20, 28, 31), moved.resolveReferences(at(29, 15)).get(0).getRange());
+    // the resolver of the unchanged version is not affected
+    assertEquals(3, resolver.resolveReferences(at(11, 23)).size());
+  }
+}
@@ -6,9 +6,12 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
 import sootup.core.signatures.Signature;
+import sootup.jimple.JimpleParser;
 import sootup.jimple.parser.JimpleConverterUtil;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -109,4 +112,54 @@ public class SignaturePositionResolverTest extends TestCase {
     assertEquals(
         "<de.upb.soot.concrete.fieldReference.A: java.lang.String str>", sig.getLeft().toString());
   }
+
+  public void testReplaceMember() throws IOException {
+    final Path path = Paths.get("src/test/resources/signatureOccurences.jimple").toAbsolutePath();
+    final String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    // the constructor grows by a line: a second invoke behind "r0 := @this: de.upb.Car;"
+    final String text =
+        content.replace(
+            "r0 := @this: de.upb.Car;",
+            "r0 := @this: de.upb.Car;\n"
+                + "        specialinvoke r0.<java.lang.Object: void <init>()>();");
+    final JimpleParser.FileContext file =
+        JimpleConverterUtil.createJimpleParser(CharStreams.fromString(text), path).file();
+    final SignaturePositionResolver replaced =
+        resolver.replaceMember(new Position(5, 4), new Position(14, 5), 1, file.member(0));
+
+    final Pair<Signature, Range> init = replaced.resolve(new Position(10, 51));
+    assertNotNull(init);
+    assertEquals("<java.lang.Object: void <init>()>", init.getLeft().toString());
+    assertEquals(2, replaced.resolve(init.getLeft()).size());
+    assertEquals(init.getLeft(), replaced.resolve(new Position(12, 51)).getLeft());
+
+    // the method behind it is moved by a line
+    assertNull(replaced.resolve(new Position(16, 17)));
+    final Pair<Signature, Range> driving = replaced.resolve(new Position(17, 17));
+    assertNotNull(driving);
+    assertEquals("<de.upb.Car: void driving()>", driving.getLeft().toString());
+    assertEquals(
+        "<java.lang.Exception: void <init>(java.lang.String)>",
+        replaced.resolve(new Position(26, 57)).getLeft().toString());
+    assertEquals(3, replaced.getDeclarations().size());
+    assertEquals(5, replaced.getDeclarations().get(1).getRight().getStart().getLine());
+    assertEquals(17, replaced.getDeclarations().get(2).getRight().getStart().getLine());
+
+    // the replaced resolver allows to replace the next member
+    final String nextText =
+        text.replace(
+            "        throw $r0;", "        $r0 = new java.lang.Exception;\n\n        throw $r0;");
+    final JimpleParser.FileContext nextFile =
+        JimpleConverterUtil.createJimpleParser(CharStreams.fromString(nextText), path).file();
+    final SignaturePositionResolver replacedAgain =
+        replaced.replaceMember(new Position(17, 4), new Position(29, 5), 2, nextFile.member(1));
+    assertEquals(
+        "<de.upb.Car: void driving()>",
+        replacedAgain.getDeclarations().get(2).getLeft().toString());
+    assertEquals(
+        "java.lang.Exception", replacedAgain.resolve(new Position(28, 20)).getLeft().toString());
+    assertEquals(init.getLeft(), replacedAgain.resolve(new Position(12, 51)).getLeft());
+    // the resolver of the unchanged version is not affected
+    assertEquals(driving.getLeft(), resolver.resolve(new Position(16, 17)).getLeft());
+  }
 }
@@ -0,0 +1,142 @@
+package com.github.swissiety.jimplelsp.resolver;
+
+import junit.framework.TestCase;
+import org.apache.commons.lang3.tuple.Pair;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import sootup.core.signatures.Signature;
+import sootup.core.types.ClassType;
+import sootup.java.core.JavaIdentifierFactory;
+
+public class SignatureRangeContainerTest extends TestCase {
+
+  private final ClassType a = JavaIdentifierFactory.getInstance().getClassType("de.upb.A");
+  private final ClassType b = JavaIdentifierFactory.getInstance().getClassType("de.upb.B");
+
+  public void testResolveUnsortedInput() {
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    builder.add(new Position(3, 4), new Position(3, 10), b);
+    builder.add(new Position(1, 2), new Position(1, 8), a);
+    builder.add(new Position(1, 20), new Position(1, 30), b);
+    final SignatureRangeContainer container = builder.build();
+
+    assertEquals(3, container.size());
+    final Pair<Signature, Range> resolved = container.resolve(new Position(1, 5));
+    assertNotNull(resolved);
+    assertEquals(a, resolved.getLeft());
+    assertEquals(new Range(new Position(1, 2), new Position(1, 8)), resolved.getRight());
+
+    assertEquals(b, container.resolve(new Position(3, 10)).getLeft());
+    assertNull(container.resolve(new Position(1, 9)));
+    assertNull(container.resolve(new Position(0, 0)));
+    assertNull(container.resolve(new Position(4, 0)));
+
+    assertEquals(2, container.resolve(b).size());
+    assertEquals(new Position(1, 20), container.getOccurences().get(1).getRight().getStart());
+  }
+
+  public void testDuplicateStartPosition() {
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    builder.add(new Position(1, 2), new Position(1, 8), a);
+    builder.add(new Position(1, 2), new Position(1, 5), b);
+    try {
+      builder.build();
+      fail();
+    } catch (IllegalStateException ignored) {
+      // expected
+    }
+  }
+
+  public void testApplyChange() {
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    builder.add(new Position(1, 2), new Position(1, 8), a);
+    builder.add(new Position(1, 20), new Position(1, 30), b);
+    builder.add(new Position(2, 4), new Position(2, 10), a);
+    builder.add(new Position(3, 4), new Position(3, 10), b);
+    final SignatureRangeContainer container = builder.build();
+
+    // replace (1,12)..(2,2) by "x\nyz": the rest of line 2 keeps its position
+    final SignatureRangeContainer changed =
+        container.applyChange(PackedPositions.pack(1, 12), PackedPositions.pack(2, 2), 1, 2);
+    assertEquals(3, changed.size());
+    assertEquals(a, changed.resolve(new Position(1, 5)).getLeft());
+    // the occurence at (1,20) overlapped the replaced range
+    assertEquals(1, changed.resolve(b).size());
+    assertEquals(new Range(new Position(2, 4), new Position(2, 10)), changed.resolve(a).get(1));
+    assertEquals(new Range(new Position(3, 4), new Position(3, 10)), changed.resolve(b).get(0));
+
+    // insert a line break in front of everything
+    final SignatureRangeContainer inserted =
+        container.applyChange(PackedPositions.pack(0, 0), PackedPositions.pack(0, 0), 1, 0);
+    assertEquals(new Range(new Position(2, 2), new Position(2, 8)), inserted.resolve(a).get(0));
+
+    // typing at the end of a name changes the name
+    final SignatureRangeContainer typed =
+        container.applyChange(PackedPositions.pack(1, 8), PackedPositions.pack(1, 8), 0, 1);
+    assertEquals(3, typed.size());
+    assertEquals(new Range(new Position(1, 21), new Position(1, 31)), typed.resolve(b).get(0));
+  }
+
+  public void testReplace() {
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    builder.add(new Position(1, 2), new Position(1, 8), a);
+    builder.add(new Position(2, 4), new Position(2, 10), b);
+    builder.add(new Position(3, 4), new Position(3, 10), a);
+    builder.add(new Position(5, 0), new Position(5, 6), b);
+    final SignatureRangeContainer container = builder.build();
+
+    // the member in lines 2-3 grew by a line
+    final SignatureRangeContainer.Builder member = new SignatureRangeContainer.Builder();
+    member.add(new Position(2, 4), new Position(2, 10), b);
+    member.add(new Position(4, 4), new Position(4, 10), a);
+    final SignatureRangeContainer replaced =
+        container.replace(
+            PackedPositions.pack(2, 0), PackedPositions.pack(3, 20), 1, member.build());
+    assertEquals(4, replaced.size());
+    assertNull(replaced.resolve(new Position(3, 5)));
+    assertEquals(a, replaced.resolve(new Position(4, 5)).getLeft());
+    assertNull(replaced.resolve(new Position(5, 3)));
+    assertEquals(b, replaced.resolve(new Position(6, 3)).getLeft());
+    assertEquals(new Range(new Position(6, 0), new Position(6, 6)), replaced.resolve(b).get(1));
+
+    // the moved occurences are moved again: the member shrank to a single line
+    final SignatureRangeContainer.Builder shrunk = new SignatureRangeContainer.Builder();
+    shrunk.add(new Position(2, 4), new Position(2, 10), a);
+    final SignatureRangeContainer replacedAgain =
+        replaced.replace(
+            PackedPositions.pack(2, 0), PackedPositions.pack(4, 20), -2, shrunk.build());
+    assertEquals(3, replacedAgain.size());
+    assertEquals(new Position(2, 4), replacedAgain.getOccurences().get(1).getRight().getStart());
+    assertEquals(new Position(4, 0), replacedAgain.getOccurences().get(2).getRight().getStart());
+    assertEquals(b, replacedAgain.resolve(new Position(4, 6)).getLeft());
+    // the replaced container is not affected
+    assertEquals(b, replaced.resolve(new Position(6, 3)).getLeft());
+  }
+
+  public void testManyReplacementsKeepThePositions() {
+    final SignatureRangeContainer.Builder builder = new SignatureRangeContainer.Builder();
+    for (int i = 0; i <= 40; i++) {
+      builder.add(new Position(2 * i, 0), new Position(2 * i, 1), a);
+    }
+    SignatureRangeContainer container = builder.build();
+    // each member grows by a line: back to front, so every member behind it is moved once more
+    for (int i = 39; i >= 0; i--) {
+      final SignatureRangeContainer.Builder member = new SignatureRangeContainer.Builder();
+      member.add(new Position(2 * i, 0), new Position(2 * i, 1), a);
+      container =
+          container.replace(
+              PackedPositions.pack(2 * i, 0), PackedPositions.pack(2 * i, 5), 1, member.build());
+    }
+    for (int i = 0; i <= 40; i++) {
+      assertEquals(
+          new Range(new Position(3 * i, 0), new Position(3 * i, 1)), container.resolve(a).get(i));
+      assertEquals(a, container.resolve(new Position(3 * i, 1)).getLeft());
+    }
+  }
+
+  public void testEmpty() {
+    final SignatureRangeContainer container = new SignatureRangeContainer.Builder().build();
+    assertNull(container.resolve(new Position(0, 0)));
+    assertTrue(container.getOccurences().isEmpty());
+  }
+}
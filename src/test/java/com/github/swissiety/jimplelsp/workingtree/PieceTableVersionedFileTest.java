@@ -0,0 +1,102 @@
+package com.github.swissiety.jimplelsp.workingtree;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Random;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.junit.Test;
+
+public class PieceTableVersionedFileTest {
+
+  private static PieceTableVersionedFile edit(
+      PieceTableVersionedFile file, Position start, Position end, String text) {
+    return file.applyChanges(
+        file.getVersion() + 1,
+        Collections.singletonList(new TextDocumentContentChangeEvent(new Range(start, end), text)));
+  }
+
+  private static PieceTableVersionedFile edit(
+      PieceTableVersionedFile file,
+      int startLine,
+      int startChar,
+      int endLine,
+      int endChar,
+      String text) {
+    return edit(file, new Position(startLine, startChar), new Position(endLine, endChar), text);
+  }
+
+  @Test
+  public void testEdits() {
+    final PieceTableVersionedFile v1 =
+        new PieceTableVersionedFile("file:///A.jimple", "class A\n{\n}\n", 1);
+    assertEquals(4, v1.getLineCount());
+    assertEquals(8, v1.getOffset(1, 0));
+    // behind the end of the line
+    assertEquals(7, v1.getOffset(0, 42));
+
+    final PieceTableVersionedFile v2 = edit(v1, 1, 1, 1, 1, "\n  int a;");
+    assertEquals("class A\n{\n  int a;\n}\n", v2.getContent());
+    assertEquals(2, v2.getVersion());
+    // the previous version is unchanged
+    assertEquals("class A\n{\n}\n", v1.getContent());
+
+    final PieceTableVersionedFile v3 = edit(v2, 0, 6, 2, 5, "B\n{\n  long");
+    assertEquals("class B\n{\n  long a;\n}\n", v3.getContent());
+    assertEquals(12, v3.getOffset(2, 2));
+    assertEquals('l', v3.charAt(12));
+
+    final PieceTableVersionedFile v4 =
+        v3.applyChanges(
+            5, Collections.singletonList(new TextDocumentContentChangeEvent("replaced")));
+    assertEquals("replaced", v4.getContent());
+    assertEquals(1, v4.getLineCount());
+  }
+
+  @Test
+  public void testRandomEdits() {
+    final Random random = new Random(42);
+    String expected = "public class A\n{\n    public void <init>()\n    {\n    }\n}\n";
+    PieceTableVersionedFile file = new PieceTableVersionedFile("file:///A.jimple", expected, 1);
+    for (int i = 0; i < 5000; i++) {
+      final int start = random.nextInt(expected.length() + 1);
+      final int end = Math.min(expected.length(), start + random.nextInt(8));
+      final String text = random.nextInt(4) == 0 ? "\n" : random.nextBoolean() ? "ab" : "";
+      file = edit(file, positionOf(expected, start), positionOf(expected, end), text);
+      expected = expected.substring(0, start) + text + expected.substring(end);
+      assertEquals(expected, file.getContent());
+    }
+  }
+
+  @Test
+  public void testCharStream() {
+    PieceTableVersionedFile file = new PieceTableVersionedFile("file:///A.jimple", "abc\ndef", 1);
+    file = edit(file, 0, 1, 1, 1, "X");
+    final CharStream stream = file.getCharStream();
+    assertEquals(4, stream.size());
+    assertEquals('a', stream.LA(1));
+    stream.consume();
+    assertEquals('X', stream.LA(1));
+    assertEquals('a', stream.LA(-1));
+    assertEquals("aXef", stream.getText(Interval.of(0, 3)));
+    stream.seek(4);
+    assertEquals(IntStream.EOF, stream.LA(1));
+  }
+
+  private static Position positionOf(String text, int offset) {
+    int line = 0;
+    int lineStart = 0;
+    for (int i = 0; i < offset; i++) {
+      if (text.charAt(i) == '\n') {
+        line++;
+        lineStart = i + 1;
+      }
+    }
+    return new Position(line, offset - lineStart);
+  }
+}
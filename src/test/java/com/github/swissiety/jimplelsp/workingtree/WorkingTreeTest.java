@@ -0,0 +1,55 @@
+package com.github.swissiety.jimplelsp.workingtree;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.junit.Test;
+
+public class WorkingTreeTest {
+
+  private final String uri = "file:///A.jimple";
+
+  @Test
+  public void testOnlyNewerVersionsAreApplied() {
+    final WorkingTree workingTree = new WorkingTree("jimple");
+    workingTree.didOpen(
+        new DidOpenTextDocumentParams(new TextDocumentItem(uri, "jimple", 1, "class A {}")));
+    final DidChangeTextDocumentParams change =
+        new DidChangeTextDocumentParams(
+            new VersionedTextDocumentIdentifier(uri, 2),
+            Collections.singletonList(
+                new TextDocumentContentChangeEvent(
+                    new Range(new Position(0, 7), new Position(0, 7)), "B")));
+
+    assertTrue(workingTree.didChange(change));
+    assertEquals("class AB {}", workingTree.get(uri).getContent());
+    // e.g. sent twice: applying it again would move the text twice
+    assertFalse(workingTree.didChange(change));
+    assertEquals("class AB {}", workingTree.get(uri).getContent());
+    assertFalse(
+        workingTree.didChange(
+            new DidChangeTextDocumentParams(
+                new VersionedTextDocumentIdentifier("file:///B.jimple", 1),
+                Collections.emptyList())));
+  }
+
+  @Test
+  public void testClosedDocumentIsRemoved() {
+    final WorkingTree workingTree = new WorkingTree("jimple");
+    workingTree.didOpen(
+        new DidOpenTextDocumentParams(new TextDocumentItem(uri, "jimple", 1, "class A {}")));
+    assertEquals("class A {}", workingTree.get(uri).getContent());
+
+    workingTree.didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+    assertNull(workingTree.get(uri));
+  }
+}
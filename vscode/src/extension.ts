@@ -52,6 +52,7 @@ async function configureAndStartClient(context: ExtensionContext) {
 	let clientOptions: LanguageClientOptions = {
 
 		documentSelector: [{ scheme: 'file', language: 'jimple' }],
+		initializationOptions: settings,
 		synchronize: {
 			configurationSection: 'JimpleLSP',
 			fileEvents: [